@@ -0,0 +1,167 @@
+package com.eis.communication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous operation on the channel, that will be available once the channel
+ * reports it.
+ * Other than waiting for it with {@link #get()} or {@link #get(long, TimeUnit)}, it's possible to
+ * add listeners that are called as soon as the result is available, so that no thread has to wait.
+ * Operations on the channel can't be undone, so it can't be cancelled.
+ *
+ * @param <V> type of the result
+ */
+public class PendingResult<V> implements Future<V> {
+
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+    private List<Runnable> pendingCallbacks = new ArrayList<>();
+    private volatile V result;
+
+    /**
+     * Sets the result and calls every listener added so far.
+     * Only the first call has effect, following ones are ignored.
+     *
+     * @param result the result of the operation
+     * @return true if the result has been set by this call, false if it was already set
+     */
+    public boolean complete(V result) {
+        List<Runnable> callbacks;
+        synchronized (this) {
+            if (pendingCallbacks == null)
+                return false;
+            this.result = result;
+            callbacks = pendingCallbacks;
+            pendingCallbacks = null;
+        }
+        doneLatch.countDown();
+        for (Runnable callback : callbacks)
+            callback.run();
+        return true;
+    }
+
+    /**
+     * Adds a listener called on the thread that completes the result, or immediately on the
+     * current thread if the result is already available.
+     *
+     * @param listener called with the result
+     */
+    public void addListener(final Listener<V> listener) {
+        addCallback(new Runnable() {
+            @Override
+            public void run() {
+                listener.onResult(result);
+            }
+        });
+    }
+
+    /**
+     * Adds a listener called on the given executor once the result is available.
+     *
+     * @param listener called with the result
+     * @param executor the executor that runs the listener
+     */
+    public void addListener(final Listener<V> listener, final Executor executor) {
+        addCallback(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onResult(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs the callback once the result is available.
+     *
+     * @param callback the callback to run
+     */
+    private void addCallback(Runnable callback) {
+        synchronized (this) {
+            if (pendingCallbacks != null) {
+                pendingCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Operations on the channel can't be undone, so this always fails.
+     *
+     * @param mayInterruptIfRunning ignored
+     * @return false
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    /**
+     * @return false, see {@link #cancel(boolean)}
+     */
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * @return true if the result is available
+     */
+    @Override
+    public boolean isDone() {
+        return doneLatch.getCount() == 0;
+    }
+
+    /**
+     * Waits until the result is available.
+     *
+     * @return the result of the operation
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    @Override
+    public V get() throws InterruptedException {
+        doneLatch.await();
+        return result;
+    }
+
+    /**
+     * Waits at most the given time for the result to be available.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the timeout
+     * @return the result of the operation
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @throws TimeoutException     if the result is not available before the timeout
+     */
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!doneLatch.await(timeout, unit))
+            throw new TimeoutException();
+        return result;
+    }
+
+    /**
+     * Listener for the result of a {@link PendingResult}
+     *
+     * @param <V> type of the result
+     */
+    public interface Listener<V> {
+
+        /**
+         * Callback for when the result is available
+         *
+         * @param result the result of the operation
+         */
+        void onResult(V result);
+    }
+}
@@ -0,0 +1,33 @@
+package com.eis.communication;
+
+/**
+ * Handle for a message sent asynchronously in a channel, that reports separately when the message
+ * left the device and when it reached the destination peer.
+ *
+ * @param <M> message class used by the channel
+ * @param <S> type of the result of the sending
+ * @param <D> type of the result of the delivery
+ */
+public interface SendHandle<M extends Message, S, D> {
+
+    /**
+     * @return the message that has been sent
+     */
+    M getMessage();
+
+    /**
+     * Retrieves the result of the sending, available once every part of the message has been sent
+     * or one of them failed
+     *
+     * @return the pending sent result
+     */
+    PendingResult<S> getSentResult();
+
+    /**
+     * Retrieves the result of the delivery, available once every part of the message has been
+     * delivered or one of them failed
+     *
+     * @return the pending delivered result
+     */
+    PendingResult<D> getDeliveredResult();
+}
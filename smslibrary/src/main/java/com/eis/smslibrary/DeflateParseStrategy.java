@@ -0,0 +1,193 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.MessageParseStrategy;
+import com.eis.smslibrary.exceptions.InvalidSMSMessageException;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Parse strategy compressing the text of messages, to send long and repetitive texts in fewer
+ * segments.
+ * The text is compressed with raw Deflate, primed with a dictionary both sides share, and the
+ * compressed bytes are packed into GSM 7-bit characters by {@link GSMBinaryParseStrategy}.
+ * Short texts rarely get shorter, so the text is compressed only if that takes fewer segments than
+ * sending it as it is: each message starts with a marker telling which of the two it is.
+ * <p>
+ * The dictionary should hold the strings most likely to appear in the messages, the most common
+ * ones at the end, and must be exactly the same on both sides.
+ */
+public class DeflateParseStrategy implements MessageParseStrategy<String, SMSPeer, SMSMessage> {
+
+    /**
+     * Header of the messages whose text has been compressed
+     */
+    public static final String COMPRESSED_PREFIX = "\r¡";
+    /**
+     * Header of the messages whose text is sent as it is
+     */
+    public static final String PLAIN_PREFIX = "\r¿";
+
+    /**
+     * Longest text a message can hold, in UTF-8 bytes: a decompressed text can't be longer than this
+     */
+    private static final int MAX_TEXT_BYTES = SMSMessage.MAX_MSG_TEXT_LEN * 3;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] dictionary;
+
+    /**
+     * Constructor for the strategy.
+     *
+     * @param dictionary the dictionary shared with the other peers, can be empty.
+     */
+    public DeflateParseStrategy(@NonNull byte[] dictionary) {
+        this.dictionary = Arrays.copyOf(dictionary, dictionary.length);
+    }
+
+    /**
+     * Constructor for the strategy.
+     *
+     * @param dictionary the dictionary shared with the other peers, encoded in UTF-8; can be empty.
+     */
+    public DeflateParseStrategy(@NonNull String dictionary) {
+        this.dictionary = dictionary.getBytes(UTF_8);
+    }
+
+    /**
+     * Parses sms data into a SMSMessage, decompressing its text if needed.
+     *
+     * @param channelData read from the channel
+     * @param channelPeer that sent the data
+     * @return the parsed SMSMessage, or null if the data was not sent with this strategy
+     * @throws IllegalArgumentException if the data is marked as compressed but can't be decompressed,
+     *                                  or its text is longer than any message text.
+     */
+    @Override
+    public SMSMessage parseMessage(@NonNull String channelData, @NonNull SMSPeer channelPeer) {
+        if (channelData.startsWith(PLAIN_PREFIX))
+            return newMessage(channelPeer, channelData.substring(PLAIN_PREFIX.length()));
+        if (!channelData.startsWith(COMPRESSED_PREFIX))
+            return null;
+        int start = COMPRESSED_PREFIX.length();
+        byte[] compressed = new byte[GSMBinaryParseStrategy.getDecodedLength(channelData.length() - start)];
+        GSMBinaryParseStrategy.decode(channelData, start, channelData.length(), compressed, 0);
+        return newMessage(channelPeer, inflate(compressed));
+    }
+
+    /**
+     * @param peer the peer that sent the message.
+     * @param text the received text.
+     * @return the message.
+     * @throws IllegalArgumentException if the text is longer than any message text: bytes are capped
+     *                                  while decompressing, chars can only be counted afterwards.
+     */
+    private static SMSMessage newMessage(SMSPeer peer, String text) {
+        try {
+            return new SMSMessage(peer, text);
+        } catch (InvalidSMSMessageException e) {
+            throw new IllegalArgumentException("Received text too long", e);
+        }
+    }
+
+    /**
+     * Parses SMSMessage into sms content data, compressed if that takes fewer segments.
+     *
+     * @param message from library
+     * @return the marker followed by either the compressed or the plain text
+     */
+    @Override
+    public String parseData(@NonNull SMSMessage message) {
+        String text = message.getData();
+        String plain = PLAIN_PREFIX + text;
+        byte[] compressed = deflate(text.getBytes(UTF_8));
+        int compressedSeptets = COMPRESSED_PREFIX.length() + GSMBinaryParseStrategy.getEncodedLength(compressed.length);
+        int plainSeptets = GSMCharset.countSeptets(plain);
+        // No need to plan the segments when the plain text is not even longer
+        if (plainSeptets != GSMCharset.NOT_GSM_ENCODABLE && plainSeptets <= compressedSeptets)
+            return plain;
+        if (segmentsOf(compressedSeptets) >= SMSSegmentPlan.of(plain).getSegmentCount())
+            return plain;
+        StringBuilder builder = new StringBuilder(compressedSeptets);
+        builder.append(COMPRESSED_PREFIX);
+        GSMBinaryParseStrategy.encode(compressed, 0, compressed.length, builder);
+        return builder.toString();
+    }
+
+    /**
+     * @param septets the length of a GSM 7-bit text made of basic characters only.
+     * @return the number of segments it takes.
+     */
+    private static int segmentsOf(int septets) {
+        if (septets <= SMSSegmentPlan.GSM_SINGLE_SEGMENT_SEPTETS)
+            return 1;
+        return (septets + SMSSegmentPlan.GSM_MULTIPART_SEGMENT_SEPTETS - 1) / SMSSegmentPlan.GSM_MULTIPART_SEGMENT_SEPTETS;
+    }
+
+    /**
+     * Compresses bytes with raw Deflate and the dictionary.
+     *
+     * @param input the bytes to compress.
+     * @return the compressed bytes.
+     */
+    private byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            if (dictionary.length > 0)
+                deflater.setDictionary(dictionary);
+            deflater.setInput(input);
+            deflater.finish();
+            // Deflate never grows the input by more than 5 bytes every 16KB, plus a few for the end
+            byte[] output = new byte[input.length + input.length / 16000 * 5 + 16];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == output.length)
+                    output = Arrays.copyOf(output, output.length * 2);
+                length += deflater.deflate(output, length, output.length - length);
+            }
+            return Arrays.copyOf(output, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses bytes compressed by {@link #deflate(byte[])}.
+     *
+     * @param input the compressed bytes.
+     * @return the decompressed text.
+     * @throws IllegalArgumentException if the bytes can't be decompressed with the dictionary, or
+     *                                  they'd be longer than any message text.
+     */
+    private String inflate(byte[] input) {
+        Inflater inflater = new Inflater(true);
+        try {
+            if (dictionary.length > 0)
+                inflater.setDictionary(dictionary);
+            inflater.setInput(input);
+            byte[] output = new byte[Math.min(MAX_TEXT_BYTES, Math.max(64, input.length * 4))];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    if (output.length == MAX_TEXT_BYTES)
+                        throw new IllegalArgumentException("Decompressed text too long");
+                    output = Arrays.copyOf(output, Math.min(MAX_TEXT_BYTES, output.length * 2));
+                }
+                int inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IllegalArgumentException("Truncated compressed text");
+                length += inflated;
+            }
+            return new String(output, 0, length, UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed text", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.MessageParseStrategy;
+import com.eis.smslibrary.exceptions.InvalidSMSMessageException;
+
+/**
+ * Parse strategy carrying binary payloads in GSM 7-bit messages, as densely as the safe part of the
+ * GSM 03.38 basic character set allows.
+ * <p>
+ * The payload bytes are read as a stream of bits, and every 20 bits are written as 3 characters
+ * of an alphabet of 102 characters (102^3 &gt; 2^20): that's 6.67 bits per septet, against the 6
+ * of Base64. The alphabet has no extension table characters, which take two septets, no control
+ * characters, no space and no apostrophe, and among the accented letters only the ones of Latin-1,
+ * which survive the gateways converting to it.
+ * The bits left at the end are written as 1 character if they're at most 6, 2 if at most 13,
+ * 3 otherwise; the decoder gets the payload length from the number of characters alone.
+ * <p>
+ * The data of the messages handled by this strategy is the payload itself, one char per byte
+ * (chars 0 to 255): use {@link #createMessage(SMSPeer, byte[])} and {@link #getPayload(SMSMessage)}
+ * to convert between the two.
+ */
+public class GSMBinaryParseStrategy implements MessageParseStrategy<String, SMSPeer, SMSMessage> {
+
+    /**
+     * Header of the messages sent with this strategy, the library hidden character followed by '§'
+     */
+    public static final String PREFIX = "\r§";
+
+    static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz" +
+            "!\"#$%&()*+,-./:;<=>?_£¥èéùìòØøÅåÆæßÉÄÖÑÜ";
+    static final int BASE = 102;
+    private static final int GROUP_BITS = 20;
+    private static final int GROUP_CHARS = 3;
+    /**
+     * Bits carried by the characters left after the last full group, indexed by their number
+     */
+    private static final int[] TAIL_BITS = {0, 6, 13};
+    private static final int NOT_IN_ALPHABET = -1;
+    private static final String PAYLOAD_TOO_LONG_EXC_MSG = "Payload longer than any message text";
+    /**
+     * All the characters of the alphabet are below this value
+     */
+    private static final int TABLE_SIZE = 0x100;
+    private static final byte[] DIGITS = new byte[TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < TABLE_SIZE; i++)
+            DIGITS[i] = NOT_IN_ALPHABET;
+        for (int i = 0; i < BASE; i++)
+            DIGITS[ALPHABET.charAt(i)] = (byte) i;
+    }
+
+    /**
+     * Creates a message carrying a binary payload.
+     *
+     * @param peer    the peer of the message.
+     * @param payload the bytes to send.
+     * @return the message, whose data has one char per byte.
+     */
+    @NonNull
+    public static SMSMessage createMessage(@NonNull SMSPeer peer, @NonNull byte[] payload) {
+        char[] chars = new char[payload.length];
+        for (int i = 0; i < payload.length; i++)
+            chars[i] = (char) (payload[i] & 0xFF);
+        return new SMSMessage(peer, new String(chars));
+    }
+
+    /**
+     * Retrieves the binary payload of a message.
+     *
+     * @param message a message whose data has one char per byte.
+     * @return the payload.
+     * @throws IllegalArgumentException if a char of the message data is greater than 255.
+     */
+    @NonNull
+    public static byte[] getPayload(@NonNull SMSMessage message) {
+        String data = message.getData();
+        byte[] payload = new byte[data.length()];
+        for (int i = 0; i < payload.length; i++) {
+            char c = data.charAt(i);
+            if (c >= TABLE_SIZE)
+                throw new IllegalArgumentException("Message data is not a binary payload");
+            payload[i] = (byte) c;
+        }
+        return payload;
+    }
+
+    /**
+     * @param payloadLength a number of bytes.
+     * @return the number of characters, and septets, they take once encoded.
+     */
+    public static int getEncodedLength(int payloadLength) {
+        long bits = payloadLength * 8L;
+        int tailBits = (int) (bits % GROUP_BITS);
+        int tailChars = tailBits == 0 ? 0 : tailBits <= TAIL_BITS[1] ? 1 : tailBits <= TAIL_BITS[2] ? 2 : GROUP_CHARS;
+        return (int) (bits / GROUP_BITS) * GROUP_CHARS + tailChars;
+    }
+
+    /**
+     * @param encodedLength a number of encoded characters.
+     * @return the number of bytes they decode to.
+     */
+    public static int getDecodedLength(int encodedLength) {
+        long bits = (long) (encodedLength / GROUP_CHARS) * GROUP_BITS + TAIL_BITS[encodedLength % GROUP_CHARS];
+        return (int) (bits / 8);
+    }
+
+    /**
+     * Encodes bytes into characters of the alphabet.
+     *
+     * @param payload     the bytes to encode.
+     * @param offset      the index of the first byte to encode.
+     * @param length      the number of bytes to encode.
+     * @param destination where the characters are appended.
+     */
+    public static void encode(@NonNull byte[] payload, int offset, int length, @NonNull StringBuilder destination) {
+        long bits = 0;
+        int bitCount = 0;
+        for (int i = offset; i < offset + length; i++) {
+            bits = (bits << 8) | (payload[i] & 0xFF);
+            bitCount += 8;
+            if (bitCount >= GROUP_BITS) {
+                bitCount -= GROUP_BITS;
+                appendDigits(destination, (int) (bits >>> bitCount), GROUP_CHARS);
+                bits &= (1L << bitCount) - 1;
+            }
+        }
+        if (bitCount == 0)
+            return;
+        // Pads the last bits with zeroes up to what the fewest characters can carry
+        int chars = bitCount <= TAIL_BITS[1] ? 1 : bitCount <= TAIL_BITS[2] ? 2 : GROUP_CHARS;
+        int capacity = chars == GROUP_CHARS ? GROUP_BITS : TAIL_BITS[chars];
+        appendDigits(destination, (int) (bits << (capacity - bitCount)), chars);
+    }
+
+    /**
+     * Decodes characters of the alphabet into bytes, one group at a time without any intermediate
+     * buffer.
+     *
+     * @param encoded     the text holding the characters.
+     * @param start       the index of the first character to decode.
+     * @param end         the index after the last character to decode.
+     * @param destination where the bytes are written, must have room for
+     *                    {@link #getDecodedLength(int)} bytes.
+     * @param offset      the index of destination where the first byte is written.
+     * @return the number of bytes written.
+     * @throws IllegalArgumentException if a character is not part of the alphabet or a group
+     *                                  holds a value it can't.
+     */
+    public static int decode(@NonNull CharSequence encoded, int start, int end,
+                             @NonNull byte[] destination, int offset) {
+        return decode(encoded, start, end, destination, null, offset);
+    }
+
+    /**
+     * Parses sms data into a SMSMessage carrying the decoded payload.
+     *
+     * @param channelData read from the channel
+     * @param channelPeer that sent the data
+     * @return the parsed SMSMessage, or null if the data was not sent with this strategy
+     * @throws IllegalArgumentException if the data has the prefix of this strategy but can't be
+     *                                  decoded, or its payload is longer than any message text.
+     */
+    @Override
+    public SMSMessage parseMessage(@NonNull String channelData, @NonNull SMSPeer channelPeer) {
+        if (!channelData.startsWith(PREFIX))
+            return null;
+        int start = PREFIX.length();
+        int length = getDecodedLength(channelData.length() - start);
+        if (length > SMSMessage.MAX_MSG_TEXT_LEN)
+            throw new IllegalArgumentException(PAYLOAD_TOO_LONG_EXC_MSG);
+        char[] chars = new char[length];
+        // Decodes straight into the chars of the message data
+        decode(channelData, start, channelData.length(), null, chars, 0);
+        try {
+            return new SMSMessage(channelPeer, new String(chars));
+        } catch (InvalidSMSMessageException e) {
+            // Payloads with chars out of the GSM charset are held to the shorter UCS-2 limit
+            throw new IllegalArgumentException(PAYLOAD_TOO_LONG_EXC_MSG, e);
+        }
+    }
+
+    /**
+     * Parses a SMSMessage carrying a binary payload into sms content data.
+     *
+     * @param message from library, whose data has one char per byte
+     * @return the prefix followed by the encoded payload
+     * @throws IllegalArgumentException if a char of the message data is greater than 255.
+     */
+    @Override
+    public String parseData(@NonNull SMSMessage message) {
+        byte[] payload = getPayload(message);
+        StringBuilder builder = new StringBuilder(PREFIX.length() + getEncodedLength(payload.length));
+        builder.append(PREFIX);
+        encode(payload, 0, payload.length, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Decodes characters of the alphabet either into bytes or into chars holding one byte each.
+     *
+     * @param encoded the text holding the characters.
+     * @param start   the index of the first character to decode.
+     * @param end     the index after the last character to decode.
+     * @param bytes   where the bytes are written, null to write chars.
+     * @param chars   where the chars are written if bytes is null.
+     * @param offset  the index where the first byte or char is written.
+     * @return the number of bytes or chars written.
+     * @throws IllegalArgumentException if a character is not part of the alphabet or a group
+     *                                  holds a value it can't.
+     */
+    private static int decode(CharSequence encoded, int start, int end, byte[] bytes, char[] chars, int offset) {
+        int length = getDecodedLength(end - start);
+        int written = 0;
+        long bits = 0;
+        int bitCount = 0;
+        int i = start;
+        while (i < end) {
+            int groupChars = Math.min(GROUP_CHARS, end - i);
+            int groupBits = groupChars == GROUP_CHARS ? GROUP_BITS : TAIL_BITS[groupChars];
+            int value = 0;
+            for (int j = groupChars - 1; j >= 0; j--)
+                value = value * BASE + digitOf(encoded.charAt(i + j));
+            if (value >>> groupBits != 0)
+                throw new IllegalArgumentException("Invalid encoded group at " + i);
+            i += groupChars;
+            bits = (bits << groupBits) | value;
+            bitCount += groupBits;
+            while (bitCount >= 8 && written < length) {
+                bitCount -= 8;
+                int b = (int) (bits >>> bitCount) & 0xFF;
+                if (bytes != null)
+                    bytes[offset + written++] = (byte) b;
+                else
+                    chars[offset + written++] = (char) b;
+            }
+            bits &= (1L << bitCount) - 1;
+        }
+        return written;
+    }
+
+    /**
+     * Appends a value as digits of the alphabet, least significant first.
+     *
+     * @param destination where the digits are appended.
+     * @param value       the value to append.
+     * @param digits      the number of digits to append.
+     */
+    static void appendDigits(StringBuilder destination, int value, int digits) {
+        for (int i = 0; i < digits; i++) {
+            destination.append(ALPHABET.charAt(value % BASE));
+            value /= BASE;
+        }
+    }
+
+    /**
+     * @param c a character.
+     * @return the value of the character in the alphabet.
+     * @throws IllegalArgumentException if the character is not part of the alphabet.
+     */
+    static int digitOf(char c) {
+        int digit = c < TABLE_SIZE ? DIGITS[c] : NOT_IN_ALPHABET;
+        if (digit == NOT_IN_ALPHABET)
+            throw new IllegalArgumentException("Character not part of the alphabet: " + c);
+        return digit;
+    }
+}
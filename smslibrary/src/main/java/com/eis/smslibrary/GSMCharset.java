@@ -0,0 +1,90 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Lookup table for the GSM 03.38 character set, used to classify a text in a single pass without
+ * regular expressions.
+ * Every char is mapped to the number of septets it takes once encoded: 1 for characters of the
+ * basic character set, 2 for characters of the extension table (escape character + the character
+ * itself), 0 for characters that can't be encoded in GSM 7-bit and force UCS-2.
+ */
+final class GSMCharset {
+
+    /**
+     * Returned by {@link #countSeptets(CharSequence)} when the text needs to be sent as UCS-2
+     */
+    static final int NOT_GSM_ENCODABLE = -1;
+
+    static final int NOT_GSM_SEPTETS = 0;
+    static final int BASIC_SEPTETS = 1;
+    static final int EXTENSION_SEPTETS = 2;
+
+    private static final String BASIC_CHARACTERS = "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&‘()*+,-./" +
+            "0123456789:;<=>?¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+    private static final String EXTENSION_CHARACTERS = "\f^{}\\[~]|€";
+
+    /**
+     * All the GSM characters but '‘' and '€' are below this value, those two are checked apart so
+     * that the table stays small
+     */
+    private static final int TABLE_SIZE = 0x400;
+    private static final char LEFT_QUOTATION_MARK = '‘';
+    private static final char EURO_SIGN = '€';
+    private static final byte[] SEPTETS_TABLE = new byte[TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < BASIC_CHARACTERS.length(); i++) {
+            char c = BASIC_CHARACTERS.charAt(i);
+            if (c < TABLE_SIZE)
+                SEPTETS_TABLE[c] = BASIC_SEPTETS;
+        }
+        for (int i = 0; i < EXTENSION_CHARACTERS.length(); i++) {
+            char c = EXTENSION_CHARACTERS.charAt(i);
+            if (c < TABLE_SIZE)
+                SEPTETS_TABLE[c] = EXTENSION_SEPTETS;
+        }
+    }
+
+    /**
+     * Private constructor, this class only has static methods
+     */
+    private GSMCharset() {
+    }
+
+    /**
+     * Retrieves the number of septets a single character takes in GSM 7-bit encoding.
+     *
+     * @param c the character to look up.
+     * @return {@link #BASIC_SEPTETS}, {@link #EXTENSION_SEPTETS} or {@link #NOT_GSM_SEPTETS} if
+     * the character is not part of the GSM 03.38 character set.
+     */
+    static int septetsOf(char c) {
+        if (c < TABLE_SIZE)
+            return SEPTETS_TABLE[c];
+        if (c == LEFT_QUOTATION_MARK)
+            return BASIC_SEPTETS;
+        if (c == EURO_SIGN)
+            return EXTENSION_SEPTETS;
+        return NOT_GSM_SEPTETS;
+    }
+
+    /**
+     * Counts the septets needed to send the given text in GSM 7-bit encoding, stopping as soon as
+     * a character outside the GSM 03.38 character set is found.
+     *
+     * @param text the text to be checked.
+     * @return the number of septets if the whole text is GSM encodable, {@link #NOT_GSM_ENCODABLE}
+     * if it has to be sent as UCS-2.
+     */
+    static int countSeptets(@NonNull CharSequence text) {
+        int septets = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int charSeptets = septetsOf(text.charAt(i));
+            if (charSeptets == NOT_GSM_SEPTETS)
+                return NOT_GSM_ENCODABLE;
+            septets += charSeptets;
+        }
+        return septets;
+    }
+}
@@ -0,0 +1,174 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.PendingResult;
+import com.eis.smslibrary.listeners.SMSDeliveredListener;
+import com.eis.smslibrary.listeners.SMSSentListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Aggregated results of the messages sent together with {@link SMSManager#sendMessages} or
+ * {@link SMSManager#broadcastMessage}. Counters are updated as the reports come in, and the two
+ * results are completed once every message has been sent and once every sent message has been
+ * delivered.
+ * Messages whose peer is not valid are rejected before sending and counted apart.
+ */
+public class SMSBulkReport {
+
+    private final int messageCount;
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicIntegerArray sentStates = new AtomicIntegerArray(SMSMessage.SentState.values().length);
+    private final AtomicIntegerArray deliveredStates = new AtomicIntegerArray(SMSMessage.DeliveredState.values().length);
+    private final ConcurrentLinkedQueue<SMSMessage> rejectedMessages = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<SMSMessage> failedMessages = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Messages still waiting for a sent or delivered report, rejected and failed ones included until
+     * the whole bulk has been submitted
+     */
+    private final AtomicInteger awaitingSent;
+    private final AtomicInteger awaitingDelivered;
+    private final PendingResult<SMSBulkReport> sentResult = new PendingResult<>();
+    private final PendingResult<SMSBulkReport> deliveredResult = new PendingResult<>();
+
+    private final SMSSentListener sentListener = new SMSSentListener() {
+        @Override
+        public void onSMSSent(SMSMessage message, SMSMessage.SentState sentState) {
+            sentStates.incrementAndGet(sentState.ordinal());
+            if (sentState != SMSMessage.SentState.MESSAGE_SENT) {
+                failedMessages.add(message);
+                awaitDelivered();
+            }
+            awaitSent();
+        }
+    };
+
+    private final SMSDeliveredListener deliveredListener = new SMSDeliveredListener() {
+        @Override
+        public void onSMSDelivered(SMSMessage message, SMSMessage.DeliveredState deliveredState) {
+            deliveredStates.incrementAndGet(deliveredState.ordinal());
+            awaitDelivered();
+        }
+    };
+
+    /**
+     * Constructor for the report of a bulk.
+     *
+     * @param messageCount the number of messages in the bulk.
+     */
+    SMSBulkReport(int messageCount) {
+        this.messageCount = messageCount;
+        // One more, released by onSubmitted, so the results can't complete while still submitting
+        awaitingSent = new AtomicInteger(messageCount + 1);
+        awaitingDelivered = new AtomicInteger(messageCount + 1);
+    }
+
+    /**
+     * Counts a message that couldn't be sent because its peer isn't valid.
+     *
+     * @param message the rejected message.
+     */
+    void onRejected(@NonNull SMSMessage message) {
+        rejected.incrementAndGet();
+        rejectedMessages.add(message);
+        awaitSent();
+        awaitDelivered();
+    }
+
+    /**
+     * Called once every message of the bulk has been handed to the transport or rejected.
+     */
+    void onSubmitted() {
+        awaitSent();
+        awaitDelivered();
+    }
+
+    private void awaitSent() {
+        if (awaitingSent.decrementAndGet() == 0)
+            sentResult.complete(this);
+    }
+
+    private void awaitDelivered() {
+        if (awaitingDelivered.decrementAndGet() == 0)
+            deliveredResult.complete(this);
+    }
+
+    /**
+     * @return the listener every message of the bulk is sent with.
+     */
+    SMSSentListener getSentListener() {
+        return sentListener;
+    }
+
+    /**
+     * @return the listener every message of the bulk is delivered with.
+     */
+    SMSDeliveredListener getDeliveredListener() {
+        return deliveredListener;
+    }
+
+    /**
+     * @return the number of messages in the bulk.
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return the number of messages rejected before sending because of their peer.
+     */
+    public int getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @param sentState a state a message can be sent with.
+     * @return the number of messages sent with that state so far.
+     */
+    public int getSentCount(@NonNull SMSMessage.SentState sentState) {
+        return sentStates.get(sentState.ordinal());
+    }
+
+    /**
+     * @param deliveredState a state a message can be delivered with.
+     * @return the number of messages delivered with that state so far.
+     */
+    public int getDeliveredCount(@NonNull SMSMessage.DeliveredState deliveredState) {
+        return deliveredStates.get(deliveredState.ordinal());
+    }
+
+    /**
+     * @return the messages rejected before sending because of their peer.
+     */
+    public List<SMSMessage> getRejectedMessages() {
+        return new ArrayList<>(rejectedMessages);
+    }
+
+    /**
+     * @return the messages that failed to be sent so far, so that they can be sent again.
+     */
+    public List<SMSMessage> getFailedMessages() {
+        return new ArrayList<>(failedMessages);
+    }
+
+    /**
+     * @return the result completed with this report once every message has been sent or has failed.
+     */
+    public PendingResult<SMSBulkReport> getSentResult() {
+        return sentResult;
+    }
+
+    /**
+     * @return the result completed with this report once every message sent has been delivered or
+     * has failed to be.
+     */
+    public PendingResult<SMSBulkReport> getDeliveredResult() {
+        return deliveredResult;
+    }
+}
@@ -0,0 +1,299 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smslibrary.exceptions.InvalidSMSMessageException;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary codec for {@link SMSMessage} and {@link SMSPeer}, used instead of Java
+ * serialization to pass them between components and processes.
+ * It writes nothing but a version byte and the strings, each one as its UTF-8 bytes prefixed by
+ * their length as a varint: no class descriptors, no field names.
+ * <p>
+ * Format, all lengths are unsigned varints:
+ * <pre>
+ * peer:     [version][address length][address]
+ * message:  [version][address length][address][text length][text]
+ * messages: [version][count] ([address length][address][text length][text])*
+ * </pre>
+ */
+public final class SMSCodec {
+
+    static final byte VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String MALFORMED_EXC_MSG = "Malformed encoded data";
+
+    private SMSCodec() {
+    }
+
+    /**
+     * Encodes a peer.
+     *
+     * @param peer the peer to encode.
+     * @return the encoded peer.
+     */
+    @NonNull
+    public static byte[] toBytes(@NonNull SMSPeer peer) {
+        Writer writer = new Writer(1 + 5 + peer.getAddress().length());
+        writer.writeByte(VERSION);
+        writer.writeString(peer.getAddress());
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes a message.
+     *
+     * @param message the message to encode.
+     * @return the encoded message.
+     */
+    @NonNull
+    public static byte[] toBytes(@NonNull SMSMessage message) {
+        Writer writer = new Writer(1 + estimateSize(message));
+        writer.writeByte(VERSION);
+        writeMessage(writer, message);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes a list of messages.
+     *
+     * @param messages the messages to encode.
+     * @return the encoded messages.
+     */
+    @NonNull
+    public static byte[] toBytes(@NonNull List<SMSMessage> messages) {
+        int size = 1 + 5;
+        for (SMSMessage message : messages)
+            size += estimateSize(message);
+        Writer writer = new Writer(size);
+        writer.writeByte(VERSION);
+        writer.writeVarInt(messages.size());
+        for (SMSMessage message : messages)
+            writeMessage(writer, message);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes a peer encoded with {@link #toBytes(SMSPeer)}.
+     *
+     * @param bytes the encoded peer.
+     * @return the decoded peer.
+     * @throws IllegalArgumentException if the bytes are not a peer encoded by this codec.
+     */
+    @NonNull
+    public static SMSPeer peerFromBytes(@NonNull byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        reader.readVersion();
+        SMSPeer peer = new SMSPeer(reader.readString());
+        reader.checkEnd();
+        return peer;
+    }
+
+    /**
+     * Decodes a message encoded with {@link #toBytes(SMSMessage)}.
+     *
+     * @param bytes the encoded message.
+     * @return the decoded message.
+     * @throws IllegalArgumentException if the bytes are not a message encoded by this codec.
+     */
+    @NonNull
+    public static SMSMessage messageFromBytes(@NonNull byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        reader.readVersion();
+        SMSMessage message = readMessage(reader);
+        reader.checkEnd();
+        return message;
+    }
+
+    /**
+     * Decodes a list of messages encoded with {@link #toBytes(List)}.
+     *
+     * @param bytes the encoded messages.
+     * @return the decoded messages, in the same order.
+     * @throws IllegalArgumentException if the bytes are not messages encoded by this codec.
+     */
+    @NonNull
+    public static ArrayList<SMSMessage> messagesFromBytes(@NonNull byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        reader.readVersion();
+        int count = reader.readVarInt();
+        // Every message takes at least two bytes, don't trust the count any further than that
+        if (count > bytes.length / 2)
+            throw new IllegalArgumentException(MALFORMED_EXC_MSG);
+        ArrayList<SMSMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            messages.add(readMessage(reader));
+        reader.checkEnd();
+        return messages;
+    }
+
+    /**
+     * @param message a message.
+     * @return the bytes most likely needed to encode the message, without the version.
+     */
+    private static int estimateSize(SMSMessage message) {
+        return 10 + message.getPeer().getAddress().length() + message.getData().length();
+    }
+
+    private static void writeMessage(Writer writer, SMSMessage message) {
+        writer.writeString(message.getPeer().getAddress());
+        writer.writeString(message.getData());
+    }
+
+    private static SMSMessage readMessage(Reader reader) {
+        SMSPeer peer = new SMSPeer(reader.readString());
+        String text = reader.readString();
+        // The text may come from another process, it's checked as any other message's
+        try {
+            return new SMSMessage(peer, text);
+        } catch (InvalidSMSMessageException e) {
+            throw new IllegalArgumentException(MALFORMED_EXC_MSG, e);
+        }
+    }
+
+    /**
+     * Growable buffer encoding strings straight into UTF-8, without intermediate arrays
+     */
+    private static class Writer {
+        private byte[] buffer;
+        private int position;
+
+        private Writer(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, position + extra)];
+                System.arraycopy(buffer, 0, grown, 0, position);
+                buffer = grown;
+            }
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * Writes the UTF-8 length of the string followed by its UTF-8 bytes.
+         *
+         * @param string the string to write.
+         */
+        private void writeString(String string) {
+            int length = string.length();
+            int utf8Length = 0;
+            for (int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                if (c < 0x80)
+                    utf8Length++;
+                else if (c < 0x800)
+                    utf8Length += 2;
+                else if (!Character.isSurrogate(c))
+                    utf8Length += 3;
+                else if (isSurrogatePair(string, i)) {
+                    utf8Length += 4;
+                    i++;
+                } else
+                    utf8Length++;
+            }
+            writeVarInt(utf8Length);
+            ensureCapacity(utf8Length);
+            for (int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xC0 | (c >> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (!Character.isSurrogate(c)) {
+                    buffer[position++] = (byte) (0xE0 | (c >> 12));
+                    buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (isSurrogatePair(string, i)) {
+                    int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    // A lone surrogate can't be encoded, it's replaced like String.getBytes() does
+                    buffer[position++] = '?';
+                }
+            }
+        }
+
+        private static boolean isSurrogatePair(String string, int index) {
+            return Character.isHighSurrogate(string.charAt(index)) && index + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(index + 1));
+        }
+
+        private byte[] toByteArray() {
+            if (position == buffer.length)
+                return buffer;
+            byte[] bytes = new byte[position];
+            System.arraycopy(buffer, 0, bytes, 0, position);
+            return bytes;
+        }
+    }
+
+    /**
+     * Reads the values written by {@link Writer}, throwing IllegalArgumentException on malformed data
+     */
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private void readVersion() {
+            if (bytes.length == 0 || bytes[position++] != VERSION)
+                throw new IllegalArgumentException("Unknown encoding version");
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (position >= bytes.length)
+                    throw new IllegalArgumentException(MALFORMED_EXC_MSG);
+                byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0)
+                        break;
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException(MALFORMED_EXC_MSG);
+        }
+
+        private String readString() {
+            int length = readVarInt();
+            if (length > bytes.length - position)
+                throw new IllegalArgumentException(MALFORMED_EXC_MSG);
+            String string = new String(bytes, position, length, UTF_8);
+            position += length;
+            return string;
+        }
+
+        private void checkEnd() {
+            if (position != bytes.length)
+                throw new IllegalArgumentException(MALFORMED_EXC_MSG);
+        }
+    }
+}
@@ -16,6 +16,18 @@ import java.util.ArrayList;
  */
 final class SMSCore {
 
+    /**
+     * {@link SMSTransport} sending through {@link #sendMessages}
+     */
+    static final SMSTransport TRANSPORT = new SMSTransport() {
+        @Override
+        public void sendMessages(@NonNull ArrayList<String> parts, @NonNull String phoneNumber,
+                                 @Nullable ArrayList<PendingIntent> sentPIs,
+                                 @Nullable ArrayList<PendingIntent> deliveredPIs) {
+            SMSCore.sendMessages(parts, phoneNumber, sentPIs, deliveredPIs);
+        }
+    };
+
     /**
      * Calls the library method to send a single message
      *
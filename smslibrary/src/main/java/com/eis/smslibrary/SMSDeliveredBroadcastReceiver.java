@@ -6,42 +6,55 @@ import android.content.Context;
 import android.content.Intent;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.eis.smslibrary.listeners.SMSDeliveredListener;
 
-import java.util.ArrayList;
-
 /**
  * Broadcast receiver for delivered messages, called by Android Library.
  * Must be instantiated and set as receiver with context.registerReceiver(...).
  * There has to be one different DeliveredBroadcastReceiver per message sent,
- * so every IntentFilter name has to be different
+ * so every IntentFilter name has to be different, unless it's tracked by a
+ * {@link SMSReportDispatcher}
  *
  * @author Marco Cognolato, Giovanni Velludo
  */
-public class SMSDeliveredBroadcastReceiver extends BroadcastReceiver {
+public class SMSDeliveredBroadcastReceiver extends BroadcastReceiver implements SMSReportTracker {
 
     private final SMSDeliveredListener listener;
+    private final SMSMetrics metrics;
     private final SMSMessage message;
+    private final long startNanos;
     private short partsToDeliverCounter;
 
     /**
      * Constructor for the custom {@link BroadcastReceiver}.
      *
-     * @param parts    the parts of the message to be delivered.
+     * @param message  the message that will be delivered, passed to the listener as it is.
+     * @param parts    the number of parts the message has been divided in.
      * @param listener the listener to be called when the operation is completed
-     * @param peer     the peer to whom the message will be delivered.
      */
-    SMSDeliveredBroadcastReceiver(@NonNull final ArrayList<String> parts,
-                                  @NonNull final SMSDeliveredListener listener,
-                                  @NonNull final SMSPeer peer) {
-        StringBuilder fullMessageText = new StringBuilder();
-        for (String part : parts) {
-            fullMessageText.append(part);
-        }
+    SMSDeliveredBroadcastReceiver(@NonNull final SMSMessage message, final int parts,
+                                  @NonNull final SMSDeliveredListener listener) {
+        this(message, parts, listener, null);
+    }
+
+    /**
+     * Constructor for the custom {@link BroadcastReceiver} reporting to metrics too, the latency
+     * being measured from now.
+     *
+     * @param message  the message that will be delivered, passed to the listener as it is.
+     * @param parts    the number of parts the message has been divided in.
+     * @param listener the listener to be called when the operation is completed, can be null.
+     * @param metrics  the metrics to be called when the operation is completed, can be null.
+     */
+    SMSDeliveredBroadcastReceiver(@NonNull final SMSMessage message, final int parts,
+                                  @Nullable final SMSDeliveredListener listener, @Nullable final SMSMetrics metrics) {
         this.listener = listener;
-        this.message = new SMSMessage(peer, fullMessageText.toString());
-        this.partsToDeliverCounter = (short) parts.size(); // they can't be more than 255
+        this.metrics = metrics;
+        this.message = message;
+        this.partsToDeliverCounter = (short) parts; // they can't be more than 255
+        this.startNanos = metrics == null ? 0 : System.nanoTime();
     }
 
     /**
@@ -51,9 +64,22 @@ public class SMSDeliveredBroadcastReceiver extends BroadcastReceiver {
      */
     @Override
     public void onReceive(Context context, Intent intent) {
+        if (onPartReport(getResultCode()))
+            context.unregisterReceiver(this);
+    }
+
+    /**
+     * Interprets the state of a single part of the message and calls the listener once every part
+     * has been delivered, or as soon as one of them reports an error.
+     *
+     * @param resultCode the result code of the broadcast for the part.
+     * @return true if the listener has been called and no more reports are expected, false otherwise.
+     */
+    @Override
+    public boolean onPartReport(int resultCode) {
         SMSMessage.DeliveredState deliveredState;
 
-        switch (getResultCode()) {
+        switch (resultCode) {
             case Activity.RESULT_OK:
                 deliveredState = SMSMessage.DeliveredState.MESSAGE_DELIVERED;
                 break;
@@ -66,8 +92,11 @@ public class SMSDeliveredBroadcastReceiver extends BroadcastReceiver {
         }
 
         if (deliveredState == SMSMessage.DeliveredState.MESSAGE_DELIVERED &&
-                --partsToDeliverCounter > 0) return;
-        listener.onSMSDelivered(message, deliveredState);
-        context.unregisterReceiver(this);
+                --partsToDeliverCounter > 0) return false;
+        if (metrics != null)
+            metrics.onDelivered(deliveredState, System.nanoTime() - startNanos);
+        if (listener != null)
+            listener.onSMSDelivered(message, deliveredState);
+        return true;
     }
 }
@@ -0,0 +1,129 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits data of any length into fragments, each one small enough to be sent as a message of its
+ * own, so that it can be put back together by a {@link SMSReassembler} without relying on the
+ * concatenated SMS handling of the platform.
+ * <p>
+ * Every fragment starts with a header of {@link #HEADER_LENGTH} characters: the marker
+ * {@link #FRAGMENT_MARKER}, the id of the transfer (3 characters), the index of the fragment and
+ * the number of fragments (2 characters each). Numbers are written in base 102 with the digits of
+ * {@link GSMBinaryParseStrategy}, least significant first, so the header is GSM 7-bit safe.
+ */
+public final class SMSFragmenter {
+
+    public static final char FRAGMENT_MARKER = '¤';
+    public static final int HEADER_LENGTH = 8;
+    /**
+     * Default number of data characters in a fragment: with its header and the prefix of the default
+     * parse strategy a fragment fits a single GSM 7-bit segment, if it has no extension characters
+     */
+    public static final int DEFAULT_FRAGMENT_LENGTH = 150;
+
+    static final int TRANSFER_ID_DIGITS = 3;
+    static final int INDEX_DIGITS = 2;
+    static final int MAX_TRANSFER_ID = GSMBinaryParseStrategy.BASE * GSMBinaryParseStrategy.BASE * GSMBinaryParseStrategy.BASE;
+    /**
+     * Fragments of a transfer must be fewer than this, the largest number 2 digits can hold plus one
+     */
+    static final int MAX_FRAGMENTS = GSMBinaryParseStrategy.BASE * GSMBinaryParseStrategy.BASE;
+
+    /**
+     * Next transfer id, starting from a random one so that ids don't repeat after a restart
+     */
+    private static final AtomicInteger transferCounter = new AtomicInteger(new Random().nextInt(MAX_TRANSFER_ID));
+
+    /**
+     * Private constructor, this class only has static methods
+     */
+    private SMSFragmenter() {
+    }
+
+    /**
+     * Splits data into fragments of {@link #DEFAULT_FRAGMENT_LENGTH} characters.
+     *
+     * @param peer the peer the fragments will be sent to.
+     * @param data the data to split.
+     * @return the fragments, in order.
+     * @throws IllegalArgumentException if the data needs at least {@link #MAX_FRAGMENTS} fragments.
+     */
+    @NonNull
+    public static List<SMSMessage> split(@NonNull SMSPeer peer, @NonNull String data) {
+        return split(peer, data, DEFAULT_FRAGMENT_LENGTH);
+    }
+
+    /**
+     * Splits data into fragments of at most the given number of characters, never between the two
+     * chars of a surrogate pair.
+     * Even data short enough for a single message is sent as a fragment, with its header.
+     *
+     * @param peer           the peer the fragments will be sent to.
+     * @param data           the data to split.
+     * @param fragmentLength the max number of data characters in a fragment, at least 2.
+     * @return the fragments, in order.
+     * @throws IllegalArgumentException if the fragment length is out of range or the data needs
+     *                                  at least {@link #MAX_FRAGMENTS} fragments.
+     */
+    @NonNull
+    public static List<SMSMessage> split(@NonNull SMSPeer peer, @NonNull String data, int fragmentLength) {
+        if (fragmentLength < 2 || fragmentLength > SMSMessage.MAX_UCS2_MSG_TEXT_LEN - HEADER_LENGTH)
+            throw new IllegalArgumentException("Fragment length out of range: " + fragmentLength);
+        ArrayList<Integer> ends = new ArrayList<>(data.length() / fragmentLength + 1);
+        int start = 0;
+        do {
+            int end = Math.min(data.length(), start + fragmentLength);
+            if (end < data.length() && Character.isHighSurrogate(data.charAt(end - 1)))
+                end--;
+            ends.add(end);
+            start = end;
+        } while (start < data.length());
+        int count = ends.size();
+        // The count has to fit the same digits as the indexes
+        if (count >= MAX_FRAGMENTS)
+            throw new IllegalArgumentException("Data too long, it would take " + count + " fragments");
+
+        int transferId = nextTransferId();
+        List<SMSMessage> fragments = new ArrayList<>(count);
+        start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = ends.get(i);
+            StringBuilder fragment = new StringBuilder(HEADER_LENGTH + end - start);
+            fragment.append(FRAGMENT_MARKER);
+            GSMBinaryParseStrategy.appendDigits(fragment, transferId, TRANSFER_ID_DIGITS);
+            GSMBinaryParseStrategy.appendDigits(fragment, i, INDEX_DIGITS);
+            GSMBinaryParseStrategy.appendDigits(fragment, count, INDEX_DIGITS);
+            fragment.append(data, start, end);
+            fragments.add(new SMSMessage(peer, fragment.toString()));
+            start = end;
+        }
+        return fragments;
+    }
+
+    /**
+     * @param message a message.
+     * @return true if the message starts with a fragment header, false otherwise.
+     */
+    public static boolean isFragment(@NonNull SMSMessage message) {
+        String data = message.getData();
+        return data.length() >= HEADER_LENGTH && data.charAt(0) == FRAGMENT_MARKER;
+    }
+
+    /**
+     * @return a new transfer id, in [0, {@link #MAX_TRANSFER_ID}).
+     */
+    private static int nextTransferId() {
+        while (true) {
+            int current = transferCounter.get();
+            int next = current + 1 == MAX_TRANSFER_ID ? 0 : current + 1;
+            if (transferCounter.compareAndSet(current, next))
+                return current;
+        }
+    }
+}
@@ -8,20 +8,28 @@ import android.telephony.SmsManager;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.eis.communication.CommunicationManager;
+import com.eis.smslibrary.exceptions.InvalidSMSMessageException;
 import com.eis.smslibrary.exceptions.InvalidTelephoneNumberException;
 import com.eis.smslibrary.listeners.SMSDeliveredListener;
+import com.eis.smslibrary.listeners.SMSReceivedListener;
 import com.eis.smslibrary.listeners.SMSReceivedServiceListener;
 import com.eis.smslibrary.listeners.SMSSentListener;
 
 import java.util.ArrayList;
-
-import it.lucacrema.preferences.PreferencesManager;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Communication handler for SMSs. It's a Singleton, you should
  * access it with {@link #getInstance}
+ * Messages can be sent from any thread at the same time: ids are generated atomically and the
+ * state shared by the send path is either immutable, volatile or held by concurrent collections.
  *
  * @author Luca Crema, Marco Mariotto, Alberto Ursino, Marco Tommasini, Marco Cognolato, Giovanni Velludo
  * @since 29/11/2019
@@ -32,11 +40,7 @@ public class SMSManager implements CommunicationManager<SMSMessage> {
     public static final String SENT_MESSAGE_INTENT_ACTION = "SMS_SENT";
     public static final String DELIVERED_MESSAGE_INTENT_ACTION = "SMS_DELIVERED";
     public static final int RANDOM_STARTING_COUNTER_VALUE_RANGE = 100000;
-
-    /**
-     * Singleton instance
-     */
-    private static SMSManager instance;
+    private static final String DISPATCHER_ACTION_PREFIX = "com.eis.smslibrary.";
 
     /**
      * Received listener reference
@@ -47,25 +51,77 @@ public class SMSManager implements CommunicationManager<SMSMessage> {
      * This message counter is used so that we can have a different action name
      * for pending intent (that will call broadcastReceiver). If we were to use the
      * same action name for every message we would have a conflict and we wouldn't
-     * know what message has been sent
+     * know what message has been sent.
+     * It's atomic so that messages sent from different threads never share an id
+     */
+    private final AtomicLong messageCounter;
+
+    /**
+     * Whether messages are split by {@link SMSSegmentPlan} instead of
+     * {@link SmsManager#divideMessage(String)}
      */
-    private long messageCounter;
+    private volatile boolean librarySplitterEnabled;
+
+    /**
+     * Plan of the last text split by the library splitter, reused while the same text is sent
+     */
+    private volatile SMSSegmentPlan lastPlan;
+
+    /**
+     * Whether sent and delivered reports are received by the two long-lived dispatchers below
+     * instead of a new {@link android.content.BroadcastReceiver} per message
+     */
+    private volatile boolean reportDispatcherEnabled;
+    private final SMSReportDispatcher deliveredDispatcher;
+    private final SMSReportDispatcher sentDispatcher;
+
+    /**
+     * Transport used to send messages, and the queue in front of it when a rate limit is set.
+     * Both are written while holding this, but read without any lock by every send, so they're volatile
+     */
+    private volatile SMSTransport transport = SMSCore.TRANSPORT;
+    private volatile SMSSendQueue sendQueue;
+
+    /**
+     * Engine sending again the messages that failed, once a retry policy is set
+     */
+    private final SMSRetryEngine retryEngine = new SMSRetryEngine(this);
+
+    /**
+     * Journal messages are recorded in while being sent, if set
+     */
+    private volatile SMSOutboxJournal outboxJournal;
+
+    /**
+     * Metrics told about every message sent, if set
+     */
+    private volatile SMSMetrics metrics;
 
     /**
      * Private constructor for Singleton
      */
     private SMSManager() {
         //Random because if we close and open the app the value probably differs
-        messageCounter = (int) (Math.random() * RANDOM_STARTING_COUNTER_VALUE_RANGE);
+        messageCounter = new AtomicLong((int) (Math.random() * RANDOM_STARTING_COUNTER_VALUE_RANGE));
+        deliveredDispatcher = new SMSReportDispatcher(
+                DISPATCHER_ACTION_PREFIX + DELIVERED_MESSAGE_INTENT_ACTION, null);
+        sentDispatcher = new SMSReportDispatcher(
+                DISPATCHER_ACTION_PREFIX + SENT_MESSAGE_INTENT_ACTION, deliveredDispatcher);
     }
 
     /**
      * @return the current instance of this class
      */
     public static SMSManager getInstance() {
-        if (instance == null)
-            instance = new SMSManager();
-        return instance;
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Holds the singleton instance, created by the class loader the first time it's used, so
+     * that every thread sees the same fully built instance without taking any lock
+     */
+    private static class InstanceHolder {
+        private static final SMSManager INSTANCE = new SMSManager();
     }
 
     /**
@@ -131,68 +187,534 @@ public class SMSManager implements CommunicationManager<SMSMessage> {
             String invMessage = message.getPeer().getInvalidityMessage();
             throw new InvalidTelephoneNumberException(invReason, invMessage);
         }
-        ArrayList<String> texts = SmsManager.getDefault().divideMessage(getSMSContent(message));
+        if (context == null) {
+            send(message, sentListener, deliveredListener, null);
+            return;
+        }
+        SMSOutboxJournal journal = outboxJournal;
+        long journalId = journal == null ? 0 : journal.recordEnqueued(message);
+        send(message, trackRecovery(message, sentListener, deliveredListener, context, journal, journalId),
+                deliveredListener, context);
+    }
+
+    /**
+     * Wraps the sent listener of a message so that it's completed in the outbox journal and retried,
+     * if they have been set.
+     *
+     * @param message           the message about to be sent
+     * @param sentListener      the listener to wrap, can be null
+     * @param deliveredListener the delivered listener the message may be sent again with, can be null
+     * @param context           The context of the application used to setup the listener
+     * @param journal           the journal the message has been recorded in, null if it hasn't
+     * @param journalId         the id of the message in the journal
+     * @return the listener to send the message with, null if nothing has to be tracked.
+     */
+    private SMSSentListener trackRecovery(final @NonNull SMSMessage message,
+                                          final @Nullable SMSSentListener sentListener,
+                                          final @Nullable SMSDeliveredListener deliveredListener,
+                                          final @NonNull Context context,
+                                          final @Nullable SMSOutboxJournal journal, final long journalId) {
+        SMSSentListener listener = sentListener;
+        if (journal != null)
+            listener = journal.track(journalId, listener);
+        if (retryEngine.hasPolicies())
+            listener = retryEngine.track(message, listener, deliveredListener, context);
+        return listener;
+    }
+
+    /**
+     * Sends many messages at once, collecting their results in a single report.
+     * Compared to calling {@link #sendMessage} for each of them, consecutive messages with the same
+     * text are split only once, every message is tracked by the two long-lived report dispatchers
+     * instead of registering its own receivers, and the outbox journal is synced once for all of
+     * them. Messages whose peer is not valid are
+     * rejected in the report instead of throwing.
+     * If the transport throws, the exception reaches the caller once the message it threw on and
+     * every message after it have failed in the report with
+     * {@link SMSMessage.SentState#ERROR_GENERIC_FAILURE}, so that the report still completes.
+     * Requires {@link android.Manifest.permission#SEND_SMS}
+     *
+     * @param messages the messages to send, in order
+     * @param context  The context of the application used to receive the reports
+     * @return the report of the messages.
+     */
+    public SMSBulkReport sendMessages(final @NonNull Collection<SMSMessage> messages,
+                                      final @NonNull Context context) {
+        SMSBulkReport report = new SMSBulkReport(messages.size());
+        // Every message is recorded in the journal before sending any, with a single sync
+        SMSOutboxJournal journal = outboxJournal;
+        long[] journalIds = new long[messages.size()];
+        if (journal != null) {
+            int i = 0;
+            for (SMSMessage message : messages)
+                if (message.getPeer().getInvalidityReason() == null)
+                    journalIds[i++] = journal.submitEnqueued(message);
+            // Messages are sent even when they couldn't be recorded, the journal retries on its own
+            journal.flush();
+        }
+        SMSMetrics currentMetrics = metrics;
+        Iterator<SMSMessage> pending = messages.iterator();
+        int journalIndex = 0;
+        String lastContent = null;
+        ArrayList<String> texts = null;
+        try {
+            while (pending.hasNext()) {
+                SMSMessage message = pending.next();
+                if (message.getPeer().getInvalidityReason() != null) {
+                    report.onRejected(message);
+                    continue;
+                }
+                long journalId = journalIds[journalIndex++];
+                long trackingId = nextMessageId();
+                ReportReceivers receivers = new ReportReceivers(trackingId, null, null, context);
+                try {
+                    String content = getSMSContent(message);
+                    if (!content.equals(lastContent)) {
+                        texts = divideMessage(content);
+                        lastContent = content;
+                    }
+                    if (currentMetrics != null)
+                        currentMetrics.onSend(texts.size());
+                    SMSSentListener sentListener = trackRecovery(message, report.getSentListener(),
+                            report.getDeliveredListener(), context, journal, journalId);
+                    ArrayList<PendingIntent> sentPIs = setupDispatcherTracking(sentDispatcher,
+                            new SMSSentBroadcastReceiver(message, texts.size(), sentListener, currentMetrics), texts.size(), trackingId, context);
+                    ArrayList<PendingIntent> deliveredPIs = setupDispatcherTracking(deliveredDispatcher,
+                            new SMSDeliveredBroadcastReceiver(message, texts.size(), report.getDeliveredListener(), currentMetrics), texts.size(), trackingId, context);
+                    transmit(texts, message.getPeer().getAddress(), sentPIs, deliveredPIs, receivers);
+                } catch (RuntimeException e) {
+                    receivers.abandon();
+                    failUnsent(report, message, journal, journalId);
+                    throw e;
+                }
+            }
+        } finally {
+            // Messages after the one the transport threw on are never sent
+            while (pending.hasNext()) {
+                SMSMessage message = pending.next();
+                if (message.getPeer().getInvalidityReason() != null)
+                    report.onRejected(message);
+                else
+                    failUnsent(report, message, journal, journalIds[journalIndex++]);
+            }
+            report.onSubmitted();
+        }
+        return report;
+    }
+
+    /**
+     * Fails a message of a bulk that never reached the transport: its journal record is completed,
+     * since the caller is told, and the report counts it as failed.
+     *
+     * @param report    the report of the bulk.
+     * @param message   the message that couldn't be sent.
+     * @param journal   the journal the message has been recorded in, null if it hasn't
+     * @param journalId the id of the message in the journal
+     */
+    private static void failUnsent(final @NonNull SMSBulkReport report, final @NonNull SMSMessage message,
+                                   final @Nullable SMSOutboxJournal journal, final long journalId) {
+        if (journal != null)
+            journal.recordCompleted(journalId);
+        report.getSentListener().onSMSSent(message, SMSMessage.SentState.ERROR_GENERIC_FAILURE);
+    }
+
+    /**
+     * Sends the same text to many peers, collecting their results in a single report.
+     * The text is checked up front, even when there are no peers, then sent like {@link #sendMessages}.
+     * Requires {@link android.Manifest.permission#SEND_SMS}
+     *
+     * @param text    the text to send
+     * @param peers   the peers to send the text to, in order
+     * @param context The context of the application used to receive the reports
+     * @return the report of the messages.
+     * @throws InvalidSMSMessageException if the text is too long.
+     */
+    public SMSBulkReport broadcastMessage(final @NonNull String text, final @NonNull Collection<SMSPeer> peers,
+                                          final @NonNull Context context) throws InvalidSMSMessageException {
+        SMSMessage.ContentState contentState = SMSMessage.checkMessageText(text);
+        if (contentState != SMSMessage.ContentState.MESSAGE_TEXT_VALID)
+            throw new InvalidSMSMessageException("Message text length exceeds maximum allowed", contentState);
+        ArrayList<SMSMessage> messages = new ArrayList<>(peers.size());
+        SMSMessage template = null;
+        for (SMSPeer peer : peers) {
+            if (template == null)
+                template = new SMSMessage(peer, text);
+            messages.add(template.withPeer(peer));
+        }
+        return sendMessages(messages, context);
+    }
+
+    /**
+     * Sends a message whose peer has already been validated, without setting up any retry.
+     *
+     * @param message           to be sent in the channel to a peer
+     * @param sentListener      called on message sent or on error, can be null
+     * @param deliveredListener called on message delivered or on error, can be null
+     * @param context           The context of the application used to setup the listener
+     */
+    void send(final @NonNull SMSMessage message,
+              final @Nullable SMSSentListener sentListener,
+              final @Nullable SMSDeliveredListener deliveredListener,
+              Context context) {
+        ArrayList<String> texts = divideMessage(getSMSContent(message));
+        SMSMetrics currentMetrics = metrics;
+        if (currentMetrics != null)
+            currentMetrics.onSend(texts.size());
+        long trackingId = nextMessageId();
+        SMSSentBroadcastReceiver sentReceiver = null;
+        // Doesn't make any sense to have a BroadcastReceiver if there is no listener nor metrics
+        if ((sentListener != null || currentMetrics != null) && context != null)
+            sentReceiver = new SMSSentBroadcastReceiver(message, texts.size(), sentListener, currentMetrics);
+        SMSDeliveredBroadcastReceiver deliveredReceiver = null;
+        // Metrics alone don't ask for delivery reports, they may cost the user on some carriers
+        if (deliveredListener != null && context != null)
+            deliveredReceiver = new SMSDeliveredBroadcastReceiver(message, texts.size(), deliveredListener, currentMetrics);
+        // Read once, so that the receivers are dropped the same way they were set up
+        boolean dispatched = reportDispatcherEnabled;
+        // Failed attempts, such as the ones being retried, would otherwise leave it registered
+        if (sentReceiver != null && !dispatched)
+            sentReceiver.setDeliveredReceiver(deliveredReceiver);
         ArrayList<PendingIntent> sentPIs =
-                setupNewSentReceiver(texts, sentListener, message.getPeer(), context);
+                setupNewSentReceiver(texts, sentReceiver, dispatched, trackingId, context);
         ArrayList<PendingIntent> deliveredPIs =
-                setupNewDeliverReceiver(texts, deliveredListener, message.getPeer(), context);
-        SMSCore.sendMessages(texts, message.getPeer().getAddress(), sentPIs, deliveredPIs);
+                setupNewDeliverReceiver(texts, deliveredReceiver, dispatched, trackingId, context);
+        transmit(texts, message.getPeer().getAddress(), sentPIs, deliveredPIs, dispatched
+                ? new ReportReceivers(trackingId, null, null, context)
+                : new ReportReceivers(trackingId, sentReceiver, deliveredReceiver, context));
+    }
+
+    /**
+     * Hands the parts of a message to the transport, going through the send queue if a rate limit
+     * has been set.
+     *
+     * @param texts        the parts of the message to be sent.
+     * @param phoneNumber  peer phone address
+     * @param sentPIs      {@link ArrayList} of pending intents for a broadcast on message sent, can be null
+     * @param deliveredPIs {@link ArrayList} of pending intents for a broadcast on message delivered, can be null
+     * @param receivers    the receivers waiting for the reports of the message: if the transport
+     *                     throws they stop waiting, and the exception reaches the caller unless the
+     *                     message was queued, in which case it fails with
+     *                     {@link SMSMessage.SentState#ERROR_GENERIC_FAILURE}.
+     */
+    private void transmit(final @NonNull ArrayList<String> texts, final @NonNull String phoneNumber,
+                          final @Nullable ArrayList<PendingIntent> sentPIs,
+                          final @Nullable ArrayList<PendingIntent> deliveredPIs,
+                          final @NonNull ReportReceivers receivers) {
+        SMSSendQueue queue = sendQueue;
+        if (queue != null) {
+            queue.enqueue(texts, phoneNumber, sentPIs, deliveredPIs, receivers);
+            return;
+        }
+        try {
+            transport.sendMessages(texts, phoneNumber, sentPIs, deliveredPIs);
+        } catch (RuntimeException e) {
+            receivers.abandon();
+            throw e;
+        }
+    }
+
+    /**
+     * Limits the rate at which messages are sent: from now on messages go through a {@link SMSSendQueue}
+     * that sends at most {@code segments} sms segments every {@code window}, spreading bursts over
+     * time instead of letting the carrier reject them with
+     * {@link SMSMessage.SentState#ERROR_LIMIT_EXCEEDED}.
+     * Messages are still sent in order, but {@link #sendMessage} no longer sends them on the calling
+     * thread.
+     *
+     * @param segments maximum number of segments sent in a window, also the maximum burst size.
+     * @param window   the duration of the window.
+     * @param unit     the time unit of the window.
+     * @throws IllegalArgumentException if segments or window are not positive.
+     */
+    public synchronized void setRateLimit(int segments, long window, @NonNull TimeUnit unit) {
+        SMSTokenBucket tokenBucket = new SMSTokenBucket(segments, unit.toNanos(window), System.nanoTime());
+        if (sendQueue == null)
+            sendQueue = new SMSSendQueue(transport, tokenBucket);
+        else
+            sendQueue.setTokenBucket(tokenBucket);
+    }
+
+    /**
+     * Removes the rate limit set with {@link #setRateLimit(int, long, TimeUnit)}. Messages still in
+     * the queue are sent as soon as possible, and new messages keep going through the queue so that
+     * they are sent after them.
+     */
+    public synchronized void removeRateLimit() {
+        if (sendQueue != null)
+            sendQueue.setTokenBucket(null);
+    }
+
+    /**
+     * @return the queue messages go through once a rate limit has been set, null if it was never set.
+     */
+    public SMSSendQueue getSendQueue() {
+        return sendQueue;
+    }
+
+    /**
+     * Sets how messages failing to be sent with the given state are sent again. Failed messages are
+     * sent again whole, after a delay growing exponentially with every attempt, and their sent
+     * listener is only called with the result of the last attempt.
+     * Only messages sent with a context are retried, since the result of every attempt has to be
+     * received.
+     *
+     * @param state  the state a message fails with, such as {@link SMSMessage.SentState#ERROR_NO_SERVICE}.
+     * @param policy the policy used to send it again.
+     * @throws IllegalArgumentException if the state is {@link SMSMessage.SentState#MESSAGE_SENT}.
+     */
+    public void setRetryPolicy(@NonNull SMSMessage.SentState state, @NonNull SMSRetryPolicy policy) {
+        retryEngine.setPolicy(state, policy);
+    }
+
+    /**
+     * Stops retrying messages failing with the given state. Retries already scheduled are still sent.
+     *
+     * @param state the state a message fails with.
+     */
+    public void removeRetryPolicy(@NonNull SMSMessage.SentState state) {
+        retryEngine.setPolicy(state, null);
+    }
+
+    /**
+     * @return the number of failed messages waiting to be sent again.
+     */
+    public int getPendingRetries() {
+        return retryEngine.getPendingRetries();
     }
 
     /**
-     * Creates a new {@link SMSSentBroadcastReceiver} and registers it to receive broadcasts
+     * Sets the journal messages are recorded in until they're sent, so that the ones still being sent
+     * when the process dies can be sent again with {@link #replayOutbox}.
+     * Only messages sent with a context are recorded, since their result has to be received.
+     *
+     * @param journal the journal to record messages in, null to stop recording them.
+     */
+    public void setOutboxJournal(@Nullable SMSOutboxJournal journal) {
+        outboxJournal = journal;
+    }
+
+    /**
+     * Sends again every message the outbox journal has recorded as not sent yet, usually called once
+     * on startup after {@link #setOutboxJournal}. Messages whose peer or text is no longer valid are
+     * dropped from the journal.
+     * Requires {@link android.Manifest.permission#SEND_SMS}
+     *
+     * @param sentListener      called for every message sent again or on error, can be null
+     * @param deliveredListener called for every message delivered or on error, can be null
+     * @param context           The context of the application used to setup the listeners
+     * @return the number of messages sent again.
+     */
+    public int replayOutbox(final @Nullable SMSSentListener sentListener,
+                            final @Nullable SMSDeliveredListener deliveredListener,
+                            final @NonNull Context context) {
+        SMSOutboxJournal journal = outboxJournal;
+        if (journal == null)
+            return 0;
+        int replayed = 0;
+        for (SMSOutboxJournal.Entry entry : journal.getUnfinished()) {
+            // The message is recorded again before the old record is completed, so it can't be lost
+            try {
+                sendMessage(new SMSMessage(new SMSPeer(entry.getPeerAddress()), entry.getText()),
+                        sentListener, deliveredListener, context);
+                replayed++;
+            } catch (InvalidTelephoneNumberException | InvalidSMSMessageException e) {
+                // Nothing to do, the message can't be sent anymore
+            }
+            journal.recordCompleted(entry.getId());
+        }
+        return replayed;
+    }
+
+    /**
+     * Sets the metrics told about the lifecycle of every message: sent messages, their sent and
+     * delivered reports and how long they took, and the parsing of received messages.
+     * Reports are only received for messages sent with a context: sent reports for all of them,
+     * even without listeners while metrics are set, delivered reports only for the ones sent with
+     * a delivered listener or with {@link #sendMessages}, since metrics don't request them.
+     *
+     * @param metrics the metrics to call, such as a {@link SMSMetricsRecorder}; null to stop calling them.
+     */
+    public void setMetrics(@Nullable SMSMetrics metrics) {
+        this.metrics = metrics;
+        SMSMessageHandler.getInstance().setMetrics(metrics);
+    }
+
+    /**
+     * @return the metrics told about the lifecycle of every message, null if they're not set.
+     */
+    @Nullable
+    public SMSMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Replaces the transport messages are sent with, dropping the send queue.
+     *
+     * @param transport the transport to use.
+     */
+    @VisibleForTesting
+    synchronized void setTransport(@NonNull SMSTransport transport) {
+        this.transport = transport;
+        sendQueue = null;
+    }
+
+    /**
+     * Sends a message to a destination peer via SMS without waiting for the result.
+     * Instead of taking listeners, returns a handle whose results are completed separately once
+     * every part has been sent and once every part has been delivered, so that many messages
+     * can be sent and their results composed without blocking any thread.
+     * Requires {@link android.Manifest.permission#SEND_SMS}
+     *
+     * @param message to be sent in the channel to a peer
+     * @param context The context of the application used to receive the reports
+     * @return the handle for the results of the message.
+     * @throws InvalidTelephoneNumberException If message.peer.invalidityReason is not null.
+     */
+    public SMSSendHandle sendMessageAsync(final @NonNull SMSMessage message,
+                                          final @NonNull Context context) throws InvalidTelephoneNumberException {
+        SMSSendHandle handle = new SMSSendHandle(message);
+        sendMessage(message, handle.getSentListener(), handle.getDeliveredListener(), context);
+        return handle;
+    }
+
+    /**
+     * Sets whether messages should be split in parts by the library itself, using the GSM 03.38
+     * rules of {@link SMSSegmentPlan}, instead of calling {@link SmsManager#divideMessage(String)}.
+     * The library splitter is deterministic and doesn't need the Android runtime, so the same text
+     * always gives the same parts.
+     *
+     * @param enabled true to use the library splitter, false to use the platform one (default).
+     */
+    public void setLibrarySplitterEnabled(boolean enabled) {
+        librarySplitterEnabled = enabled;
+    }
+
+    /**
+     * Sets whether sent and delivered reports should be handled by a single long-lived receiver per
+     * report type, registered once on the application context, instead of registering a new
+     * {@link android.content.BroadcastReceiver} for every message sent with a listener.
+     * Messages are told apart by a tracking id carried in the report intents, so the cost of
+     * tracking a message doesn't grow with the number of messages being sent.
+     *
+     * @param enabled true to use the dispatchers, false to register a receiver per message (default).
+     */
+    public void setReportDispatcherEnabled(boolean enabled) {
+        reportDispatcherEnabled = enabled;
+    }
+
+    /**
+     * Generates the ids used for the intents of a message, safe to call from any thread.
+     *
+     * @return a new id, never returned before.
+     */
+    @VisibleForTesting
+    long nextMessageId() {
+        return messageCounter.getAndIncrement();
+    }
+
+    /**
+     * Splits the text of a message in the parts to be sent, each one fitting in a single sms.
+     *
+     * @param text the text to split, as returned by {@link #getSMSContent(SMSMessage)}.
+     * @return an {@link ArrayList} of the parts to be passed to SMSCore.
+     */
+    private ArrayList<String> divideMessage(@NonNull String text) {
+        if (!librarySplitterEnabled)
+            return SmsManager.getDefault().divideMessage(text);
+        // A template sent to many peers one message at a time is only planned and split once
+        SMSSegmentPlan plan = lastPlan;
+        if (plan == null || !plan.getText().equals(text)) {
+            plan = SMSSegmentPlan.of(text);
+            lastPlan = plan;
+        }
+        return plan.getParts();
+    }
+
+    /**
+     * Registers a {@link SMSSentBroadcastReceiver} to receive broadcasts
      * with actions {@value SENT_MESSAGE_INTENT_ACTION}
      *
-     * @param texts    the parts of the message to be sent.
-     * @param listener the listener to call on broadcast received.
-     * @param context  the context of the application used to setup the listener
-     * @return an {@link ArrayList} of {@link PendingIntent} to be passed to SMSCore.
+     * @param texts          the parts of the message to be sent.
+     * @param onSentReceiver the receiver calling the listener, null if there's nothing to call.
+     * @param dispatched     whether the report dispatcher is enabled.
+     * @param trackingId     the id of the message, used when the report dispatcher is enabled
+     * @param context        the context of the application used to setup the listener
+     * @return an {@link ArrayList} of {@link PendingIntent} to be passed to SMSCore, null if there's
+     * no receiver.
      */
     private ArrayList<PendingIntent> setupNewSentReceiver(
-            final @NonNull ArrayList<String> texts, final @Nullable SMSSentListener listener,
-            final @NonNull SMSPeer peer, Context context) {
-        if (listener == null || context == null)
-            return null; //Doesn't make any sense to have a BroadcastReceiver if there is no listener
+            final @NonNull ArrayList<String> texts, final @Nullable SMSSentBroadcastReceiver onSentReceiver,
+            final boolean dispatched, final long trackingId, Context context) {
+        if (onSentReceiver == null)
+            return null;
+
+        if (dispatched)
+            return setupDispatcherTracking(sentDispatcher, onSentReceiver, texts.size(), trackingId, context);
 
         ArrayList<PendingIntent> intents = new ArrayList<>();
         IntentFilter intentFilter = new IntentFilter();
         for (String text : texts) {
-            String actionName = SENT_MESSAGE_INTENT_ACTION + messageCounter++;
+            String actionName = SENT_MESSAGE_INTENT_ACTION + nextMessageId();
             intents.add(PendingIntent.getBroadcast(context, 0, new Intent(actionName), 0));
             intentFilter.addAction(actionName);
         }
-        SMSSentBroadcastReceiver onSentReceiver = new SMSSentBroadcastReceiver(texts, listener, peer);
         context.registerReceiver(onSentReceiver, intentFilter);
         return intents;
     }
 
     /**
-     * Creates a new {@link SMSDeliveredBroadcastReceiver} and registers it to receive broadcasts
+     * Registers a {@link SMSDeliveredBroadcastReceiver} to receive broadcasts
      * with actions {@value DELIVERED_MESSAGE_INTENT_ACTION}
      *
-     * @param texts    the parts of the message to be delivered.
-     * @param listener the listener to call on broadcast received.
-     * @param context  the context of the application used to setup the listener
-     * @return an {@link ArrayList} of {@link PendingIntent} to be passed to SMSCore.
+     * @param texts             the parts of the message to be delivered.
+     * @param onDeliverReceiver the receiver calling the listener, null if there's no listener.
+     * @param dispatched        whether the report dispatcher is enabled.
+     * @param trackingId        the id of the message, used when the report dispatcher is enabled
+     * @param context           the context of the application used to setup the listener
+     * @return an {@link ArrayList} of {@link PendingIntent} to be passed to SMSCore, null if there's
+     * no receiver: delivery reports are only requested when asked for.
      */
     private ArrayList<PendingIntent> setupNewDeliverReceiver(
-            final @NonNull ArrayList<String> texts, final @Nullable SMSDeliveredListener listener,
-            final @NonNull SMSPeer peer, Context context) {
-        if (listener == null || context == null)
-            return null; //Doesn't make any sense to have a BroadcastReceiver if there is no listener
+            final @NonNull ArrayList<String> texts, final @Nullable SMSDeliveredBroadcastReceiver onDeliverReceiver,
+            final boolean dispatched, final long trackingId, Context context) {
+        if (onDeliverReceiver == null)
+            return null;
+
+        if (dispatched)
+            return setupDispatcherTracking(deliveredDispatcher, onDeliverReceiver, texts.size(), trackingId, context);
 
         ArrayList<PendingIntent> intents = new ArrayList<>();
         IntentFilter intentFilter = new IntentFilter();
         for (String text : texts) {
-            String actionName = DELIVERED_MESSAGE_INTENT_ACTION + messageCounter++;
+            String actionName = DELIVERED_MESSAGE_INTENT_ACTION + nextMessageId();
             intents.add(PendingIntent.getBroadcast(context, 0, new Intent(actionName), 0));
             intentFilter.addAction(actionName);
         }
-        SMSDeliveredBroadcastReceiver onDeliverReceiver = new SMSDeliveredBroadcastReceiver(texts, listener, peer);
         context.registerReceiver(onDeliverReceiver, intentFilter);
         return intents;
     }
 
+    /**
+     * Tracks a message on one of the report dispatchers, registering the dispatcher if needed.
+     *
+     * @param dispatcher the dispatcher receiving the reports.
+     * @param tracker    the tracker to be called for every report of the message.
+     * @param parts      the number of parts of the message.
+     * @param trackingId the id of the message.
+     * @param context    the context of the application used to setup the dispatcher
+     * @return an {@link ArrayList} of {@link PendingIntent} to be passed to SMSCore.
+     */
+    private ArrayList<PendingIntent> setupDispatcherTracking(
+            final @NonNull SMSReportDispatcher dispatcher, final @NonNull SMSReportTracker tracker,
+            final int parts, final long trackingId, final @NonNull Context context) {
+        dispatcher.register(context);
+        ArrayList<PendingIntent> intents = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++)
+            intents.add(dispatcher.createPendingIntent(context, trackingId, (int) nextMessageId()));
+        dispatcher.track(trackingId, tracker);
+        return intents;
+    }
+
     /**
      * Saves in memory the service class name to wake up. It doesn't need an
      * instance of the class, it just saves the name and instantiates it when needed.
@@ -202,7 +724,7 @@ public class SMSManager implements CommunicationManager<SMSMessage> {
      * @param context                   the context used to set the listener
      */
     public <T extends SMSReceivedServiceListener> void setReceivedListener(Class<T> receivedListenerClassName, Context context) {
-        PreferencesManager.setString(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY, receivedListenerClassName.getName());
+        SMSReceivedListenerRegistry.set(receivedListenerClassName, context);
     }
 
     /**
@@ -211,7 +733,150 @@ public class SMSManager implements CommunicationManager<SMSMessage> {
      * @param context The context used to remove the listener
      */
     public void removeReceivedListener(Context context) {
-        PreferencesManager.removeValue(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY);
+        SMSReceivedListenerRegistry.remove(context);
+    }
+
+    /**
+     * Adds a listener to be called with every message received while the process is alive, on the
+     * given executor. While at least one of these listeners is present, received messages are
+     * handed to them directly and the {@link SMSReceivedServiceListener} is not woken up: it's only
+     * called when the process has been started by the message itself.
+     * Adding a listener already present only changes its executor.
+     *
+     * @param listener the listener called on message received.
+     * @param executor the executor the listener is called on.
+     */
+    public void addReceivedListener(@NonNull SMSReceivedListener listener, @NonNull Executor executor) {
+        SMSReceivedListenerRegistry.addLive(listener, executor);
+    }
+
+    /**
+     * Removes a listener added with {@link #addReceivedListener(SMSReceivedListener, Executor)}.
+     *
+     * @param listener the listener to remove.
+     * @return true if the listener was present, false otherwise.
+     */
+    public boolean removeReceivedListener(@NonNull SMSReceivedListener listener) {
+        return SMSReceivedListenerRegistry.removeLive(listener);
+    }
+
+    /**
+     * Coalesces received messages into batches delivered with
+     * {@link SMSReceivedServiceListener#onMessagesReceived(java.util.List)}: a batch is delivered as
+     * soon as it holds maxMessages messages, or windowMillis after its first message arrived.
+     * Waiting messages are kept on disk too: the ones a process dies with are delivered by the next
+     * one, when batching is set up again or when it receives its first message.
+     * Batching only lasts for the current process, so it should be set up again when it starts.
+     *
+     * @param maxMessages  the max number of messages in a batch.
+     * @param windowMillis the max time in milliseconds a message waits before being delivered,
+     *                     at most 5000.
+     * @param context      the context of the application, used to deliver the batches left by the
+     *                     previous process.
+     * @throws IllegalArgumentException if maxMessages is not positive or the window is out of range.
+     */
+    public void setReceivedBatching(int maxMessages, long windowMillis, @NonNull Context context) {
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(maxMessages, windowMillis,
+                new SMSReceivedBroadcastReceiver.BatchDelivery());
+        batcher.deliverLeftovers(context.getApplicationContext());
+        SMSReceivedBroadcastReceiver.setBatcher(batcher);
+    }
+
+    /**
+     * Stops coalescing received messages, delivering right away the ones waiting in a batch.
+     */
+    public void disableReceivedBatching() {
+        SMSReceivedBroadcastReceiver.setBatcher(null);
+    }
+
+    /**
+     * Drops the messages received again within windowMillis, as when the carrier delivers a message
+     * twice: a message is a duplicate if it has the same peer, text and service center timestamp.
+     * Memory is fixed, and grows with maxMessages; when more than maxMessages messages arrive
+     * within a third of the window, some duplicates may get through.
+     * Deduplication only lasts for the current process, so it should be set up again when it starts.
+     *
+     * @param windowMillis how long in milliseconds a received message is remembered.
+     * @param maxMessages  the max number of messages remembered for every third of the window,
+     *                     at most 65536.
+     * @throws IllegalArgumentException if the window is not positive or maxMessages is out of range.
+     */
+    public void setReceivedDeduplication(long windowMillis, int maxMessages) {
+        SMSReceivedBroadcastReceiver.setDeduplicator(new SMSReceivedDeduplicator(windowMillis, maxMessages));
+    }
+
+    /**
+     * Stops dropping the messages received twice.
+     */
+    public void disableReceivedDeduplication() {
+        SMSReceivedBroadcastReceiver.setDeduplicator(null);
+    }
+
+    /**
+     * @return the number of received messages dropped as duplicates since deduplication was last
+     * set up, 0 if it's disabled.
+     */
+    public long getDroppedDuplicateCount() {
+        SMSReceivedDeduplicator deduplicator = SMSReceivedBroadcastReceiver.getDeduplicator();
+        return deduplicator == null ? 0 : deduplicator.getDroppedDuplicates();
+    }
+
+    /**
+     * Receivers waiting for the reports of a message, so that they stop waiting when the message
+     * never reaches the channel. Run by the send queue, when the transport throws on the message.
+     */
+    private final class ReportReceivers implements Runnable {
+
+        private final long trackingId;
+        private final SMSSentBroadcastReceiver sentReceiver;
+        private final SMSDeliveredBroadcastReceiver deliveredReceiver;
+        private final Context context;
+
+        /**
+         * Constructor for the receivers of a message.
+         *
+         * @param trackingId        the id the message is tracked with by the report dispatchers.
+         * @param sentReceiver      the sent receiver registered on the context, null if the message
+         *                          is tracked by the dispatchers or has no sent receiver.
+         * @param deliveredReceiver the delivered receiver registered on the context, null if the
+         *                          message is tracked by the dispatchers or has no delivered receiver.
+         * @param context           the context the receivers are registered on, can be null.
+         */
+        ReportReceivers(long trackingId, @Nullable SMSSentBroadcastReceiver sentReceiver,
+                        @Nullable SMSDeliveredBroadcastReceiver deliveredReceiver, @Nullable Context context) {
+            this.trackingId = trackingId;
+            this.sentReceiver = sentReceiver;
+            this.deliveredReceiver = deliveredReceiver;
+            this.context = context;
+        }
+
+        /**
+         * Stops waiting for the reports of the message, none of them will arrive.
+         *
+         * @return the tracker of the sent reports, null if there's none waiting.
+         */
+        SMSReportTracker abandon() {
+            deliveredDispatcher.untrack(trackingId);
+            SMSReportTracker tracker = sentDispatcher.untrack(trackingId);
+            if (deliveredReceiver != null)
+                context.unregisterReceiver(deliveredReceiver);
+            if (sentReceiver != null) {
+                context.unregisterReceiver(sentReceiver);
+                tracker = sentReceiver;
+            }
+            return tracker;
+        }
+
+        /**
+         * Fails the message, its sent listener is called with
+         * {@link SMSMessage.SentState#ERROR_GENERIC_FAILURE}.
+         */
+        @Override
+        public void run() {
+            SMSReportTracker tracker = abandon();
+            if (tracker != null)
+                tracker.onPartReport(SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+        }
     }
 
     /**
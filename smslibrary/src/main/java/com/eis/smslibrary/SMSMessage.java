@@ -1,5 +1,8 @@
 package com.eis.smslibrary;
 
+import android.os.Parcel;
+import android.os.Parcelable;
+
 import androidx.annotation.NonNull;
 
 import com.eis.communication.Message;
@@ -13,7 +16,29 @@ import java.util.Objects;
  *
  * @author Luca Crema, Marco Mariotto, Alberto Ursino, Giovanni Velludo
  */
-public class SMSMessage implements Message<String, SMSPeer> {
+public class SMSMessage implements Message<String, SMSPeer>, Parcelable {
+
+    /**
+     * The one computed for the versions that didn't declare it, so that messages they serialized,
+     * like the ones still in the intents of old jobs, can be read
+     */
+    private static final long serialVersionUID = 2897169872823200044L;
+
+    /**
+     * Creates messages from a {@link Parcel}, where they're written as the peer address and the text
+     */
+    public static final Parcelable.Creator<SMSMessage> CREATOR = new Parcelable.Creator<SMSMessage>() {
+        @Override
+        public SMSMessage createFromParcel(Parcel source) {
+            SMSPeer peer = new SMSPeer(source.readString());
+            return new SMSMessage(peer, source.readString());
+        }
+
+        @Override
+        public SMSMessage[] newArray(int size) {
+            return new SMSMessage[size];
+        }
+    };
 
     /**
      * Maximum number of concatenated messages in which an SMS can be split is 255, each containing
@@ -24,10 +49,6 @@ public class SMSMessage implements Message<String, SMSPeer> {
      */
     static final int MAX_MSG_TEXT_LEN = 39015;
     static final int MAX_UCS2_MSG_TEXT_LEN = (MAX_MSG_TEXT_LEN * 7) / 16;
-    // these regex can be used both on single characters and entire strings
-    private static final String GSM_CHARACTERS_STRING_REGEX = "^[@£$¥èéùìòÇ\\nØø\\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&‘()*+,\\-./0-9:;<=>?¡A-ZÄÖÑÜ§¿a-zäöñüà]*$";
-    private static final String GSM_CHARACTERS_EXTENSION_STRING_REGEX = "^[@£$¥èéùìòÇ\\nØø\\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&‘()*+,\\-./0-9:;<=>?¡A-ZÄÖÑÜ§¿a-zäöñüà\\f^{}\\\\\\[~\\]|€]*$";
-    private static final String GSM_CHARACTERS_EXTENSION_REGEX = "[\\f^{}\\\\\\[~\\]|€]";
     private String messageContent;
     private SMSPeer peer;
 
@@ -47,6 +68,27 @@ public class SMSMessage implements Message<String, SMSPeer> {
         this.peer = peer;
     }
 
+    /**
+     * Constructor for a message whose text has already been checked.
+     *
+     * @param messageText the message content, already checked
+     * @param peer        a valid peer
+     */
+    private SMSMessage(@NonNull String messageText, @NonNull SMSPeer peer) {
+        this.messageContent = messageText;
+        this.peer = peer;
+    }
+
+    /**
+     * Creates a message with the same text for another peer, without checking the text again.
+     *
+     * @param peer the peer of the new message
+     * @return the new message
+     */
+    SMSMessage withPeer(@NonNull SMSPeer peer) {
+        return new SMSMessage(messageContent, peer);
+    }
+
     /**
      * Checks if the message content is valid.
      *
@@ -54,42 +96,32 @@ public class SMSMessage implements Message<String, SMSPeer> {
      * @return The state of the message after validity tests.
      */
     static ContentState checkMessageText(@NonNull String messageText) {
-        /* Since applications using this library will probably try to avoid wasting characters,
-         * they'll mostly stick to using the regular GSM character set, so we perform pattern
-         * matching on the whole message first, to avoid multiple checks on single characters
-         * when not necessary.
-         */
-        if (messageText.matches(GSM_CHARACTERS_STRING_REGEX)) {
-            // messageText contains only GSM characters
-            if (messageText.length() <= MAX_MSG_TEXT_LEN) {
-                return ContentState.MESSAGE_TEXT_VALID;
-            }
-        } else if (!messageText.matches(GSM_CHARACTERS_EXTENSION_STRING_REGEX)) {
+        // A single pass over the GSM 03.38 lookup table tells both the encoding and the number of
+        // septets: characters from the GSM extension table are translated to two characters when
+        // the message is sent, an escape character + the character from the extension table
+        int septets = GSMCharset.countSeptets(messageText);
+        if (septets == GSMCharset.NOT_GSM_ENCODABLE) {
             // messageText contains Unicode characters
-            if (messageText.length() <= MAX_UCS2_MSG_TEXT_LEN) {
+            if (messageText.length() <= MAX_UCS2_MSG_TEXT_LEN)
                 return ContentState.MESSAGE_TEXT_VALID;
-            }
-        } else {
-            // messageText contains only chars from both the GSM charset and its extension table
-            int charNum = 0;
-            for (int i = 0; i < messageText.length(); i++) {
-                String currentChar = messageText.substring(i, i + 1);
-                if (currentChar.matches(GSM_CHARACTERS_EXTENSION_REGEX)) {
-                    // characters from the GSM extension table are translated to two characters when
-                    // the message is sent: an escape character + the character from the extension
-                    // table
-                    charNum += 2;
-                } else {
-                    charNum++;
-                }
-            }
-            if (charNum <= MAX_MSG_TEXT_LEN) {
-                return ContentState.MESSAGE_TEXT_VALID;
-            }
+        } else if (septets <= MAX_MSG_TEXT_LEN) {
+            // messageText contains only chars from the GSM charset and its extension table
+            return ContentState.MESSAGE_TEXT_VALID;
         }
         return ContentState.MESSAGE_TEXT_TOO_LONG;
     }
 
+    /**
+     * Plans how this message will be sent: its encoding, its encoded length and the number of
+     * PDUs it takes. The plan is computed on the text produced by the parse strategy currently set
+     * in {@link SMSMessageHandler}, which is the one actually sent.
+     *
+     * @return the segment plan for this message.
+     */
+    public SMSSegmentPlan getSegmentPlan() {
+        return SMSSegmentPlan.of(SMSMessageHandler.getInstance().parseData(this));
+    }
+
     /**
      * Retrieves the data received by or to be sent in the network.
      *
@@ -110,6 +142,26 @@ public class SMSMessage implements Message<String, SMSPeer> {
         return peer;
     }
 
+    /**
+     * @return 0, since the message contains no file descriptors.
+     */
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    /**
+     * Writes the message to a {@link Parcel}, as the address of its peer followed by its text.
+     *
+     * @param dest  the parcel to write to.
+     * @param flags additional flags about how the message should be written.
+     */
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(peer.getAddress());
+        dest.writeString(messageContent);
+    }
+
     /**
      * Indicates whether some other object is "equal to" this one.
      *
@@ -1,9 +1,11 @@
 package com.eis.smslibrary;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.eis.communication.MessageHandler;
 import com.eis.communication.MessageParseStrategy;
+import com.eis.smslibrary.exceptions.InvalidSMSMessageException;
 import com.eis.smslibrary.exceptions.InvalidTelephoneNumberException;
 
 /**
@@ -15,8 +17,15 @@ import com.eis.smslibrary.exceptions.InvalidTelephoneNumberException;
  */
 public class SMSMessageHandler implements MessageHandler<String, String, SMSMessage> {
 
-    private MessageParseStrategy<String, SMSPeer, SMSMessage> parseStrategy;
-    private static SMSMessageHandler instance;
+    /**
+     * Volatile so that a strategy set by any thread is seen whole by every thread parsing messages
+     */
+    private volatile MessageParseStrategy<String, SMSPeer, SMSMessage> parseStrategy;
+
+    /**
+     * Metrics told about every parsed message, null if not set
+     */
+    private volatile SMSMetrics metrics;
 
     /**
      * Private constructor
@@ -29,9 +38,15 @@ public class SMSMessageHandler implements MessageHandler<String, String, SMSMess
      * @return Singleton instance of this class
      */
     public static SMSMessageHandler getInstance() {
-        if (instance == null)
-            instance = new SMSMessageHandler();
-        return instance;
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Holds the singleton instance, created by the class loader the first time it's used, so
+     * that every thread sees the same fully built instance without taking any lock
+     */
+    private static class InstanceHolder {
+        private static final SMSMessageHandler INSTANCE = new SMSMessageHandler();
     }
 
     /**
@@ -52,11 +67,61 @@ public class SMSMessageHandler implements MessageHandler<String, String, SMSMess
      * @author Matteo Carnelos
      */
     public SMSMessage parseMessage(@NonNull final String peerData, @NonNull final String messageData) {
+        SMSRoutingParseStrategy.Parsed parsed = parse(peerData, messageData);
+        return parsed == null ? null : parsed.message;
+    }
+
+    /**
+     * Parses a received message like {@link #parseMessage(String, String)}, then hands it to the
+     * listener of its route if the strategy is a {@link SMSRoutingParseStrategy}.
+     *
+     * @param peerData    Data about the peer coming from the sms pdus.
+     * @param messageData Data about the message coming from the sms pdus.
+     * @return The message if it still has to be delivered, null if it couldn't be parsed or the
+     * listener of its route got it.
+     */
+    @Nullable
+    SMSMessage parseReceived(@NonNull final String peerData, @NonNull final String messageData) {
+        SMSRoutingParseStrategy.Parsed parsed = parse(peerData, messageData);
+        if (parsed == null || parsed.dispatch())
+            return null;
+        return parsed.message;
+    }
+
+    /**
+     * @param peerData    Data about the peer coming from the sms pdus.
+     * @param messageData Data about the message coming from the sms pdus.
+     * @return The message along with its route if the string has been parsed correctly, null otherwise.
+     */
+    private SMSRoutingParseStrategy.Parsed parse(@NonNull final String peerData, @NonNull final String messageData) {
+        SMSMetrics currentMetrics = metrics;
+        long startNanos = currentMetrics == null ? 0 : System.nanoTime();
+        MessageParseStrategy<String, SMSPeer, SMSMessage> strategy = parseStrategy;
+        SMSRoutingParseStrategy.Parsed parsed;
         try {
             SMSPeer peer = new SMSPeer(peerData);
-            return parseStrategy.parseMessage(messageData, peer);
+            if (strategy instanceof SMSRoutingParseStrategy)
+                parsed = ((SMSRoutingParseStrategy) strategy).parseRouted(messageData, peer);
+            else {
+                SMSMessage message = strategy.parseMessage(messageData, peer);
+                parsed = message == null ? null : new SMSRoutingParseStrategy.Parsed(message, null, null);
+            }
         }
-        catch(InvalidTelephoneNumberException | IllegalArgumentException e) { return null; }
+        // A strategy can't trust the length of what it received, too long texts are dropped too
+        catch(InvalidTelephoneNumberException | InvalidSMSMessageException | IllegalArgumentException e) { parsed = null; }
+        if (currentMetrics != null)
+            currentMetrics.onParse(parsed != null, System.nanoTime() - startNanos);
+        return parsed;
+    }
+
+    /**
+     * Sets the metrics told about every parsed message, set along with the others by
+     * {@link SMSManager#setMetrics(SMSMetrics)}.
+     *
+     * @param metrics the metrics to call, null to stop calling them.
+     */
+    void setMetrics(@Nullable SMSMetrics metrics) {
+        this.metrics = metrics;
     }
 
     /**
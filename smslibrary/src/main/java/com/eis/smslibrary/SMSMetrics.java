@@ -0,0 +1,46 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives the lifecycle events of the messages sent and received by the library, set with
+ * {@link SMSManager#setMetrics(SMSMetrics)}. {@link SMSMetricsRecorder} keeps counters and latency
+ * histograms of them, other implementations can forward them to any metrics system.
+ * <p>
+ * Methods are called on the threads reports and messages are received on, usually the main
+ * thread, so they must be fast and thread safe.
+ */
+public interface SMSMetrics {
+
+    /**
+     * Called when a message is handed to the send path, once for every attempt.
+     *
+     * @param parts the number of parts the message has been split in.
+     */
+    void onSend(int parts);
+
+    /**
+     * Called when a message sent with a context has been sent, or failed to be.
+     *
+     * @param sentState    the state of the message.
+     * @param latencyNanos the time in nanoseconds since the message was handed to the send path.
+     */
+    void onSent(@NonNull SMSMessage.SentState sentState, long latencyNanos);
+
+    /**
+     * Called when a message sent with a context and a delivered listener, or in bulk, has been
+     * delivered, or failed to be: delivery reports are not requested for the others.
+     *
+     * @param deliveredState the state of the message.
+     * @param latencyNanos   the time in nanoseconds since the message was handed to the send path.
+     */
+    void onDelivered(@NonNull SMSMessage.DeliveredState deliveredState, long latencyNanos);
+
+    /**
+     * Called when a received message has been parsed by {@link SMSMessageHandler#parseMessage}.
+     *
+     * @param parsed       true if the parse strategy returned a message, false otherwise.
+     * @param latencyNanos the time in nanoseconds the parsing took.
+     */
+    void onParse(boolean parsed, long latencyNanos);
+}
@@ -0,0 +1,191 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics keeping counters of every event and a {@link SMSLatencyHistogram} for every
+ * {@link Stage}, all updated without locks. Use {@link #snapshot()} to read or export them.
+ */
+public class SMSMetricsRecorder implements SMSMetrics {
+
+    /**
+     * Stages whose latency is recorded
+     */
+    public enum Stage {
+        /**
+         * From the message handed to the send path to its sent report
+         */
+        SENT,
+        /**
+         * From the message handed to the send path to its delivered report
+         */
+        DELIVERED,
+        /**
+         * Parsing of a received message
+         */
+        PARSE
+    }
+
+    private final AtomicLong sends = new AtomicLong();
+    private final AtomicLong parts = new AtomicLong();
+    private final AtomicLongArray sentStates = new AtomicLongArray(SMSMessage.SentState.values().length);
+    private final AtomicLongArray deliveredStates = new AtomicLongArray(SMSMessage.DeliveredState.values().length);
+    private final AtomicLong parseHits = new AtomicLong();
+    private final AtomicLong parseMisses = new AtomicLong();
+    private final SMSLatencyHistogram[] latencies = new SMSLatencyHistogram[Stage.values().length];
+
+    /**
+     * Constructor for a recorder with every counter at 0.
+     */
+    public SMSMetricsRecorder() {
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = new SMSLatencyHistogram();
+    }
+
+    @Override
+    public void onSend(int parts) {
+        sends.incrementAndGet();
+        this.parts.addAndGet(parts);
+    }
+
+    @Override
+    public void onSent(@NonNull SMSMessage.SentState sentState, long latencyNanos) {
+        sentStates.incrementAndGet(sentState.ordinal());
+        latencies[Stage.SENT.ordinal()].record(latencyNanos);
+    }
+
+    @Override
+    public void onDelivered(@NonNull SMSMessage.DeliveredState deliveredState, long latencyNanos) {
+        deliveredStates.incrementAndGet(deliveredState.ordinal());
+        latencies[Stage.DELIVERED.ordinal()].record(latencyNanos);
+    }
+
+    @Override
+    public void onParse(boolean parsed, long latencyNanos) {
+        (parsed ? parseHits : parseMisses).incrementAndGet();
+        latencies[Stage.PARSE.ordinal()].record(latencyNanos);
+    }
+
+    /**
+     * @return a snapshot of every counter and histogram.
+     */
+    @NonNull
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Counters and histograms of a recorder up to a point in time
+     */
+    public static final class Snapshot {
+
+        private final long sends;
+        private final long parts;
+        private final long[] sentStates = new long[SMSMessage.SentState.values().length];
+        private final long[] deliveredStates = new long[SMSMessage.DeliveredState.values().length];
+        private final long parseHits;
+        private final long parseMisses;
+        private final EnumMap<Stage, SMSLatencyHistogram.Snapshot> latencies = new EnumMap<>(Stage.class);
+
+        private Snapshot(SMSMetricsRecorder recorder) {
+            sends = recorder.sends.get();
+            parts = recorder.parts.get();
+            for (int i = 0; i < sentStates.length; i++)
+                sentStates[i] = recorder.sentStates.get(i);
+            for (int i = 0; i < deliveredStates.length; i++)
+                deliveredStates[i] = recorder.deliveredStates.get(i);
+            parseHits = recorder.parseHits.get();
+            parseMisses = recorder.parseMisses.get();
+            for (Stage stage : Stage.values())
+                latencies.put(stage, recorder.latencies[stage.ordinal()].snapshot());
+        }
+
+        /**
+         * @return the number of messages handed to the send path, retries included.
+         */
+        public long getSendCount() {
+            return sends;
+        }
+
+        /**
+         * @return the number of parts of the messages handed to the send path.
+         */
+        public long getPartCount() {
+            return parts;
+        }
+
+        /**
+         * @param sentState a state.
+         * @return the number of messages whose sent report had the state.
+         */
+        public long getSentCount(@NonNull SMSMessage.SentState sentState) {
+            return sentStates[sentState.ordinal()];
+        }
+
+        /**
+         * @param deliveredState a state.
+         * @return the number of messages whose delivered report had the state.
+         */
+        public long getDeliveredCount(@NonNull SMSMessage.DeliveredState deliveredState) {
+            return deliveredStates[deliveredState.ordinal()];
+        }
+
+        /**
+         * @return the number of received messages the parse strategy returned a message for.
+         */
+        public long getParseHits() {
+            return parseHits;
+        }
+
+        /**
+         * @return the number of received messages the parse strategy returned null for, or threw.
+         */
+        public long getParseMisses() {
+            return parseMisses;
+        }
+
+        /**
+         * @param stage a stage.
+         * @return the latencies recorded for the stage.
+         */
+        @NonNull
+        public SMSLatencyHistogram.Snapshot getLatency(@NonNull Stage stage) {
+            return latencies.get(stage);
+        }
+
+        /**
+         * Flattens the snapshot to be exported, with names such as "sent.MESSAGE_SENT" or
+         * "latency.SENT.p99"; latencies are in nanoseconds.
+         *
+         * @return every value of the snapshot by name, in a stable order.
+         */
+        @NonNull
+        public Map<String, Long> toMap() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            values.put("send.count", sends);
+            values.put("send.parts", parts);
+            for (SMSMessage.SentState state : SMSMessage.SentState.values())
+                values.put("sent." + state.name(), sentStates[state.ordinal()]);
+            for (SMSMessage.DeliveredState state : SMSMessage.DeliveredState.values())
+                values.put("delivered." + state.name(), deliveredStates[state.ordinal()]);
+            values.put("parse.hits", parseHits);
+            values.put("parse.misses", parseMisses);
+            for (Map.Entry<Stage, SMSLatencyHistogram.Snapshot> entry : latencies.entrySet()) {
+                String prefix = "latency." + entry.getKey().name() + '.';
+                SMSLatencyHistogram.Snapshot latency = entry.getValue();
+                values.put(prefix + "count", latency.getCount());
+                values.put(prefix + "p50", latency.getValueAtPercentile(50));
+                values.put(prefix + "p90", latency.getValueAtPercentile(90));
+                values.put(prefix + "p99", latency.getValueAtPercentile(99));
+                values.put(prefix + "max", latency.getMax());
+            }
+            return values;
+        }
+    }
+}
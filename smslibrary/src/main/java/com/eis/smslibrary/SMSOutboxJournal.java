@@ -0,0 +1,637 @@
+package com.eis.smslibrary;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.eis.smslibrary.listeners.SMSSentListener;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the messages being sent, kept on disk so that the messages still unconfirmed
+ * when the process dies can be sent again once it restarts, with {@link SMSManager#replayOutbox}.
+ * <p>
+ * Every event is a record made of its payload length, the CRC32 of the payload and the payload
+ * itself: the event type, the id of the message and the data of the event. When reading the log,
+ * a torn or corrupted record ends it, so a crash in the middle of a write loses at most that record.
+ * <p>
+ * Records are written by a single background thread, that writes every record queued since its
+ * last write and then syncs the file once for all of them (group commit). Only enqueue records are
+ * waited for, so that a message is on disk before it's sent; part and completion records don't
+ * block the caller, and losing them in a crash only means the message is sent once more.
+ * Once the log has grown well past the size of the messages it still tracks, the same thread
+ * rewrites it with only those messages.
+ * <p>
+ * When a write fails, the log is cut back to its last whole record and the records of the failed
+ * write are written again along with the next ones: until then they're not on disk, and
+ * {@link #flush()} tells its callers so.
+ */
+public class SMSOutboxJournal {
+
+    private static final String TAG = "SMSOutboxJournal";
+    static final String LOG_FILE_NAME = "outbox.journal";
+    private static final String COMPACTION_FILE_NAME = "outbox.journal.tmp";
+
+    private static final byte RECORD_ENQUEUED = 1;
+    private static final byte RECORD_PART_SENT = 2;
+    private static final byte RECORD_COMPLETED = 3;
+    private static final int RECORD_HEADER_BYTES = 8;
+    // A message can't be longer than 255 * 160 chars, that's at most 3 bytes per char in UTF-8
+    private static final int MAX_PAYLOAD_BYTES = 1 << 17;
+
+    /**
+     * Compaction starts once the log is larger than this and than the live records times the factor
+     */
+    private static final long COMPACTION_MIN_BYTES = 64 * 1024;
+    private static final int COMPACTION_FACTOR = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File logFile;
+    private final File compactionFile;
+    private final AtomicLong nextId;
+
+    /**
+     * Messages not completed yet, as written in the log, only modified by the writer thread
+     */
+    private final LinkedHashMap<Long, Entry> unfinished = new LinkedHashMap<>();
+    private long liveBytes;
+    private long logBytes;
+    /**
+     * Open log, null after a failed write until it's opened again and cut back to logBytes
+     */
+    private FileOutputStream output;
+    /**
+     * Records of the failed writes, written again before the next records
+     */
+    private final ArrayList<Record> unwritten = new ArrayList<>();
+
+    /**
+     * Records waiting to be written, guarded by itself
+     */
+    private final ArrayList<Record> pending = new ArrayList<>();
+    private boolean closed;
+    private final Thread writer;
+
+    /**
+     * Opens the journal in the given directory, reading every message left unfinished by the
+     * previous process. Records after the first corrupted one are dropped.
+     *
+     * @param directory the directory the journal is kept in, created if needed.
+     * @throws IOException if the journal can't be read or opened for writing.
+     */
+    public SMSOutboxJournal(@NonNull File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Can't create the journal directory " + directory);
+        logFile = new File(directory, LOG_FILE_NAME);
+        compactionFile = new File(directory, COMPACTION_FILE_NAME);
+        nextId = new AtomicLong(1);
+        long validBytes = recover();
+        // Drop a torn record at the end, so new records aren't appended after it
+        if (logFile.exists() && logFile.length() > validBytes) {
+            FileOutputStream truncate = new FileOutputStream(logFile, true);
+            try {
+                truncate.getChannel().truncate(validBytes);
+            } finally {
+                truncate.close();
+            }
+        }
+        logBytes = validBytes;
+        output = openLog(logFile);
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, TAG);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Reads the log, filling the unfinished messages.
+     *
+     * @return the number of bytes of valid records at the start of the log.
+     * @throws IOException if the log can't be read.
+     */
+    private long recover() throws IOException {
+        if (!logFile.exists())
+            return 0;
+        long validBytes = 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+        try {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException endOfLog) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_PAYLOAD_BYTES)
+                    break;
+                int checksum;
+                byte[] payload = new byte[length];
+                try {
+                    checksum = input.readInt();
+                    input.readFully(payload);
+                } catch (EOFException tornRecord) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum)
+                    break;
+                Record record = Record.decode(payload);
+                apply(record);
+                if (record.id >= nextId.get())
+                    nextId.set(record.id + 1);
+                validBytes += RECORD_HEADER_BYTES + length;
+            }
+        } finally {
+            input.close();
+        }
+        return validBytes;
+    }
+
+    /**
+     * Writes that a message is about to be sent, waiting for the record to be on disk. If it can't
+     * be written, it's written again along with the next records.
+     *
+     * @param message the message about to be sent.
+     * @return the id of the message in the journal.
+     */
+    long recordEnqueued(@NonNull SMSMessage message) {
+        long id = submitEnqueued(message);
+        if (!flush())
+            Log.e(TAG, "Message " + id + " is being sent before being recorded");
+        return id;
+    }
+
+    /**
+     * Writes that a message is about to be sent, without waiting for the record: many messages can
+     * be submitted and then waited for with a single {@link #flush()}.
+     *
+     * @param message the message about to be sent.
+     * @return the id of the message in the journal.
+     */
+    long submitEnqueued(@NonNull SMSMessage message) {
+        long id = nextId.getAndIncrement();
+        submit(new Record(RECORD_ENQUEUED, id, 0, message.getPeer().getAddress(), message.getData()));
+        return id;
+    }
+
+    /**
+     * Writes that some parts of a message have been sent, without waiting for the record.
+     *
+     * @param id        the id of the message in the journal.
+     * @param sentParts how many parts have been sent so far.
+     */
+    void recordPartSent(long id, int sentParts) {
+        submit(new Record(RECORD_PART_SENT, id, sentParts, null, null));
+    }
+
+    /**
+     * Writes that a message doesn't have to be sent again, without waiting for the record.
+     *
+     * @param id the id of the message in the journal.
+     */
+    void recordCompleted(long id) {
+        submit(new Record(RECORD_COMPLETED, id, 0, null, null));
+    }
+
+    /**
+     * Wraps the sent listener of a message, so that its parts and its completion are recorded.
+     * The message is completed by any final result, errors included, since the listener has been
+     * told about it.
+     *
+     * @param id           the id of the message in the journal.
+     * @param sentListener the listener to wrap, can be null.
+     * @return the listener to send the message with.
+     */
+    SMSSentListener track(final long id, final @Nullable SMSSentListener sentListener) {
+        return new SMSPartSentListener() {
+            @Override
+            public void onPartSent(SMSMessage message, int sentParts) {
+                recordPartSent(id, sentParts);
+                if (sentListener instanceof SMSPartSentListener)
+                    ((SMSPartSentListener) sentListener).onPartSent(message, sentParts);
+            }
+
+            @Override
+            public void onSMSSent(SMSMessage message, SMSMessage.SentState sentState) {
+                recordCompleted(id);
+                if (sentListener != null)
+                    sentListener.onSMSSent(message, sentState);
+            }
+        };
+    }
+
+    /**
+     * Retrieves the messages that haven't been completed, in the order they were enqueued.
+     * Records still being written may not be included yet.
+     *
+     * @return a copy of the unfinished messages.
+     */
+    public List<Entry> getUnfinished() {
+        synchronized (pending) {
+            return Collections.unmodifiableList(new ArrayList<>(unfinished.values()));
+        }
+    }
+
+    /**
+     * @return the size of the log on disk, in bytes.
+     */
+    public long getLogBytes() {
+        synchronized (pending) {
+            return logBytes;
+        }
+    }
+
+    /**
+     * Waits until every record submitted so far has been written, or a write of them failed.
+     *
+     * @return true if every record submitted so far is on disk, false if some of them are waiting
+     * to be written again or the wait was interrupted.
+     */
+    boolean flush() {
+        Record barrier = new Record((byte) 0, 0, 0, null, null);
+        barrier.written = new CountDownLatch(1);
+        submit(barrier);
+        try {
+            barrier.written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !barrier.failed;
+    }
+
+    /**
+     * Writes the records still queued and closes the log. Records submitted afterwards are ignored,
+     * as are the ones waiting to be written again after a failed write.
+     */
+    public void close() {
+        flush();
+        synchronized (pending) {
+            closed = true;
+            pending.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues a record for the writer thread.
+     *
+     * @param record the record to write.
+     */
+    private void submit(Record record) {
+        synchronized (pending) {
+            if (closed) {
+                if (record.written != null)
+                    record.written.countDown();
+                return;
+            }
+            pending.add(record);
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * Loop of the writer thread: takes every queued record, writes them, syncs once and then wakes
+     * up whoever is waiting for them.
+     */
+    private void writeLoop() {
+        ArrayList<Record> batch = new ArrayList<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(buffer);
+        while (true) {
+            synchronized (pending) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException ignored) {
+                        // The thread isn't reachable from outside, keep waiting
+                    }
+                }
+                if (pending.isEmpty()) {
+                    closeOutput();
+                    return;
+                }
+                // Records of a failed write go first, so that the log keeps the submission order
+                batch.addAll(unwritten);
+                unwritten.clear();
+                batch.addAll(pending);
+                pending.clear();
+            }
+            buffer.reset();
+            boolean failed = false;
+            try {
+                for (Record record : batch)
+                    if (record.type != 0)
+                        record.writeTo(data);
+                data.flush();
+                writeToLog(buffer.toByteArray());
+            } catch (IOException e) {
+                Log.e(TAG, "Can't write the outbox journal", e);
+                failed = true;
+                discardOutput();
+            }
+            synchronized (pending) {
+                if (failed) {
+                    for (Record record : batch)
+                        if (record.type != 0)
+                            unwritten.add(record);
+                } else {
+                    logBytes += buffer.size();
+                    for (Record record : batch)
+                        if (record.type != 0)
+                            apply(record);
+                }
+            }
+            for (Record record : batch) {
+                if (record.written != null) {
+                    record.failed = failed;
+                    record.written.countDown();
+                }
+            }
+            batch.clear();
+            if (logBytes > COMPACTION_MIN_BYTES && logBytes > liveBytes * COMPACTION_FACTOR)
+                compact();
+        }
+    }
+
+    /**
+     * Appends bytes to the log and syncs it, opening the log again if a write failed before.
+     *
+     * @param bytes the records to append.
+     * @throws IOException if the log can't be opened, cut or written.
+     */
+    private void writeToLog(byte[] bytes) throws IOException {
+        if (output == null) {
+            output = openLog(logFile);
+            // A failed write may have left a torn record, the next ones mustn't follow it
+            output.getChannel().truncate(logBytes);
+        }
+        output.write(bytes);
+        output.getChannel().force(false);
+    }
+
+    /**
+     * Closes the log after a failed write, trying to cut it back to its last whole record right
+     * away; it's cut again when it's opened for the next write.
+     */
+    private void discardOutput() {
+        if (output == null)
+            return;
+        try {
+            output.getChannel().truncate(logBytes);
+        } catch (IOException e) {
+            Log.e(TAG, "Can't cut the outbox journal", e);
+        }
+        closeOutput();
+        output = null;
+    }
+
+    /**
+     * Opens the log for appending.
+     *
+     * @param file the log file.
+     * @return the stream writing to it.
+     * @throws IOException if it can't be opened.
+     */
+    @VisibleForTesting
+    FileOutputStream openLog(File file) throws IOException {
+        return new FileOutputStream(file, true);
+    }
+
+    /**
+     * Rewrites the log with only the records of the unfinished messages, replacing it atomically.
+     * Only called by the writer thread, so no record is written meanwhile.
+     */
+    private void compact() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(buffer);
+        try {
+            for (Entry entry : unfinished.values()) {
+                new Record(RECORD_ENQUEUED, entry.id, 0, entry.peerAddress, entry.text).writeTo(data);
+                if (entry.sentParts > 0)
+                    new Record(RECORD_PART_SENT, entry.id, entry.sentParts, null, null).writeTo(data);
+            }
+            data.flush();
+            FileOutputStream compacted = new FileOutputStream(compactionFile);
+            try {
+                compacted.write(buffer.toByteArray());
+                compacted.getChannel().force(false);
+            } finally {
+                compacted.close();
+            }
+            // Opened again by the next write, whichever file is the log by then
+            closeOutput();
+            output = null;
+            if (!compactionFile.renameTo(logFile))
+                throw new IOException("Can't replace the journal with the compacted one");
+            synchronized (pending) {
+                logBytes = buffer.size();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Can't compact the outbox journal", e);
+        }
+    }
+
+    /**
+     * Closes the log, only called by the writer thread.
+     */
+    private void closeOutput() {
+        if (output == null)
+            return;
+        try {
+            output.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Can't close the outbox journal", e);
+        }
+    }
+
+    /**
+     * Updates the unfinished messages with a record that has been written or read.
+     *
+     * @param record the record.
+     */
+    private void apply(Record record) {
+        Entry entry;
+        switch (record.type) {
+            case RECORD_ENQUEUED:
+                if (!unfinished.containsKey(record.id)) {
+                    entry = new Entry(record.id, record.peerAddress, record.text);
+                    unfinished.put(record.id, entry);
+                    liveBytes += entry.recordBytes;
+                }
+                break;
+            case RECORD_PART_SENT:
+                entry = unfinished.get(record.id);
+                if (entry != null)
+                    entry.sentParts = Math.max(entry.sentParts, record.sentParts);
+                break;
+            case RECORD_COMPLETED:
+                entry = unfinished.remove(record.id);
+                if (entry != null)
+                    liveBytes -= entry.recordBytes;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * A message that was being sent and hasn't been completed
+     */
+    public static class Entry {
+
+        private final long id;
+        private final String peerAddress;
+        private final String text;
+        private final int recordBytes;
+        private volatile int sentParts;
+
+        private Entry(long id, String peerAddress, String text) {
+            this.id = id;
+            this.peerAddress = peerAddress;
+            this.text = text;
+            // Enqueue plus part sent record, roughly
+            this.recordBytes = 2 * RECORD_HEADER_BYTES + 30 + 3 * (peerAddress.length() + text.length());
+        }
+
+        /**
+         * @return the id of the message in the journal.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return the address of the peer the message was sent to.
+         */
+        public String getPeerAddress() {
+            return peerAddress;
+        }
+
+        /**
+         * @return the text of the message.
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return how many parts of the message are known to have been sent.
+         */
+        public int getSentParts() {
+            return sentParts;
+        }
+    }
+
+    /**
+     * An event of the journal, as written on disk
+     */
+    private static class Record {
+
+        private final byte type;
+        private final long id;
+        private final int sentParts;
+        private final String peerAddress;
+        private final String text;
+        private CountDownLatch written;
+        private volatile boolean failed;
+
+        private Record(byte type, long id, int sentParts, String peerAddress, String text) {
+            this.type = type;
+            this.id = id;
+            this.sentParts = sentParts;
+            this.peerAddress = peerAddress;
+            this.text = text;
+        }
+
+        /**
+         * Writes the record, header included.
+         *
+         * @param output the stream to write to.
+         * @throws IOException if the stream can't be written.
+         */
+        private void writeTo(DataOutputStream output) throws IOException {
+            ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream();
+            DataOutputStream payload = new DataOutputStream(payloadBuffer);
+            payload.writeByte(type);
+            payload.writeLong(id);
+            if (type == RECORD_ENQUEUED) {
+                writeString(payload, peerAddress);
+                writeString(payload, text);
+            } else if (type == RECORD_PART_SENT) {
+                payload.writeShort(sentParts);
+            }
+            payload.flush();
+            byte[] bytes = payloadBuffer.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            output.writeInt(bytes.length);
+            output.writeInt((int) crc.getValue());
+            output.write(bytes);
+        }
+
+        /**
+         * Reads a record from its payload.
+         *
+         * @param payload the payload, already checked against its CRC.
+         * @return the record.
+         * @throws IOException if the payload isn't a valid record.
+         */
+        private static Record decode(byte[] payload) throws IOException {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+            byte type = input.readByte();
+            long id = input.readLong();
+            switch (type) {
+                case RECORD_ENQUEUED:
+                    return new Record(type, id, 0, readString(input), readString(input));
+                case RECORD_PART_SENT:
+                    return new Record(type, id, input.readUnsignedShort(), null, null);
+                default:
+                    return new Record(type, id, 0, null, null);
+            }
+        }
+
+        private static void writeString(DataOutputStream output, String string) throws IOException {
+            byte[] bytes = string.getBytes(UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        private static String readString(DataInputStream input) throws IOException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+}
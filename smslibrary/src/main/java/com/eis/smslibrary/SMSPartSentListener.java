@@ -0,0 +1,18 @@
+package com.eis.smslibrary;
+
+import com.eis.smslibrary.listeners.SMSSentListener;
+
+/**
+ * Sent listener that also wants to know about every single part of a message that has been sent,
+ * before the whole message is reported to {@link #onSMSSent}.
+ */
+interface SMSPartSentListener extends SMSSentListener {
+
+    /**
+     * Called every time a part of the message has been sent.
+     *
+     * @param message   the message being sent.
+     * @param sentParts how many parts of the message have been sent so far.
+     */
+    void onPartSent(SMSMessage message, int sentParts);
+}
@@ -1,5 +1,8 @@
 package com.eis.smslibrary;
 
+import android.os.Parcel;
+import android.os.Parcelable;
+
 import androidx.annotation.NonNull;
 
 import com.eis.communication.Peer;
@@ -8,8 +11,8 @@ import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import com.google.i18n.phonenumbers.Phonenumber;
 
-import java.util.Arrays;
 import java.util.Locale;
+import java.util.regex.Pattern;
 
 /**
  * Implementation of {@link Peer} for SMS communication channel.
@@ -17,7 +20,28 @@ import java.util.Locale;
  * @author Luca Crema, Marco Mariotto, Giovanni Velludo. Reviewed by Marco Cognolato and Mattia Fanan
  * @author Matteo Carnelos
  */
-public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Serializable {
+public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Serializable, Parcelable {
+
+    /**
+     * The one computed for the versions that didn't declare it, so that peers they serialized can
+     * be read
+     */
+    private static final long serialVersionUID = -8733511106484584294L;
+
+    /**
+     * Creates peers from a {@link Parcel}, where they're written as their address only
+     */
+    public static final Parcelable.Creator<SMSPeer> CREATOR = new Parcelable.Creator<SMSPeer>() {
+        @Override
+        public SMSPeer createFromParcel(Parcel source) {
+            return new SMSPeer(source.readString());
+        }
+
+        @Override
+        public SMSPeer[] newArray(int size) {
+            return new SMSPeer[size];
+        }
+    };
 
     private static final String REGION_NEEDED_EXC_MSG = "The given number does not explicitly " +
             "contain the prefix and the default region is not obtainable. Please use the method " +
@@ -27,7 +51,6 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
             "be passed with also the prefix or it might be considered invalid.";
     private static final String NOT_PARSABLE_EXC_MSG = "Not parsable telephone number: '%s'. Please " +
             "retry with a different String.";
-    private static final String INVALID_ISO_EXC_MSG = "The given string is not a valid ISO country code.";
 
     // The following regex checks if the given string is one of the following types:
     // +1#555521555*     [* = any decimal number]
@@ -35,24 +58,70 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
     // +1#555*
     // 555*
     // It's used to detect emulator phone numbers
-    private static final String EMU_DETECTION_REGEX = "^(\\+1)?[ -]?(555521)?555\\d$";
+    private static final Pattern EMU_DETECTION_PATTERN = Pattern.compile("^(\\+1)?[ -]?(555521)?555\\d$");
 
-    private static String defaultRegion = Locale.getDefault().getCountry();
+    /**
+     * Number of digits of a telephone number in E.164 format, country code included
+     */
+    private static final int E164_MIN_DIGITS = 7;
+    private static final int E164_MAX_DIGITS = 15;
+
+    /**
+     * Parser for the default region, replaced whenever the region changes
+     */
+    private static volatile SMSPeerParser defaultParser = new SMSPeerParser(Locale.getDefault().getCountry());
     private String telephoneNumber;
     private InvalidTelephoneNumberException.Type invalidityReason = null;
     private String invalidityMessage = null;
+    /**
+     * Whether the number has been normalized and the invalidity fields set: numbers given in E.164
+     * format are only validated when they, or the invalidity fields, are first asked for
+     */
+    private volatile boolean validated;
+    /**
+     * Parser whose region and cache an E.164 number is validated with, the default one if null
+     */
+    private transient SMSPeerParser parser;
 
     /**
      * Set the default country code used when a telephone number without prefix is given.
+     * Changing it starts a new cache of parsed peers, since the same numbers may now be parsed
+     * differently. To parse numbers of many regions at once use a {@link SMSPeerParser} per region.
      *
      * @param defaultRegion The default 2 digit ISO country code.
      * @throws IllegalArgumentException If the given code is not a valid ISO country code.
      * @author Matteo Carnelos
      */
     public static void setDefaultRegion(@NonNull String defaultRegion) {
-        if (!Arrays.asList(Locale.getISOCountries()).contains(defaultRegion))
-            throw new IllegalArgumentException(INVALID_ISO_EXC_MSG);
-        SMSPeer.defaultRegion = defaultRegion;
+        // Checked first, the region the default parser started with may not be a valid one
+        if (!SMSPeerParser.isISOCountry(defaultRegion))
+            throw new IllegalArgumentException(SMSPeerParser.INVALID_ISO_EXC_MSG);
+        if (defaultRegion.equals(defaultParser.getRegion()))
+            return;
+        defaultParser = new SMSPeerParser(defaultRegion);
+    }
+
+    /**
+     * @return the parser for the default region currently set.
+     */
+    static SMSPeerParser getDefaultParser() {
+        return defaultParser;
+    }
+
+    /**
+     * @return the number of peers built from the cache since the default region was last set,
+     * instead of parsing their number.
+     */
+    public static long getCacheHitCount() {
+        return defaultParser.getCacheHitCount();
+    }
+
+    /**
+     * @return the number of peers built by parsing their number since the default region was last
+     * set, since it wasn't cached.
+     */
+    public static long getCacheMissCount() {
+        return defaultParser.getCacheMissCount();
     }
 
     /**
@@ -60,15 +129,107 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      * will be added the default one.
      * Note: It is not always possible to obtain the correct default country code, especially if the
      * phone is moving between countries. To set a custom one use the method {@link #setDefaultRegion(String)}.
+     * Numbers already parsed in the same default region are taken from a cache, without parsing
+     * them again. Numbers in E.164 format seen for the first time, like the ones coming from the
+     * radio, are only validated and normalized the first time the peer is used: compared, hashed or
+     * asked for its address or validity.
      *
      * @param telephoneNumber Address for the peer.
      * @author Matteo Carnelos
      */
     public SMSPeer(@NonNull String telephoneNumber) {
+        this(telephoneNumber, defaultParser);
+    }
+
+    /**
+     * Create a new SMSPeer object, parsing the number in the region of the given parser.
+     *
+     * @param telephoneNumber Address for the peer.
+     * @param parser          The parser whose region and cache are used.
+     */
+    SMSPeer(@NonNull String telephoneNumber, @NonNull SMSPeerParser parser) {
+        SMSPeerCache cache = parser.getCache();
+        SMSPeer cached = cache.get(telephoneNumber);
+        if (cached != null) {
+            this.telephoneNumber = cached.telephoneNumber;
+            this.invalidityReason = cached.invalidityReason;
+            this.invalidityMessage = cached.invalidityMessage;
+            this.validated = true;
+            return;
+        }
+        if (isE164(telephoneNumber)) {
+            // Validated and cached the first time it's used, see validate()
+            this.telephoneNumber = telephoneNumber;
+            this.parser = parser;
+            return;
+        }
+        parse(telephoneNumber, parser.getRegion());
+        this.validated = true;
+        cache.put(telephoneNumber, this);
+    }
+
+    /**
+     * Checks whether a number has the shape of the E.164 format: a '+' followed by the digits of
+     * the country code, that can't start with 0, and of the number, without any separator.
+     * It may still have to be normalized, see {@link #validate()}. Doesn't allocate anything.
+     *
+     * @param telephoneNumber the number to check.
+     * @return true if the number has the shape of the E.164 format, false otherwise.
+     */
+    static boolean isE164(@NonNull String telephoneNumber) {
+        int length = telephoneNumber.length();
+        if (length < E164_MIN_DIGITS + 1 || length > E164_MAX_DIGITS + 1
+                || telephoneNumber.charAt(0) != '+' || telephoneNumber.charAt(1) == '0')
+            return false;
+        for (int i = 1; i < length; i++) {
+            char c = telephoneNumber.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Validates a number given in E.164 format the first time the peer is used, normalizing it:
+     * a number can have the shape of E.164 while not being canonical, like one keeping the national
+     * trunk prefix after the country code. The peer is then cached by the parser it was created
+     * with, so that the same number seen again isn't validated again.
+     */
+    private void validate() {
+        if (validated)
+            return;
+        synchronized (this) {
+            if (validated)
+                return;
+            // Deserialized peers have no parser
+            SMSPeerParser parser = this.parser != null ? this.parser : defaultParser;
+            String rawNumber = telephoneNumber;
+            if (!EMU_DETECTION_PATTERN.matcher(rawNumber).matches()) {
+                try {
+                    // The number has a prefix, the region only appears in the message
+                    telephoneNumber = formatE164(checkValidity(rawNumber, parser.getRegion()));
+                } catch (InvalidTelephoneNumberException e) {
+                    this.invalidityReason = e.getType();
+                    this.invalidityMessage = e.getMessage();
+                }
+            }
+            validated = true;
+            this.parser = null;
+            parser.getCache().put(rawNumber, this);
+        }
+    }
+
+    /**
+     * Sets the fields of this peer by parsing its telephone number.
+     *
+     * @param telephoneNumber Address for the peer.
+     * @param region          The default region to parse the number with.
+     */
+    private void parse(@NonNull String telephoneNumber, @NonNull String region) {
         // If the given number is an emulator number, skip the validity checks
         if (adjustForEmulator(telephoneNumber)) return;
         try {
-            Phonenumber.PhoneNumber validTelephoneNumber = checkValidity(telephoneNumber);
+            Phonenumber.PhoneNumber validTelephoneNumber = checkValidity(telephoneNumber, region);
             this.telephoneNumber = formatE164(validTelephoneNumber);
         } catch (InvalidTelephoneNumberException e) {
             this.telephoneNumber = telephoneNumber;
@@ -81,21 +242,22 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      * Checks the validity of a phone number and returns a parsed PhoneNumber object if valid.
      *
      * @param telephoneNumber The phone number for which to check validity.
+     * @param region          The default region to parse the number with.
      * @return A parsed PhoneNumber object, if telephoneNumber is valid.
      * @throws InvalidTelephoneNumberException if telePhone number is not valid.
      */
-    private Phonenumber.PhoneNumber checkValidity(@NonNull String telephoneNumber)
+    private Phonenumber.PhoneNumber checkValidity(@NonNull String telephoneNumber, @NonNull String region)
             throws InvalidTelephoneNumberException {
-        if (defaultRegion.isEmpty() && !telephoneNumber.startsWith("+"))
+        if (region.isEmpty() && !telephoneNumber.startsWith("+"))
             throw new InvalidTelephoneNumberException(
                     InvalidTelephoneNumberException.Type.REGION_NEEDED,
                     REGION_NEEDED_EXC_MSG);
 
-        Phonenumber.PhoneNumber phoneNumber = parseNumber(telephoneNumber);
+        Phonenumber.PhoneNumber phoneNumber = parseNumber(telephoneNumber, region);
         if (!PhoneNumberUtil.getInstance().isValidNumber(phoneNumber))
             throw new InvalidTelephoneNumberException(
                     InvalidTelephoneNumberException.Type.INVALID_NUMBER,
-                    String.format(INVALID_NUMBER_EXC_MSG, telephoneNumber, defaultRegion));
+                    String.format(INVALID_NUMBER_EXC_MSG, telephoneNumber, region));
         return phoneNumber;
     }
 
@@ -103,15 +265,16 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      * Return a parsed PhoneNumber object.
      *
      * @param number The destination string, eventually with the prefix.
+     * @param region The default region to parse the number with.
      * @return The PhoneNumber object containing the phone number parsed.
      * @throws InvalidTelephoneNumberException If the given destination is not parsable.
      * @author Matteo Carnelos
      */
-    private Phonenumber.PhoneNumber parseNumber(String number)
+    private Phonenumber.PhoneNumber parseNumber(String number, String region)
             throws InvalidTelephoneNumberException {
         Phonenumber.PhoneNumber phoneNumber;
         try {
-            phoneNumber = PhoneNumberUtil.getInstance().parse(number, defaultRegion);
+            phoneNumber = PhoneNumberUtil.getInstance().parse(number, region);
         } catch (NumberParseException e) {
             throw new InvalidTelephoneNumberException(
                     InvalidTelephoneNumberException.Type.NOT_PARSABLE_NUMBER,
@@ -142,7 +305,7 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      * @author Matteo Carnelos
      */
     private boolean adjustForEmulator(String address) {
-        if (address.matches(EMU_DETECTION_REGEX)) {
+        if (EMU_DETECTION_PATTERN.matcher(address).matches()) {
             this.telephoneNumber = "+1555521555" + address.charAt(address.length() - 1);
             return true;
         }
@@ -157,7 +320,7 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      */
     @Override
     public int compareTo(SMSPeer o) {
-        return telephoneNumber.compareTo(o.telephoneNumber);
+        return getAddress().compareTo(o.getAddress());
     }
 
     /**
@@ -167,6 +330,7 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      */
     @Override
     public String getAddress() {
+        validate();
         return telephoneNumber;
     }
 
@@ -177,6 +341,7 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      * telephoneNumber is invalid, null if telephoneNumber is valid.
      */
     public InvalidTelephoneNumberException.Type getInvalidityReason() {
+        validate();
         return invalidityReason;
     }
 
@@ -187,6 +352,7 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      * if telephoneNumber is valid.
      */
     public String getInvalidityMessage() {
+        validate();
         return invalidityMessage;
     }
 
@@ -203,7 +369,7 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
         if (!(o instanceof SMSPeer))
             return false;
         SMSPeer peer = (SMSPeer) o;
-        return telephoneNumber.equals(peer.telephoneNumber);
+        return getAddress().equals(peer.getAddress());
     }
 
     /**
@@ -214,7 +380,27 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      */
     @Override
     public int hashCode() {
-        return telephoneNumber.hashCode();
+        return getAddress().hashCode();
+    }
+
+    /**
+     * @return 0, since the peer contains no file descriptors.
+     */
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    /**
+     * Writes the peer to a {@link Parcel}: only its address is written, the rest is computed again
+     * when it's read.
+     *
+     * @param dest  the parcel to write to.
+     * @param flags additional flags about how the peer should be written.
+     */
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(getAddress());
     }
 
     /**
@@ -222,6 +408,6 @@ public class SMSPeer implements Peer<String>, Comparable<SMSPeer>, java.io.Seria
      */
     @NonNull
     public String toString() {
-        return telephoneNumber;
+        return getAddress();
     }
 }
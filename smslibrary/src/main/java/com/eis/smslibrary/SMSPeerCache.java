@@ -0,0 +1,128 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the peers built by a {@link SMSPeerParser}, keyed by the raw telephone number,
+ * so that numbers seen again don't go through libphonenumber. Every parser has its own cache, since
+ * the same number may be parsed differently in another region.
+ * Peers are immutable, so the same one can be shared by every thread.
+ * <p>
+ * The cache is split in segments, each one a small LRU map with its own lock, so that threads
+ * parsing different numbers rarely wait for each other. Every segment evicts its least recently
+ * used peer once it's full.
+ */
+final class SMSPeerCache {
+
+    private static final int SEGMENTS = 8;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor for the cache.
+     *
+     * @param capacity maximum number of peers kept, split evenly between the segments.
+     */
+    SMSPeerCache(int capacity) {
+        int segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(segmentCapacity);
+    }
+
+    /**
+     * @param telephoneNumber the raw telephone number.
+     * @return the peer built from the number, null if it's not cached.
+     */
+    @Nullable
+    SMSPeer get(@NonNull String telephoneNumber) {
+        Segment segment = segmentOf(telephoneNumber);
+        SMSPeer peer;
+        synchronized (segment) {
+            peer = segment.get(telephoneNumber);
+        }
+        (peer == null ? misses : hits).incrementAndGet();
+        return peer;
+    }
+
+    /**
+     * @param telephoneNumber the raw telephone number.
+     * @param peer            the peer built from the number.
+     */
+    void put(@NonNull String telephoneNumber, @NonNull SMSPeer peer) {
+        Segment segment = segmentOf(telephoneNumber);
+        synchronized (segment) {
+            segment.put(telephoneNumber, peer);
+        }
+    }
+
+    /**
+     * Removes every cached peer, counters are kept.
+     */
+    void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of peers cached.
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of lookups that found a cached peer.
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that didn't find a cached peer.
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    private Segment segmentOf(String telephoneNumber) {
+        int hash = telephoneNumber.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * LRU map of a segment, guarded by itself
+     */
+    private static class Segment extends LinkedHashMap<String, SMSPeer> {
+
+        // Never serialized, only declared since LinkedHashMap is Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SMSPeer> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Immutable context for parsing telephone numbers in a region: numbers without a prefix are
+ * considered to belong to it. Every parser has its own cache of the numbers it parsed, so parsers
+ * for different regions can be used by many threads at once without any global state, unlike
+ * {@link SMSPeer#SMSPeer(String)} that uses the region set with {@link SMSPeer#setDefaultRegion}.
+ * Parsers can be created once and reused, the valid ISO country codes are only computed once.
+ */
+public final class SMSPeerParser {
+
+    static final String INVALID_ISO_EXC_MSG = "The given string is not a valid ISO country code.";
+
+    /**
+     * Maximum number of parsed peers kept by the cache of every parser
+     */
+    static final int CACHE_CAPACITY = 4096;
+
+    private static final Set<String> ISO_COUNTRIES =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList(Locale.getISOCountries())));
+
+    private final String region;
+    private final SMSPeerCache cache = new SMSPeerCache(CACHE_CAPACITY);
+
+    /**
+     * Constructor for a parser, the region is not checked.
+     *
+     * @param region the 2 digit ISO country code, empty if numbers must have a prefix.
+     */
+    SMSPeerParser(@NonNull String region) {
+        this.region = region;
+    }
+
+    /**
+     * Creates a parser for the given region.
+     *
+     * @param region The 2 digit ISO country code numbers without a prefix belong to.
+     * @return the parser for the region.
+     * @throws IllegalArgumentException If the given code is not a valid ISO country code.
+     */
+    public static SMSPeerParser forRegion(@NonNull String region) {
+        if (!isISOCountry(region))
+            throw new IllegalArgumentException(INVALID_ISO_EXC_MSG);
+        return new SMSPeerParser(region);
+    }
+
+    /**
+     * @param region a string that may be an ISO country code.
+     * @return true if it's a valid 2 digit ISO country code, false otherwise.
+     */
+    static boolean isISOCountry(@NonNull String region) {
+        return ISO_COUNTRIES.contains(region);
+    }
+
+    /**
+     * Creates a peer from a number, parsing it in the region of this parser. See
+     * {@link SMSPeer#SMSPeer(String)}.
+     *
+     * @param telephoneNumber Address for the peer.
+     * @return the peer, check its {@link SMSPeer#getInvalidityReason()} to know if it's valid.
+     */
+    public SMSPeer parse(@NonNull String telephoneNumber) {
+        return new SMSPeer(telephoneNumber, this);
+    }
+
+    /**
+     * @return the region numbers without a prefix belong to, empty if they must have a prefix.
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * @return the cache of the numbers parsed by this parser.
+     */
+    SMSPeerCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the number of peers built from the cache instead of parsing their number.
+     */
+    public long getCacheHitCount() {
+        return cache.getHits();
+    }
+
+    /**
+     * @return the number of peers built by parsing their number, since it wasn't cached.
+     */
+    public long getCacheMissCount() {
+        return cache.getMisses();
+    }
+}
@@ -0,0 +1,110 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smslibrary.exceptions.InvalidTelephoneNumberException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Result of validating a list of telephone numbers with {@link SMSPeerValidator}: the valid peers,
+ * each one only once even if many numbers were formatted differently, and the rejected numbers
+ * grouped by the reason they were rejected for.
+ */
+public class SMSPeerValidation {
+
+    private final List<SMSPeer> validPeers;
+    private final EnumMap<InvalidTelephoneNumberException.Type, List<String>> rejectedNumbers;
+    private final int duplicateCount;
+
+    /**
+     * Constructor for the result of a validation.
+     *
+     * @param validPeers      the valid peers, without duplicates.
+     * @param rejectedNumbers the rejected numbers for every reason.
+     * @param duplicateCount  the number of valid numbers dropped because they were duplicates.
+     */
+    SMSPeerValidation(@NonNull List<SMSPeer> validPeers,
+                      @NonNull EnumMap<InvalidTelephoneNumberException.Type, List<String>> rejectedNumbers,
+                      int duplicateCount) {
+        this.validPeers = Collections.unmodifiableList(validPeers);
+        this.rejectedNumbers = rejectedNumbers;
+        this.duplicateCount = duplicateCount;
+    }
+
+    /**
+     * @return the valid peers, in the order their numbers first appeared, each one only once.
+     */
+    public List<SMSPeer> getValidPeers() {
+        return validPeers;
+    }
+
+    /**
+     * @return the number of valid numbers dropped because their peer had already been found.
+     */
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * @return the number of rejected numbers, for any reason.
+     */
+    public int getRejectedCount() {
+        int count = 0;
+        for (List<String> numbers : rejectedNumbers.values())
+            count += numbers.size();
+        return count;
+    }
+
+    /**
+     * @param reason the reason numbers are rejected for.
+     * @return the number of numbers rejected for the reason.
+     */
+    public int getRejectedCount(@NonNull InvalidTelephoneNumberException.Type reason) {
+        return getRejectedNumbers(reason).size();
+    }
+
+    /**
+     * @param reason the reason numbers are rejected for.
+     * @return the numbers rejected for the reason, as they were given.
+     */
+    public List<String> getRejectedNumbers(@NonNull InvalidTelephoneNumberException.Type reason) {
+        List<String> numbers = rejectedNumbers.get(reason);
+        return numbers == null ? Collections.<String>emptyList() : Collections.unmodifiableList(numbers);
+    }
+
+    /**
+     * Builds the result from the peers of every number, keeping their order.
+     *
+     * @param numbers the validated numbers.
+     * @param peers   the peer built from each number.
+     * @return the result of the validation.
+     */
+    static SMSPeerValidation of(@NonNull List<String> numbers, @NonNull SMSPeer[] peers) {
+        ArrayList<SMSPeer> validPeers = new ArrayList<>();
+        EnumMap<InvalidTelephoneNumberException.Type, List<String>> rejectedNumbers =
+                new EnumMap<>(InvalidTelephoneNumberException.Type.class);
+        HashSet<SMSPeer> seen = new HashSet<>();
+        int duplicates = 0;
+        for (int i = 0; i < peers.length; i++) {
+            InvalidTelephoneNumberException.Type reason = peers[i].getInvalidityReason();
+            if (reason != null) {
+                List<String> rejected = rejectedNumbers.get(reason);
+                if (rejected == null) {
+                    rejected = new ArrayList<>();
+                    rejectedNumbers.put(reason, rejected);
+                }
+                rejected.add(numbers.get(i));
+            } else if (seen.add(peers[i])) {
+                validPeers.add(peers[i]);
+            } else {
+                duplicates++;
+            }
+        }
+        return new SMSPeerValidation(validPeers, rejectedNumbers, duplicates);
+    }
+}
@@ -0,0 +1,133 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Validates long lists of telephone numbers, such as imported contacts, building their
+ * {@link SMSPeer}s on every core instead of one by one, so that invalid numbers are found up front
+ * instead of when a message is sent to them.
+ * The list is split in chunks, each one parsed by a task of the executor, and the results are then
+ * merged in the original order, dropping the numbers whose peer has already been found.
+ */
+public final class SMSPeerValidator {
+
+    private static final String TAG = "SMSPeerValidator";
+    /**
+     * Chunks per thread, more than one so that threads finishing early can take more work
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int MIN_CHUNK_SIZE = 256;
+    static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Private constructor, the class only has static methods
+     */
+    private SMSPeerValidator() {
+    }
+
+    /**
+     * Validates the given numbers on a shared pool with a thread per core.
+     *
+     * @param numbers the numbers to validate, as they would be passed to {@link SMSPeer#SMSPeer(String)}.
+     * @return the valid peers and the rejected numbers.
+     * @throws InterruptedException if the thread is interrupted while waiting for the validation.
+     */
+    public static SMSPeerValidation validate(@NonNull List<String> numbers) throws InterruptedException {
+        return validate(numbers, SMSPeer.getDefaultParser(), PoolHolder.POOL, PARALLELISM);
+    }
+
+    /**
+     * Validates the given numbers in the region of the given parser, on a shared pool with a
+     * thread per core.
+     *
+     * @param numbers the numbers to validate.
+     * @param parser  the parser the numbers are parsed with.
+     * @return the valid peers and the rejected numbers.
+     * @throws InterruptedException if the thread is interrupted while waiting for the validation.
+     */
+    public static SMSPeerValidation validate(@NonNull List<String> numbers, @NonNull SMSPeerParser parser)
+            throws InterruptedException {
+        return validate(numbers, parser, PoolHolder.POOL, PARALLELISM);
+    }
+
+    /**
+     * Validates the given numbers on the given executor.
+     *
+     * @param numbers     the numbers to validate, as they would be passed to {@link SMSPeer#SMSPeer(String)}.
+     * @param executor    the executor the numbers are parsed on.
+     * @param parallelism the number of threads of the executor, used to split the work.
+     * @return the valid peers and the rejected numbers.
+     * @throws InterruptedException if the thread is interrupted while waiting for the validation.
+     */
+    public static SMSPeerValidation validate(@NonNull List<String> numbers, @NonNull ExecutorService executor,
+                                             int parallelism) throws InterruptedException {
+        return validate(numbers, SMSPeer.getDefaultParser(), executor, parallelism);
+    }
+
+    /**
+     * Validates the given numbers in the region of the given parser, on the given executor.
+     *
+     * @param numbers     the numbers to validate.
+     * @param parser      the parser the numbers are parsed with.
+     * @param executor    the executor the numbers are parsed on.
+     * @param parallelism the number of threads of the executor, used to split the work.
+     * @return the valid peers and the rejected numbers.
+     * @throws InterruptedException if the thread is interrupted while waiting for the validation.
+     */
+    public static SMSPeerValidation validate(@NonNull List<String> numbers, @NonNull final SMSPeerParser parser,
+                                             @NonNull ExecutorService executor, int parallelism)
+            throws InterruptedException {
+        final List<String> indexed = numbers instanceof RandomAccess ? numbers : new ArrayList<>(numbers);
+        final SMSPeer[] peers = new SMSPeer[indexed.size()];
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, peers.length / (Math.max(1, parallelism) * CHUNKS_PER_THREAD) + 1);
+        List<Callable<Void>> chunks = new ArrayList<>();
+        for (int start = 0; start < peers.length; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(peers.length, start + chunkSize);
+            chunks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = from; i < to; i++) {
+                        peers[i] = parser.parse(indexed.get(i));
+                        // Validation is done here, so it's not left to the merging thread
+                        peers[i].getInvalidityReason();
+                    }
+                    return null;
+                }
+            });
+        }
+        // Every task writes its own slice of the array, invokeAll makes the writes visible here
+        for (Future<Void> chunk : executor.invokeAll(chunks)) {
+            try {
+                chunk.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Validation failed", e.getCause());
+            }
+        }
+        return SMSPeerValidation.of(indexed, peers);
+    }
+
+    /**
+     * Holds the shared pool, created the first time it's used
+     */
+    private static class PoolHolder {
+        private static final ExecutorService POOL = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
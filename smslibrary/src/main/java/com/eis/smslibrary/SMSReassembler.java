@@ -0,0 +1,226 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts back together the data split by {@link SMSFragmenter}, whatever the order the fragments
+ * arrive in and however far apart.
+ * Partial transfers are kept by peer and transfer id, in a buffer with bounded memory: transfers
+ * not receiving any fragment for longer than the time to live are dropped, and when there are too
+ * many transfers or buffered characters the least recently active ones are dropped too.
+ * Duplicate fragments are ignored. The data is joined once, when its last fragment arrives.
+ * It's thread safe.
+ */
+public class SMSReassembler {
+
+    private final int maxTransfers;
+    private final long maxBufferedChars;
+    private final long ttlNanos;
+
+    /**
+     * Partial transfers, the least recently active first; guarded by this along with the counters
+     */
+    private final LinkedHashMap<String, Transfer> transfers = new LinkedHashMap<>(16, 0.75f, true);
+    private long bufferedChars;
+    private long evictedTransfers;
+    private long duplicateFragments;
+    private long malformedFragments;
+
+    /**
+     * Constructor for a reassembler.
+     *
+     * @param maxTransfers     the max number of partial transfers kept at the same time.
+     * @param maxBufferedChars the max number of data characters kept for partial transfers.
+     * @param ttlMillis        how long in milliseconds a partial transfer is kept after its last
+     *                         fragment arrived.
+     * @throws IllegalArgumentException if any of the parameters is not positive.
+     */
+    public SMSReassembler(int maxTransfers, long maxBufferedChars, long ttlMillis) {
+        if (maxTransfers <= 0 || maxBufferedChars <= 0 || ttlMillis <= 0)
+            throw new IllegalArgumentException("Limits and time to live must be positive");
+        this.maxTransfers = maxTransfers;
+        this.maxBufferedChars = maxBufferedChars;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Adds a received fragment to its transfer.
+     *
+     * @param fragment a message created by {@link SMSFragmenter}.
+     * @return the whole data if this was the last missing fragment of its transfer, null otherwise.
+     */
+    @Nullable
+    public String offer(@NonNull SMSMessage fragment) {
+        return offer(fragment, System.nanoTime());
+    }
+
+    /**
+     * Adds a received fragment to its transfer.
+     *
+     * @param fragment a message created by {@link SMSFragmenter}.
+     * @param nowNanos the current time, as given by {@link System#nanoTime()}.
+     * @return the whole data if this was the last missing fragment of its transfer, null otherwise.
+     */
+    @Nullable
+    synchronized String offer(@NonNull SMSMessage fragment, long nowNanos) {
+        evictExpired(nowNanos);
+        String data = fragment.getData();
+        int transferId;
+        int index;
+        int count;
+        try {
+            if (!SMSFragmenter.isFragment(fragment))
+                throw new IllegalArgumentException("Not a fragment");
+            transferId = readNumber(data, 1, SMSFragmenter.TRANSFER_ID_DIGITS);
+            index = readNumber(data, 1 + SMSFragmenter.TRANSFER_ID_DIGITS, SMSFragmenter.INDEX_DIGITS);
+            count = readNumber(data, 1 + SMSFragmenter.TRANSFER_ID_DIGITS + SMSFragmenter.INDEX_DIGITS, SMSFragmenter.INDEX_DIGITS);
+        } catch (IllegalArgumentException e) {
+            malformedFragments++;
+            return null;
+        }
+        if (count == 0 || index >= count) {
+            malformedFragments++;
+            return null;
+        }
+        String part = data.substring(SMSFragmenter.HEADER_LENGTH);
+        if (count == 1)
+            return part;
+
+        String key = fragment.getPeer().getAddress() + '#' + transferId;
+        Transfer transfer = transfers.get(key);
+        if (transfer != null && transfer.parts.length != count) {
+            // The id has been reused by a new transfer, the old one can't be completed anymore
+            remove(key, transfer);
+            evictedTransfers++;
+            transfer = null;
+        }
+        if (transfer == null) {
+            transfer = new Transfer(count);
+            transfers.put(key, transfer);
+        }
+        transfer.lastNanos = nowNanos;
+        if (transfer.parts[index] != null) {
+            duplicateFragments++;
+            return null;
+        }
+        transfer.parts[index] = part;
+        transfer.chars += part.length();
+        transfer.received++;
+        bufferedChars += part.length();
+
+        if (transfer.received == count) {
+            remove(key, transfer);
+            StringBuilder whole = new StringBuilder(transfer.chars);
+            for (String transferPart : transfer.parts)
+                whole.append(transferPart);
+            return whole.toString();
+        }
+        evictOverLimits();
+        return null;
+    }
+
+    /**
+     * @return the number of transfers waiting for some of their fragments.
+     */
+    public synchronized int getPendingTransfers() {
+        return transfers.size();
+    }
+
+    /**
+     * @return the number of data characters kept for partial transfers.
+     */
+    public synchronized long getBufferedChars() {
+        return bufferedChars;
+    }
+
+    /**
+     * @return the number of partial transfers dropped, for their time to live or the limits.
+     */
+    public synchronized long getEvictedTransfers() {
+        return evictedTransfers;
+    }
+
+    /**
+     * @return the number of fragments ignored because they had already been received.
+     */
+    public synchronized long getDuplicateFragments() {
+        return duplicateFragments;
+    }
+
+    /**
+     * @return the number of messages ignored because they were not valid fragments.
+     */
+    public synchronized long getMalformedFragments() {
+        return malformedFragments;
+    }
+
+    /**
+     * Drops the transfers that haven't received a fragment within the time to live.
+     *
+     * @param nowNanos the current time, as given by {@link System#nanoTime()}.
+     */
+    private void evictExpired(long nowNanos) {
+        Iterator<Transfer> iterator = transfers.values().iterator();
+        while (iterator.hasNext()) {
+            Transfer transfer = iterator.next();
+            if (nowNanos - transfer.lastNanos < ttlNanos)
+                return;
+            iterator.remove();
+            bufferedChars -= transfer.chars;
+            evictedTransfers++;
+        }
+    }
+
+    /**
+     * Drops the least recently active transfers until the limits are respected.
+     */
+    private void evictOverLimits() {
+        Iterator<Transfer> iterator = transfers.values().iterator();
+        while ((transfers.size() > maxTransfers || bufferedChars > maxBufferedChars) && iterator.hasNext()) {
+            Transfer transfer = iterator.next();
+            iterator.remove();
+            bufferedChars -= transfer.chars;
+            evictedTransfers++;
+        }
+    }
+
+    private void remove(String key, Transfer transfer) {
+        transfers.remove(key);
+        bufferedChars -= transfer.chars;
+    }
+
+    /**
+     * Reads a number written by {@link SMSFragmenter}.
+     *
+     * @param data   the text holding the number.
+     * @param start  the index of its first digit.
+     * @param digits the number of digits.
+     * @return the number.
+     * @throws IllegalArgumentException if a digit is not valid.
+     */
+    private static int readNumber(String data, int start, int digits) {
+        int value = 0;
+        for (int i = start + digits - 1; i >= start; i--)
+            value = value * GSMBinaryParseStrategy.BASE + GSMBinaryParseStrategy.digitOf(data.charAt(i));
+        return value;
+    }
+
+    /**
+     * Fragments received so far for a transfer
+     */
+    private static class Transfer {
+        private final String[] parts;
+        private int received;
+        private int chars;
+        private long lastNanos;
+
+        private Transfer(int count) {
+            parts = new String[count];
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.eis.smslibrary;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * Coalesces received messages into batches, so that a burst of messages is delivered with a single
+ * work item instead of one per message.
+ * A batch is flushed as soon as it holds the maximum number of messages, or when the window opened
+ * by its first message is over, whichever comes first: no message waits longer than the window.
+ * <p>
+ * Messages are only held in memory, so the broadcasts that received them can finish right away.
+ * When a {@link SMSReceivedSpool} is given every message is also written to disk until its batch
+ * has been delivered, and the batches left by a process that died can be delivered with
+ * {@link #deliverLeftovers(Context)}.
+ */
+class SMSReceivedBatcher {
+
+    /**
+     * Max window allowed, the process may be stopped soon after its last broadcast has finished
+     */
+    static final long MAX_WINDOW_MILLIS = 5000;
+    private static final long TICK_MILLIS = 25;
+    private static final int WHEEL_SIZE = 256;
+
+    /**
+     * Callback receiving every flushed batch
+     */
+    interface BatchListener {
+        /**
+         * Called on the thread that flushed the batch, never while the batcher is locked.
+         *
+         * @param context  the context of the first message of the batch.
+         * @param messages the messages of the batch, in arrival order.
+         */
+        void onBatch(@NonNull Context context, @NonNull ArrayList<SMSMessage> messages);
+    }
+
+    private final int maxMessages;
+    private final long windowMillis;
+    private final SMSTimerWheel timer;
+    private final BatchListener listener;
+    @Nullable
+    private final SMSReceivedSpool spool;
+
+    /**
+     * State of the batch being filled, guarded by this
+     */
+    private ArrayList<SMSMessage> messages = new ArrayList<>();
+    private Context context;
+    private long batchNumber;
+    @Nullable
+    private SMSReceivedSpool.Writer spoolWriter;
+
+    /**
+     * Constructor for a batcher.
+     *
+     * @param maxMessages  the max number of messages in a batch.
+     * @param windowMillis the max time in milliseconds a message is held before being delivered.
+     * @param listener     the listener receiving the batches.
+     * @throws IllegalArgumentException if maxMessages is not positive or the window is not in
+     *                                  (0, {@link #MAX_WINDOW_MILLIS}].
+     */
+    SMSReceivedBatcher(int maxMessages, long windowMillis, @NonNull BatchListener listener) {
+        this(maxMessages, windowMillis, listener, new SMSTimerWheel(TICK_MILLIS, WHEEL_SIZE),
+                SMSReceivedSpool.getInstance());
+    }
+
+    /**
+     * Constructor for a batcher using the given timer for its deadlines, keeping its messages
+     * only in memory.
+     *
+     * @param maxMessages  the max number of messages in a batch.
+     * @param windowMillis the max time in milliseconds a message is held before being delivered.
+     * @param listener     the listener receiving the batches.
+     * @param timer        the timer used to flush the batches on their deadline.
+     * @throws IllegalArgumentException if maxMessages is not positive or the window is not in
+     *                                  (0, {@link #MAX_WINDOW_MILLIS}].
+     */
+    SMSReceivedBatcher(int maxMessages, long windowMillis, @NonNull BatchListener listener,
+                       @NonNull SMSTimerWheel timer) {
+        this(maxMessages, windowMillis, listener, timer, null);
+    }
+
+    /**
+     * Constructor for a batcher using the given timer for its deadlines and the given spool.
+     *
+     * @param maxMessages  the max number of messages in a batch.
+     * @param windowMillis the max time in milliseconds a message is held before being delivered.
+     * @param listener     the listener receiving the batches.
+     * @param timer        the timer used to flush the batches on their deadline.
+     * @param spool        the spool keeping the messages until they're delivered, null to only
+     *                     keep them in memory.
+     * @throws IllegalArgumentException if maxMessages is not positive or the window is not in
+     *                                  (0, {@link #MAX_WINDOW_MILLIS}].
+     */
+    SMSReceivedBatcher(int maxMessages, long windowMillis, @NonNull BatchListener listener,
+                       @NonNull SMSTimerWheel timer, @Nullable SMSReceivedSpool spool) {
+        if (maxMessages <= 0)
+            throw new IllegalArgumentException("Max messages in a batch must be positive");
+        if (windowMillis <= 0 || windowMillis > MAX_WINDOW_MILLIS)
+            throw new IllegalArgumentException("Batch window must be positive and at most " + MAX_WINDOW_MILLIS + " ms");
+        this.maxMessages = maxMessages;
+        this.windowMillis = windowMillis;
+        this.listener = listener;
+        this.timer = timer;
+        this.spool = spool;
+    }
+
+    /**
+     * Adds a message to the current batch, opening a new one if needed. If the message can't be
+     * spooled it's delivered right away, along with the rest of its batch.
+     *
+     * @param context the context to deliver the batch with.
+     * @param message the received message.
+     */
+    void add(@NonNull Context context, @NonNull SMSMessage message) {
+        // Encoded before taking the lock, spooling is then a single write to an open file
+        byte[] record = spool == null ? null : SMSReceivedSpool.toRecord(message);
+        Batch full = null;
+        synchronized (this) {
+            if (messages.isEmpty()) {
+                this.context = context;
+                if (spool != null)
+                    spoolWriter = spool.open(context);
+                final long deadlineBatch = batchNumber;
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(take(deadlineBatch));
+                    }
+                }, windowMillis);
+            }
+            messages.add(message);
+            boolean spooled = spool == null || (spoolWriter != null && spoolWriter.append(record));
+            if (!spooled || messages.size() >= maxMessages)
+                full = take(batchNumber);
+        }
+        deliver(full);
+    }
+
+    /**
+     * Delivers the current batch right away, if there's any.
+     */
+    void flush() {
+        Batch batch;
+        synchronized (this) {
+            batch = take(batchNumber);
+        }
+        deliver(batch);
+    }
+
+    /**
+     * @return the number of messages waiting in the current batch.
+     */
+    synchronized int getBufferedCount() {
+        return messages.size();
+    }
+
+    /**
+     * @return the max number of messages in a batch.
+     */
+    int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * @return the max time in milliseconds a message is held before being delivered.
+     */
+    long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Takes the current batch and opens a new one, if the current one is the expected one.
+     *
+     * @param expectedBatch the number of the batch to take.
+     * @return the batch taken, or null if it was already taken or it's empty.
+     */
+    private synchronized Batch take(long expectedBatch) {
+        if (expectedBatch != batchNumber || messages.isEmpty())
+            return null;
+        Batch batch = new Batch(context, messages, spoolWriter);
+        messages = new ArrayList<>();
+        context = null;
+        spoolWriter = null;
+        batchNumber++;
+        return batch;
+    }
+
+    /**
+     * Delivers the batches left in the spool by a process that died, if this is the first time
+     * the spool is asked for them. Does nothing if the batcher has no spool.
+     *
+     * @param context the context to read the spool and deliver the batches with.
+     */
+    void deliverLeftovers(@NonNull Context context) {
+        if (spool != null)
+            deliverLeftovers(context, spool, listener);
+    }
+
+    /**
+     * Delivers the batches left in a spool by a process that died, if this is the first time the
+     * spool is asked for them. Every batch is deleted once the listener returns.
+     *
+     * @param context  the context to read the spool and deliver the batches with.
+     * @param spool    the spool holding the batches.
+     * @param listener the listener receiving the batches.
+     */
+    static void deliverLeftovers(@NonNull Context context, @NonNull SMSReceivedSpool spool,
+                                 @NonNull BatchListener listener) {
+        for (long leftover : spool.takeLeftovers(context)) {
+            ArrayList<SMSMessage> messages = spool.read(context, leftover);
+            if (!messages.isEmpty())
+                listener.onBatch(context, messages);
+            spool.delete(context, leftover);
+        }
+    }
+
+    /**
+     * Calls the listener and then deletes the batch from the spool. If the listener throws the
+     * batch is kept, to be delivered again by the next process.
+     *
+     * @param batch the batch to deliver, may be null.
+     */
+    private void deliver(@Nullable Batch batch) {
+        if (batch == null)
+            return;
+        if (batch.spoolWriter != null)
+            batch.spoolWriter.close();
+        listener.onBatch(batch.context, batch.messages);
+        if (batch.spoolWriter != null)
+            spool.delete(batch.context, batch.spoolWriter.getBatch());
+    }
+
+    /**
+     * Messages taken out of the batcher to be delivered
+     */
+    private static class Batch {
+        private final Context context;
+        private final ArrayList<SMSMessage> messages;
+        private final SMSReceivedSpool.Writer spoolWriter;
+
+        private Batch(Context context, ArrayList<SMSMessage> messages, SMSReceivedSpool.Writer spoolWriter) {
+            this.context = context;
+            this.messages = messages;
+            this.spoolWriter = spoolWriter;
+        }
+    }
+}
@@ -26,9 +26,11 @@ import android.os.Build;
 import android.telephony.SmsMessage;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.JobIntentService;
 
-import it.lucacrema.preferences.PreferencesManager;
+import java.util.ArrayList;
 
 /**
  * Broadcast receiver for received messages, called by Android.
@@ -40,8 +42,19 @@ public class SMSReceivedBroadcastReceiver extends BroadcastReceiver {
 
     public static final String TAG = "SMSReceivedReceiver";
     public static final String INTENT_MESSAGE_TAG = "SMSMessage";
+    public static final String INTENT_MESSAGES_TAG = "SMSMessages";
     public static final String SERVICE_CLASS_PREFERENCES_KEY = "ApplicationServiceClass";
     private static final int SCHEDULING_JOB_ID = 420;
+    private static final BatchDelivery BATCH_DELIVERY = new BatchDelivery();
+
+    /**
+     * Batcher coalescing the received messages, null if every message is delivered on its own
+     */
+    private static volatile SMSReceivedBatcher batcher;
+    /**
+     * Deduplicator dropping the messages received twice, null if every message is delivered
+     */
+    private static volatile SMSReceivedDeduplicator deduplicator;
 
     /**
      * Parses message and calls listener
@@ -50,14 +63,23 @@ public class SMSReceivedBroadcastReceiver extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         SmsMessage[] pdus = getMessagesFromIntent(intent);
         if (pdus == null) return;
+        deliverLeftovers(context.getApplicationContext());
         String phoneNumber = pdus[0].getDisplayOriginatingAddress();
         String messageBody = buildMessageBodyFromPdus(pdus);
-        // parseMessage() uses a MessageParseStrategy to check if the message contains a special
+        SMSReceivedDeduplicator currentDeduplicator = deduplicator;
+        if (currentDeduplicator != null &&
+                currentDeduplicator.isDuplicate(phoneNumber, messageBody, pdus[0].getTimestampMillis()))
+            return;
+        // parseReceived() uses a MessageParseStrategy to check if the message contains a special
         // String at the beginning of the message. If it does, then this string is removed;
-        // otherwise it returns null.
+        // otherwise it returns null. It also returns null once a route listener got the message.
         SMSMessage parsedMessage =
-                SMSMessageHandler.getInstance().parseMessage(phoneNumber, messageBody);
-        if (parsedMessage != null) callApplicationService(context, parsedMessage);
+                SMSMessageHandler.getInstance().parseReceived(phoneNumber, messageBody);
+        if (parsedMessage == null) return;
+        // Listeners living in this process get the message directly, the service is only woken
+        // up when there's none, which is always the case on a cold process.
+        if (!SMSReceivedListenerRegistry.dispatchLive(parsedMessage))
+            callApplicationService(context, parsedMessage);
     }
 
     /**
@@ -140,24 +162,92 @@ public class SMSReceivedBroadcastReceiver extends BroadcastReceiver {
     }
 
     /**
-     * Calls the current subscribed app service
+     * Calls the current subscribed app service, or adds the message to the current batch if
+     * received messages are being coalesced.
      *
      * @param context broadcast current context
      * @param message received message
      */
     private void callApplicationService(Context context, SMSMessage message) {
-        Class<?> listener = null;
-        String preferencesClassName = PreferencesManager.getString(context, SERVICE_CLASS_PREFERENCES_KEY);
-        try {
-            listener = Class.forName(preferencesClassName);
-        } catch (ClassNotFoundException e) {
-            Log.e("SMSReceiver", "Service class to wake up could not be found: " + preferencesClassName);
-        }
+        Class<?> listener = SMSReceivedListenerRegistry.get(context);
         if (listener == null)
             return;
 
+        SMSReceivedBatcher currentBatcher = batcher;
+        if (currentBatcher != null) {
+            // The broadcast finishes right away, the batcher spools the message until it's delivered
+            currentBatcher.add(context.getApplicationContext(), message);
+            return;
+        }
         Intent serviceIntent = new Intent();
-        serviceIntent.putExtra(INTENT_MESSAGE_TAG, message);
+        serviceIntent.putExtra(INTENT_MESSAGE_TAG, SMSCodec.toBytes(message));
         JobIntentService.enqueueWork(context, listener, SCHEDULING_JOB_ID, serviceIntent);
     }
+
+    /**
+     * Delivers the batches a process died with, the first time it's called in a process: whatever
+     * path later messages take, and even if batching isn't set up again, they're not left on disk.
+     *
+     * @param context the context of the application.
+     */
+    private static void deliverLeftovers(Context context) {
+        SMSReceivedBatcher currentBatcher = batcher;
+        if (currentBatcher != null)
+            currentBatcher.deliverLeftovers(context);
+        else
+            SMSReceivedBatcher.deliverLeftovers(context, SMSReceivedSpool.getInstance(), BATCH_DELIVERY);
+    }
+
+    /**
+     * Starts coalescing received messages into batches, flushing the current ones if any.
+     *
+     * @param newBatcher the batcher to use, or null to deliver every message on its own.
+     */
+    static void setBatcher(@Nullable SMSReceivedBatcher newBatcher) {
+        SMSReceivedBatcher oldBatcher;
+        synchronized (SMSReceivedBroadcastReceiver.class) {
+            oldBatcher = batcher;
+            batcher = newBatcher;
+        }
+        if (oldBatcher != null)
+            oldBatcher.flush();
+    }
+
+    /**
+     * @return the batcher coalescing received messages, or null if there's none.
+     */
+    @Nullable
+    static SMSReceivedBatcher getBatcher() {
+        return batcher;
+    }
+
+    /**
+     * @param newDeduplicator the deduplicator to use, or null to deliver every message.
+     */
+    static void setDeduplicator(@Nullable SMSReceivedDeduplicator newDeduplicator) {
+        deduplicator = newDeduplicator;
+    }
+
+    /**
+     * @return the deduplicator dropping the messages received twice, or null if there's none.
+     */
+    @Nullable
+    static SMSReceivedDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    /**
+     * Calls the current subscribed app service with a whole batch of messages.
+     */
+    static class BatchDelivery implements SMSReceivedBatcher.BatchListener {
+        @Override
+        public void onBatch(@NonNull Context context, @NonNull ArrayList<SMSMessage> messages) {
+            Class<?> listener = SMSReceivedListenerRegistry.get(context);
+            if (listener == null)
+                return;
+            Intent serviceIntent = new Intent();
+            serviceIntent.putExtra(INTENT_MESSAGES_TAG, SMSCodec.toBytes(messages));
+            JobIntentService.enqueueWork(context, listener, SCHEDULING_JOB_ID, serviceIntent);
+        }
+    }
 }
@@ -0,0 +1,188 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recognizes the messages received more than once within a time window, as happens when the
+ * carrier delivers a message again or Android broadcasts it twice.
+ * A message is identified by its peer, its text and the timestamp the service center gave it, all
+ * hashed into a 64 bit fingerprint.
+ * <p>
+ * Fingerprints are kept in {@link #BUCKETS} hash tables, each one holding the messages received
+ * in a slice of the window, and the oldest table is cleared when a new slice starts: memory is
+ * fixed at creation, {@link #BUCKETS} tables of 2 to 4 times maxMessages longs each. A message is
+ * remembered for at least the window and at most a slice longer. When more than maxMessages
+ * messages arrive in the same slice the ones in excess are not remembered, so their duplicates
+ * get through.
+ */
+class SMSReceivedDeduplicator {
+
+    static final int BUCKETS = 4;
+    /**
+     * Max messages remembered in a slice, to keep the tables within a few MB
+     */
+    static final int MAX_MESSAGES = 1 << 16;
+    private static final long EMPTY = 0;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long sliceNanos;
+    private final int maxMessages;
+
+    /**
+     * Tables of fingerprints and the slice each one holds, guarded by this along with the counters
+     */
+    private final long[][] tables = new long[BUCKETS][];
+    private final long[] slices = new long[BUCKETS];
+    private final int[] sizes = new int[BUCKETS];
+    private boolean started;
+    private long originNanos;
+    private long droppedDuplicates;
+    private long forgottenMessages;
+
+    /**
+     * Constructor for a deduplicator.
+     *
+     * @param windowMillis how long in milliseconds a message is remembered.
+     * @param maxMessages  the max number of messages remembered for every slice of the window.
+     * @throws IllegalArgumentException if the window is not positive or maxMessages is not in
+     *                                  (0, {@link #MAX_MESSAGES}].
+     */
+    SMSReceivedDeduplicator(long windowMillis, int maxMessages) {
+        if (windowMillis <= 0)
+            throw new IllegalArgumentException("Deduplication window must be positive");
+        if (maxMessages <= 0 || maxMessages > MAX_MESSAGES)
+            throw new IllegalArgumentException("Max messages out of range: " + maxMessages);
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        // The tables other than the current one cover the whole window
+        this.sliceNanos = (windowNanos + BUCKETS - 2) / (BUCKETS - 1);
+        this.maxMessages = maxMessages;
+        int tableSize = 2;
+        while (tableSize < maxMessages * 2)
+            tableSize <<= 1;
+        for (int i = 0; i < BUCKETS; i++) {
+            tables[i] = new long[tableSize];
+            slices[i] = -1;
+        }
+    }
+
+    /**
+     * Checks whether a message has already been received within the window, remembering it if not.
+     *
+     * @param address         the address of the peer that sent the message.
+     * @param body            the text of the message.
+     * @param timestampMillis the service center timestamp of the message.
+     * @return true if the message is a duplicate and should be dropped, false otherwise.
+     */
+    boolean isDuplicate(@NonNull String address, @NonNull String body, long timestampMillis) {
+        return isDuplicate(address, body, timestampMillis, System.nanoTime());
+    }
+
+    /**
+     * Checks whether a message has already been received within the window, remembering it if not.
+     *
+     * @param address         the address of the peer that sent the message.
+     * @param body            the text of the message.
+     * @param timestampMillis the service center timestamp of the message.
+     * @param nowNanos        the current time, as given by {@link System#nanoTime()}.
+     * @return true if the message is a duplicate and should be dropped, false otherwise.
+     */
+    synchronized boolean isDuplicate(@NonNull String address, @NonNull String body,
+                                     long timestampMillis, long nowNanos) {
+        if (!started) {
+            originNanos = nowNanos;
+            started = true;
+        }
+        long slice = Math.max(0, nowNanos - originNanos) / sliceNanos;
+        long fingerprint = fingerprint(address, body, timestampMillis);
+        for (int i = 0; i < BUCKETS && slice - i >= 0; i++) {
+            int bucket = (int) ((slice - i) % BUCKETS);
+            if (slices[bucket] == slice - i && contains(tables[bucket], fingerprint)) {
+                droppedDuplicates++;
+                return true;
+            }
+        }
+        int bucket = (int) (slice % BUCKETS);
+        if (slices[bucket] != slice) {
+            // The slice this table held is out of the window
+            Arrays.fill(tables[bucket], EMPTY);
+            sizes[bucket] = 0;
+            slices[bucket] = slice;
+        }
+        if (sizes[bucket] == maxMessages)
+            forgottenMessages++;
+        else {
+            insert(tables[bucket], fingerprint);
+            sizes[bucket]++;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of messages recognized as duplicates.
+     */
+    synchronized long getDroppedDuplicates() {
+        return droppedDuplicates;
+    }
+
+    /**
+     * @return the number of messages not remembered because too many arrived in the same slice.
+     */
+    synchronized long getForgottenMessages() {
+        return forgottenMessages;
+    }
+
+    /**
+     * @param table       a table of fingerprints.
+     * @param fingerprint the fingerprint to look for.
+     * @return true if the table holds the fingerprint, false otherwise.
+     */
+    private static boolean contains(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        for (int i = (int) fingerprint & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == fingerprint)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param table       a table of fingerprints with at least a free slot.
+     * @param fingerprint the fingerprint to add.
+     */
+    private static void insert(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int i = (int) fingerprint & mask;
+        while (table[i] != EMPTY)
+            i = (i + 1) & mask;
+        table[i] = fingerprint;
+    }
+
+    /**
+     * Hashes a message with 64 bit FNV-1a, mixing the result so that its low bits can index a table.
+     *
+     * @param address         the address of the peer that sent the message.
+     * @param body            the text of the message.
+     * @param timestampMillis the service center timestamp of the message.
+     * @return the fingerprint of the message, never {@link #EMPTY}.
+     */
+    private static long fingerprint(String address, String body, long timestampMillis) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < address.length(); i++)
+            hash = (hash ^ address.charAt(i)) * FNV_PRIME;
+        // Separates the address from the body, no char is above 0xFFFF
+        hash = (hash ^ 0x10000) * FNV_PRIME;
+        for (int i = 0; i < body.length(); i++)
+            hash = (hash ^ body.charAt(i)) * FNV_PRIME;
+        hash = (hash ^ timestampMillis) * FNV_PRIME;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+}
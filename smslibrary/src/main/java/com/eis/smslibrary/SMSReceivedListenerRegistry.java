@@ -0,0 +1,185 @@
+package com.eis.smslibrary;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.eis.smslibrary.listeners.SMSReceivedListener;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import it.lucacrema.preferences.PreferencesManager;
+
+/**
+ * In-memory registry of the {@link com.eis.smslibrary.listeners.SMSReceivedServiceListener} class
+ * to wake up on message arrival.
+ * The class is persisted in the preferences so that it survives the process, but it's resolved
+ * only once per process: later lookups never touch the preferences nor use reflection.
+ * It also holds the {@link SMSReceivedListener}s living in the current process, which get the
+ * messages before, and instead of, the service.
+ */
+final class SMSReceivedListenerRegistry {
+
+    private static final String TAG = "SMSListenerRegistry";
+
+    /**
+     * Resolved state of the registry, {@code null} until it has been loaded in this process.
+     */
+    private static volatile Resolved resolved;
+
+    /**
+     * Listeners of the current process, along with the executor they're called on
+     */
+    private static final CopyOnWriteArrayList<LiveListener> liveListeners = new CopyOnWriteArrayList<>();
+
+    private SMSReceivedListenerRegistry() {
+    }
+
+    /**
+     * Saves the service class both in memory and in the preferences.
+     *
+     * @param listenerClass the service class to wake up.
+     * @param context       the context used to access the preferences.
+     */
+    static synchronized void set(@NonNull Class<?> listenerClass, @NonNull Context context) {
+        PreferencesManager.setString(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY, listenerClass.getName());
+        resolved = new Resolved(listenerClass);
+    }
+
+    /**
+     * Removes the service class both from memory and from the preferences.
+     *
+     * @param context the context used to access the preferences.
+     */
+    static synchronized void remove(@NonNull Context context) {
+        PreferencesManager.removeValue(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY);
+        resolved = new Resolved(null);
+    }
+
+    /**
+     * Returns the service class to wake up, reading it from the preferences only the first time
+     * it's requested in a process.
+     *
+     * @param context the context used to access the preferences on a cold process.
+     * @return the service class, or null if none is set or it could not be found.
+     */
+    @Nullable
+    static Class<?> get(@NonNull Context context) {
+        Resolved current = resolved;
+        if (current == null)
+            current = load(context);
+        return current.listenerClass;
+    }
+
+    /**
+     * Reads and resolves the service class from the preferences, unless another thread already did.
+     *
+     * @param context the context used to access the preferences.
+     * @return the resolved state.
+     */
+    private static synchronized Resolved load(@NonNull Context context) {
+        if (resolved != null)
+            return resolved;
+        Class<?> listenerClass = null;
+        String className = PreferencesManager.getString(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY);
+        if (className != null && !className.isEmpty()) {
+            try {
+                listenerClass = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                Log.e(TAG, "Service class to wake up could not be found: " + className);
+            }
+        }
+        resolved = new Resolved(listenerClass);
+        return resolved;
+    }
+
+    /**
+     * Adds a listener to be called on the given executor while the process is alive.
+     * Adding a listener already present only changes its executor.
+     *
+     * @param listener the listener to add.
+     * @param executor the executor the listener is called on.
+     */
+    static synchronized void addLive(@NonNull SMSReceivedListener listener, @NonNull Executor executor) {
+        removeLive(listener);
+        liveListeners.add(new LiveListener(listener, executor));
+    }
+
+    /**
+     * Removes a listener added with {@link #addLive(SMSReceivedListener, Executor)}.
+     *
+     * @param listener the listener to remove.
+     * @return true if the listener was present, false otherwise.
+     */
+    static synchronized boolean removeLive(@NonNull SMSReceivedListener listener) {
+        for (LiveListener liveListener : liveListeners) {
+            if (liveListener.listener == listener)
+                return liveListeners.remove(liveListener);
+        }
+        return false;
+    }
+
+    /**
+     * Hands a received message to every listener of the current process, each on its executor.
+     * An executor rejecting the message, as a shut down one does, doesn't stop the others.
+     *
+     * @param message the received message.
+     * @return true if at least one executor accepted the message, false if the message still has
+     * to be delivered.
+     */
+    static boolean dispatchLive(@NonNull final SMSMessage message) {
+        boolean dispatched = false;
+        for (final LiveListener liveListener : liveListeners) {
+            try {
+                liveListener.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        liveListener.listener.onMessageReceived(message);
+                    }
+                });
+                dispatched = true;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Executor of a received listener rejected the message: " + e);
+            }
+        }
+        return dispatched;
+    }
+
+    /**
+     * Forgets the in-memory state, as if the process had just started.
+     */
+    @VisibleForTesting
+    static synchronized void reset() {
+        resolved = null;
+        liveListeners.clear();
+    }
+
+    /**
+     * Immutable holder, so that a missing class can be cached too.
+     */
+    private static class Resolved {
+        @Nullable
+        final Class<?> listenerClass;
+
+        Resolved(@Nullable Class<?> listenerClass) {
+            this.listenerClass = listenerClass;
+        }
+    }
+
+    /**
+     * A listener of the current process and its executor
+     */
+    private static class LiveListener {
+        private final SMSReceivedListener listener;
+        private final Executor executor;
+
+        private LiveListener(SMSReceivedListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.eis.smslibrary;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Files holding the messages buffered by a {@link SMSReceivedBatcher}, one for every batch, so
+ * that the batches a process dies with are delivered by the next one instead of being lost.
+ * <p>
+ * Every message is appended as a record made of its length, its CRC32 and its {@link SMSCodec}
+ * bytes, and a file is deleted once its batch has been delivered. The file of a batch is kept open
+ * while the batch is filled, so appending a message costs a single write. Files are not synced:
+ * they outlive the process, which is what a broadcast finished before its message is delivered
+ * risks, but not the device. A torn or corrupted record ends the file it's in.
+ */
+class SMSReceivedSpool {
+
+    private static final String TAG = "SMSReceivedSpool";
+    static final String DIRECTORY_NAME = "received_batches";
+    private static final int RECORD_HEADER_BYTES = 8;
+    // A message can't be longer than 255 * 160 chars, that's at most 3 bytes per char in UTF-8
+    private static final int MAX_PAYLOAD_BYTES = 1 << 17;
+
+    private static final SMSReceivedSpool instance = new SMSReceivedSpool();
+
+    /**
+     * Guarded by this
+     */
+    private boolean recovered;
+    private long nextBatch;
+
+    /**
+     * Constructor for a spool, only used on its own by tests: a process must share a single spool.
+     */
+    SMSReceivedSpool() {
+    }
+
+    /**
+     * @return the spool of the process.
+     */
+    static SMSReceivedSpool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the batches left by the processes that died before delivering them. Only the first
+     * call in a process returns any, later calls return an empty array: the batches of the current
+     * process are never returned.
+     *
+     * @param context the context whose files directory holds the spool.
+     * @return the numbers of the batches left, oldest first.
+     */
+    synchronized long[] takeLeftovers(@NonNull Context context) {
+        if (recovered)
+            return new long[0];
+        recovered = true;
+        String[] names = directory(context).list();
+        if (names == null)
+            return new long[0];
+        long[] batches = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            try {
+                batches[count] = Long.parseLong(name);
+                count++;
+            } catch (NumberFormatException notABatch) {
+                // Not written by the spool
+            }
+        }
+        batches = Arrays.copyOf(batches, count);
+        Arrays.sort(batches);
+        if (count > 0)
+            nextBatch = Math.max(nextBatch, batches[count - 1] + 1);
+        return batches;
+    }
+
+    /**
+     * @return the number of a new batch, never used by the leftover ones.
+     */
+    synchronized long newBatch() {
+        return nextBatch++;
+    }
+
+    /**
+     * Creates the file of a new batch and keeps it open, to append its messages.
+     *
+     * @param context the context whose files directory holds the spool.
+     * @return the writer of the batch, null if its file could not be created.
+     */
+    @Nullable
+    Writer open(@NonNull Context context) {
+        long batch = newBatch();
+        File directory = directory(context);
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Can't create " + directory);
+            return new Writer(batch, new FileOutputStream(new File(directory, Long.toString(batch)), true));
+        } catch (IOException e) {
+            Log.e(TAG, "Batch could not be spooled: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Encodes a message as a record of the spool, so that it can be done before taking any lock.
+     *
+     * @param message the message to encode.
+     * @return the record of the message.
+     */
+    static byte[] toRecord(@NonNull SMSMessage message) {
+        byte[] payload = SMSCodec.toBytes(message);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        return record.array();
+    }
+
+    /**
+     * Reads the messages of a batch, up to the first torn or corrupted record.
+     *
+     * @param context the context whose files directory holds the spool.
+     * @param batch   the number of the batch.
+     * @return the messages of the batch in the order they were appended, empty if it can't be read.
+     */
+    @NonNull
+    ArrayList<SMSMessage> read(@NonNull Context context, long batch) {
+        ArrayList<SMSMessage> messages = new ArrayList<>();
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(new File(directory(context), Long.toString(batch)))));
+            try {
+                CRC32 crc = new CRC32();
+                while (true) {
+                    int length = input.readInt();
+                    if (length <= 0 || length > MAX_PAYLOAD_BYTES)
+                        break;
+                    int checksum = input.readInt();
+                    byte[] payload = new byte[length];
+                    input.readFully(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum)
+                        break;
+                    messages.add(SMSCodec.messageFromBytes(payload));
+                }
+            } finally {
+                input.close();
+            }
+        } catch (EOFException endOfBatch) {
+            // Either the last record or a torn one
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Spooled batch could not be read: " + e);
+        }
+        return messages;
+    }
+
+    /**
+     * Deletes the file of a delivered batch.
+     *
+     * @param context the context whose files directory holds the spool.
+     * @param batch   the number of the batch.
+     */
+    void delete(@NonNull Context context, long batch) {
+        File file = new File(directory(context), Long.toString(batch));
+        if (!file.delete() && file.exists())
+            Log.e(TAG, "Delivered batch could not be deleted: " + file);
+    }
+
+    /**
+     * @param context the context whose files directory holds the spool.
+     * @return the directory of the spool.
+     */
+    private static File directory(Context context) {
+        return new File(context.getFilesDir(), DIRECTORY_NAME);
+    }
+
+    /**
+     * Open file of a batch being filled. Records must not be appended concurrently.
+     */
+    static final class Writer {
+
+        private final long batch;
+        private final FileOutputStream output;
+
+        private Writer(long batch, FileOutputStream output) {
+            this.batch = batch;
+            this.output = output;
+        }
+
+        /**
+         * @return the number of the batch.
+         */
+        long getBatch() {
+            return batch;
+        }
+
+        /**
+         * Appends a record to the batch.
+         *
+         * @param record a record made by {@link #toRecord(SMSMessage)}.
+         * @return true if the record has been written, false if it could not be.
+         */
+        boolean append(@NonNull byte[] record) {
+            try {
+                // A single write, so that a failed one leaves at most a torn record
+                output.write(record);
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Message could not be spooled: " + e);
+                return false;
+            }
+        }
+
+        /**
+         * Closes the file of the batch, no record can be appended anymore.
+         */
+        void close() {
+            try {
+                output.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Spooled batch could not be closed: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.eis.smslibrary;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single long-lived broadcast receiver for the sent or delivered reports of every message.
+ * Instead of registering a new {@link BroadcastReceiver} with a unique action for every message,
+ * the report intents all share the same action and carry a tracking id in their extras, that is
+ * used to find the {@link SMSReportTracker} of the message.
+ * The receiver is registered only once, on the application context, so its cost doesn't grow with
+ * the number of messages sent.
+ */
+class SMSReportDispatcher extends BroadcastReceiver {
+
+    static final String EXTRA_TRACKING_ID = "com.eis.smslibrary.TRACKING_ID";
+    private static final long NO_TRACKING_ID = -1;
+
+    private final String action;
+    private final SMSReportDispatcher dependentDispatcher;
+    private final ConcurrentHashMap<Long, SMSReportTracker> trackers = new ConcurrentHashMap<>();
+    private volatile boolean registered;
+
+    /**
+     * Constructor for the dispatcher.
+     *
+     * @param action              the action of the report intents handled by this dispatcher.
+     * @param dependentDispatcher a dispatcher whose reports will never arrive if a report of this
+     *                            dispatcher is an error, like delivery reports for a message that
+     *                            couldn't be sent, can be null.
+     */
+    SMSReportDispatcher(@NonNull String action, @Nullable SMSReportDispatcher dependentDispatcher) {
+        this.action = action;
+        this.dependentDispatcher = dependentDispatcher;
+    }
+
+    /**
+     * Registers this dispatcher on the application context, if it hasn't been registered yet.
+     * Once registered, this doesn't take any lock.
+     *
+     * @param context any context of the application.
+     */
+    void register(@NonNull Context context) {
+        if (registered)
+            return;
+        synchronized (this) {
+            if (registered)
+                return;
+            context.getApplicationContext().registerReceiver(this, new IntentFilter(action));
+            registered = true;
+        }
+    }
+
+    /**
+     * Starts tracking the reports of a message.
+     *
+     * @param trackingId the id carried by the report intents of the message.
+     * @param tracker    the tracker to be called for every report of the message.
+     */
+    void track(long trackingId, @NonNull SMSReportTracker tracker) {
+        trackers.put(trackingId, tracker);
+    }
+
+    /**
+     * Stops tracking the reports of a message.
+     *
+     * @param trackingId the id carried by the report intents of the message.
+     * @return the tracker of the message, null if it wasn't tracked.
+     */
+    SMSReportTracker untrack(long trackingId) {
+        return trackers.remove(trackingId);
+    }
+
+    /**
+     * @return the number of messages currently waiting for reports.
+     */
+    int getTrackedCount() {
+        return trackers.size();
+    }
+
+    /**
+     * Creates the {@link PendingIntent} for the report of a single part of a message.
+     *
+     * @param context     the context of the application.
+     * @param trackingId  the id of the message, as passed to {@link #track(long, SMSReportTracker)}.
+     * @param requestCode a code unique for every part, so that the system doesn't reuse the
+     *                    {@link PendingIntent} of another part with different extras.
+     * @return the {@link PendingIntent} to be passed to SMSCore.
+     */
+    PendingIntent createPendingIntent(@NonNull Context context, long trackingId, int requestCode) {
+        Intent intent = new Intent(action);
+        intent.setPackage(context.getPackageName());
+        intent.putExtra(EXTRA_TRACKING_ID, trackingId);
+        return PendingIntent.getBroadcast(context, requestCode, intent, PendingIntent.FLAG_ONE_SHOT);
+    }
+
+    /**
+     * Forwards the report to the tracker of its message, and stops tracking the message once its
+     * tracker has completed.
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        long trackingId = intent.getLongExtra(EXTRA_TRACKING_ID, NO_TRACKING_ID);
+        SMSReportTracker tracker = trackers.get(trackingId);
+        if (tracker == null)
+            return;
+        int resultCode = getResultCode();
+        if (!tracker.onPartReport(resultCode))
+            return;
+        trackers.remove(trackingId, tracker);
+        if (resultCode != Activity.RESULT_OK && dependentDispatcher != null)
+            dependentDispatcher.untrack(trackingId);
+    }
+}
@@ -0,0 +1,16 @@
+package com.eis.smslibrary;
+
+/**
+ * Keeps track of the sent or delivered reports for the parts of a single message, so that its
+ * listener can be called once the whole message has been sent or delivered.
+ */
+interface SMSReportTracker {
+
+    /**
+     * Called for every report received for a part of the tracked message.
+     *
+     * @param resultCode the result code of the report broadcast.
+     * @return true if the tracking is completed and no more reports are expected, false otherwise.
+     */
+    boolean onPartReport(int resultCode);
+}
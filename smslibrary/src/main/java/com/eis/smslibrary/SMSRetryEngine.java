@@ -0,0 +1,146 @@
+package com.eis.smslibrary;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.smslibrary.listeners.SMSDeliveredListener;
+import com.eis.smslibrary.listeners.SMSSentListener;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends again the messages that failed to be sent, following the {@link SMSRetryPolicy} set for the
+ * {@link SMSMessage.SentState} they failed with. Retries wait on a single {@link SMSTimerWheel}, so
+ * a burst of failures doesn't create a thread per message, and the jitter of the policies spreads
+ * them over time instead of sending them all again at once.
+ * The sent listener of a message is only called with the result of its last attempt.
+ */
+class SMSRetryEngine {
+
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 512;
+
+    private final SMSManager manager;
+    private final SMSTimerWheel wheel;
+    private final ConcurrentHashMap<SMSMessage.SentState, SMSRetryPolicy> policies = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+
+    /**
+     * Constructor for the engine used by the {@link SMSManager}.
+     *
+     * @param manager the manager messages are sent again with.
+     */
+    SMSRetryEngine(@NonNull SMSManager manager) {
+        this(manager, new SMSTimerWheel(TICK_MILLIS, WHEEL_SIZE));
+    }
+
+    /**
+     * Constructor for an engine using the given wheel.
+     *
+     * @param manager the manager messages are sent again with.
+     * @param wheel   the wheel retries wait on.
+     */
+    SMSRetryEngine(@NonNull SMSManager manager, @NonNull SMSTimerWheel wheel) {
+        this.manager = manager;
+        this.wheel = wheel;
+    }
+
+    /**
+     * @param state  the state a message fails with.
+     * @param policy the policy used to send it again, null to stop retrying messages failing with it.
+     * @throws IllegalArgumentException if a policy is set for {@link SMSMessage.SentState#MESSAGE_SENT}.
+     */
+    void setPolicy(@NonNull SMSMessage.SentState state, @Nullable SMSRetryPolicy policy) {
+        if (policy == null)
+            policies.remove(state);
+        else if (state == SMSMessage.SentState.MESSAGE_SENT)
+            throw new IllegalArgumentException("A sent message can't be retried");
+        else
+            policies.put(state, policy);
+    }
+
+    /**
+     * @return true if at least one policy is set, false otherwise.
+     */
+    boolean hasPolicies() {
+        return !policies.isEmpty();
+    }
+
+    /**
+     * @return the number of retries waiting to be sent.
+     */
+    int getPendingRetries() {
+        return wheel.getPendingTasks();
+    }
+
+    /**
+     * Wraps the sent listener of a message that is about to be sent for the first time.
+     *
+     * @param message           the message being sent.
+     * @param sentListener      the listener to call with the final result, can be null.
+     * @param deliveredListener the delivered listener the message is sent again with, can be null.
+     * @param context           the context the message is sent again with.
+     * @return the listener to send the message with.
+     */
+    SMSSentListener track(@NonNull SMSMessage message, @Nullable SMSSentListener sentListener,
+                          @Nullable SMSDeliveredListener deliveredListener, @NonNull Context context) {
+        return new RetryingSentListener(message, sentListener, deliveredListener, context);
+    }
+
+    /**
+     * Sent listener counting the attempts of a message and scheduling the next one on failure
+     */
+    private class RetryingSentListener implements SMSPartSentListener, Runnable {
+
+        private final SMSMessage message;
+        private final SMSSentListener sentListener;
+        private final SMSDeliveredListener deliveredListener;
+        private final Context context;
+        private int attempts = 1;
+        private SMSMessage.SentState lastState;
+
+        private RetryingSentListener(SMSMessage message, SMSSentListener sentListener,
+                                     SMSDeliveredListener deliveredListener, Context context) {
+            this.message = message;
+            this.sentListener = sentListener;
+            this.deliveredListener = deliveredListener;
+            this.context = context;
+        }
+
+        @Override
+        public synchronized void onSMSSent(SMSMessage message, SMSMessage.SentState sentState) {
+            SMSRetryPolicy policy = policies.get(sentState);
+            if (policy != null && policy.canRetry(attempts)) {
+                lastState = sentState;
+                wheel.schedule(this, policy.getDelayMillis(attempts, random));
+                return;
+            }
+            if (sentListener != null)
+                sentListener.onSMSSent(message, sentState);
+        }
+
+        @Override
+        public void onPartSent(SMSMessage message, int sentParts) {
+            if (sentListener instanceof SMSPartSentListener)
+                ((SMSPartSentListener) sentListener).onPartSent(message, sentParts);
+        }
+
+        /**
+         * Sends the message again, called by the wheel once the delay has elapsed.
+         * If it can't even be handed to the transport the last failure is reported.
+         */
+        @Override
+        public synchronized void run() {
+            attempts++;
+            try {
+                manager.send(message, this, deliveredListener, context);
+            } catch (RuntimeException e) {
+                if (sentListener != null)
+                    sentListener.onSMSSent(message, lastState);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.eis.smslibrary;
+
+import java.util.Random;
+
+/**
+ * How a message that failed to be sent is sent again: how many times at most, and how long to wait
+ * before every new attempt. The wait grows exponentially with every attempt, up to a maximum, and
+ * is randomly shortened by up to a jitter fraction so that many messages failing together don't
+ * all retry at the same time.
+ * Set for a {@link SMSMessage.SentState} with {@link SMSManager#setRetryPolicy}.
+ */
+public class SMSRetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final double jitter;
+
+    /**
+     * Constructor for a retry policy.
+     *
+     * @param maxAttempts     maximum number of attempts to send a message, including the first one.
+     * @param baseDelayMillis wait before the first retry, doubled for every following one.
+     * @param maxDelayMillis  maximum wait before a retry.
+     * @param jitter          fraction of the wait that is randomly removed, from 0 (no jitter) to 1.
+     * @throws IllegalArgumentException if any of the parameters is out of range.
+     */
+    public SMSRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double jitter) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("There has to be at least one attempt");
+        if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis)
+            throw new IllegalArgumentException("Delays must be positive, and the base one can't exceed the maximum one");
+        if (jitter < 0 || jitter > 1)
+            throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.jitter = jitter;
+    }
+
+    /**
+     * @param attemptsDone the number of attempts already done, including the first one.
+     * @return true if the message can be sent once more, false otherwise.
+     */
+    boolean canRetry(int attemptsDone) {
+        return attemptsDone < maxAttempts;
+    }
+
+    /**
+     * Computes the wait before the next attempt.
+     *
+     * @param attemptsDone the number of attempts already done, including the first one.
+     * @param random       source of the jitter.
+     * @return the wait in milliseconds.
+     */
+    long getDelayMillis(int attemptsDone, Random random) {
+        long delay = maxDelayMillis;
+        // Past 62 doublings the delay would overflow, it's surely over the maximum anyway
+        int doublings = attemptsDone - 1;
+        if (doublings < Long.SIZE - 2 && baseDelayMillis <= (maxDelayMillis >> doublings))
+            delay = baseDelayMillis << doublings;
+        return delay - (long) (delay * jitter * random.nextDouble());
+    }
+
+    /**
+     * @return the maximum number of attempts to send a message, including the first one.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return the wait before the first retry, in milliseconds.
+     */
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    /**
+     * @return the maximum wait before a retry, in milliseconds.
+     */
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * @return the fraction of the wait that is randomly removed.
+     */
+    public double getJitter() {
+        return jitter;
+    }
+}
@@ -0,0 +1,281 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.MessageParseStrategy;
+import com.eis.smslibrary.listeners.SMSReceivedListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Parse strategy running several sub-protocols side by side, each one with its own header, its own
+ * strategy and optionally its own listener.
+ * <p>
+ * Received data is matched against the headers of every route in a single pass over a prefix trie,
+ * however many routes there are: the route with the longest header the data starts with parses it,
+ * falling back to the routes with shorter headers and then to the default strategy if it returns
+ * null. Parsing has no side effects: messages are returned whatever their route, and it's
+ * {@link SMSReceivedBroadcastReceiver} that hands the ones of a route with a listener to that
+ * listener on its executor, so that they don't reach the listeners set in {@link SMSManager}.
+ * Messages to send are parsed by the route registered for their class, or its closest superclass,
+ * or by the default strategy.
+ * <p>
+ * Routes are meant to be added once, before the strategy is used: adding one rebuilds the trie,
+ * while parsing never takes any lock.
+ */
+public class SMSRoutingParseStrategy implements MessageParseStrategy<String, SMSPeer, SMSMessage> {
+
+    private final MessageParseStrategy<String, SMSPeer, SMSMessage> defaultStrategy;
+
+    /**
+     * Routes in the order they were added, guarded by this
+     */
+    private final List<Route> routes = new ArrayList<>();
+    /**
+     * Immutable snapshots rebuilt on every change, so that they can be read without locking
+     */
+    private volatile Node trie = new Node();
+    private volatile Map<Class<?>, Route> routesByType = new HashMap<>();
+
+    /**
+     * Constructor for the strategy.
+     *
+     * @param defaultStrategy the strategy used for data and messages no route matches.
+     */
+    public SMSRoutingParseStrategy(@NonNull MessageParseStrategy<String, SMSPeer, SMSMessage> defaultStrategy) {
+        this.defaultStrategy = defaultStrategy;
+    }
+
+    /**
+     * Adds a route parsing the received data starting with the given header, whose messages are
+     * returned as any other.
+     *
+     * @param header   the header the data of the route starts with, as written by its strategy.
+     * @param strategy the strategy of the route, given the whole data, header included.
+     * @throws IllegalArgumentException if the header is empty or already taken by another route.
+     */
+    public void addRoute(@NonNull String header, @NonNull MessageParseStrategy<String, SMSPeer, SMSMessage> strategy) {
+        addRoute(header, strategy, null, null, null);
+    }
+
+    /**
+     * Adds a route for a sub-protocol.
+     *
+     * @param header      the header the data of the route starts with, as written by its strategy.
+     * @param strategy    the strategy of the route, given the whole data, header included.
+     * @param messageType the class of the messages to send with this route, null if none.
+     * @param listener    the listener for the messages received with this route, null to deliver
+     *                    them as any other.
+     * @param executor    the executor the listener is called on, null if there's no listener.
+     * @throws IllegalArgumentException if the header is empty or already taken by another route,
+     *                                  if the message type is already taken by another route or
+     *                                  if there's a listener but no executor.
+     */
+    public synchronized void addRoute(@NonNull String header, @NonNull MessageParseStrategy<String, SMSPeer, SMSMessage> strategy,
+                                      @Nullable Class<? extends SMSMessage> messageType,
+                                      @Nullable SMSReceivedListener listener, @Nullable Executor executor) {
+        if (header.isEmpty())
+            throw new IllegalArgumentException("Route header can't be empty");
+        if (listener != null && executor == null)
+            throw new IllegalArgumentException("A route listener needs an executor");
+        for (Route route : routes) {
+            if (route.header.equals(header))
+                throw new IllegalArgumentException("Header already taken by another route: " + header);
+            if (messageType != null && messageType.equals(route.messageType))
+                throw new IllegalArgumentException("Message type already taken by another route: " + messageType.getName());
+        }
+        routes.add(new Route(header, strategy, messageType, listener, executor));
+
+        Node root = new Node();
+        Map<Class<?>, Route> types = new HashMap<>();
+        for (Route route : routes) {
+            root.insert(route);
+            if (route.messageType != null)
+                types.put(route.messageType, route);
+        }
+        trie = root;
+        routesByType = types;
+    }
+
+    /**
+     * Parses sms data with the route whose header it starts with.
+     *
+     * @param channelData read from the channel
+     * @param channelPeer that sent the data
+     * @return the parsed SMSMessage, or null if it couldn't be parsed
+     */
+    @Override
+    public SMSMessage parseMessage(@NonNull String channelData, @NonNull SMSPeer channelPeer) {
+        Parsed parsed = parseRouted(channelData, channelPeer);
+        return parsed == null ? null : parsed.message;
+    }
+
+    /**
+     * Parses sms data like {@link #parseMessage(String, SMSPeer)}, keeping the route that parsed it.
+     *
+     * @param channelData read from the channel
+     * @param channelPeer that sent the data
+     * @return the parsed message along with its route, or null if it couldn't be parsed
+     */
+    @Nullable
+    Parsed parseRouted(@NonNull String channelData, @NonNull SMSPeer channelPeer) {
+        // Routes whose header the data starts with, the shortest first
+        Route[] matched = null;
+        int matchedCount = 0;
+        Node node = trie;
+        for (int i = 0; i < channelData.length(); i++) {
+            node = node.child(channelData.charAt(i));
+            if (node == null)
+                break;
+            if (node.route != null) {
+                if (matched == null)
+                    matched = new Route[2];
+                else if (matchedCount == matched.length)
+                    matched = Arrays.copyOf(matched, matchedCount * 2);
+                matched[matchedCount++] = node.route;
+            }
+        }
+        for (int i = matchedCount - 1; i >= 0; i--) {
+            SMSMessage message = matched[i].strategy.parseMessage(channelData, channelPeer);
+            if (message != null)
+                return new Parsed(message, matched[i].listener, matched[i].executor);
+        }
+        SMSMessage message = defaultStrategy.parseMessage(channelData, channelPeer);
+        return message == null ? null : new Parsed(message, null, null);
+    }
+
+    /**
+     * Parses SMSMessage into sms content data with the route of its class.
+     *
+     * @param message from library
+     * @return the data written by the strategy of the route, or by the default strategy
+     */
+    @Override
+    public String parseData(@NonNull SMSMessage message) {
+        Map<Class<?>, Route> types = routesByType;
+        if (!types.isEmpty()) {
+            for (Class<?> type = message.getClass(); type != Object.class; type = type.getSuperclass()) {
+                Route route = types.get(type);
+                if (route != null)
+                    return route.strategy.parseData(message);
+            }
+        }
+        return defaultStrategy.parseData(message);
+    }
+
+    /**
+     * A received message along with the listener of the route that parsed it
+     */
+    static final class Parsed {
+        final SMSMessage message;
+        private final SMSReceivedListener listener;
+        private final Executor executor;
+
+        /**
+         * @param message  the parsed message.
+         * @param listener the listener of its route, null if there's none.
+         * @param executor the executor the listener is called on, null if there's no listener.
+         */
+        Parsed(@NonNull SMSMessage message, @Nullable SMSReceivedListener listener, @Nullable Executor executor) {
+            this.message = message;
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        /**
+         * Hands the message to the listener of its route, on its executor.
+         *
+         * @return true if the executor accepted the message, false if there's no listener or the
+         * executor rejected it: the message still has to be delivered.
+         */
+        boolean dispatch() {
+            if (listener == null)
+                return false;
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onMessageReceived(message);
+                    }
+                });
+                return true;
+            } catch (RuntimeException rejected) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A sub-protocol: its header, strategy and listener
+     */
+    private static class Route {
+        private final String header;
+        private final MessageParseStrategy<String, SMSPeer, SMSMessage> strategy;
+        private final Class<? extends SMSMessage> messageType;
+        private final SMSReceivedListener listener;
+        private final Executor executor;
+
+        private Route(String header, MessageParseStrategy<String, SMSPeer, SMSMessage> strategy,
+                      Class<? extends SMSMessage> messageType, SMSReceivedListener listener, Executor executor) {
+            this.header = header;
+            this.strategy = strategy;
+            this.messageType = messageType;
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Node of the prefix trie, its children are kept sorted by char to be binary searched.
+     * Nodes are only changed while a new trie is built, before it's published.
+     */
+    private static class Node {
+        private Route route;
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+
+        /**
+         * @param c the next char of the data.
+         * @return the child for the char, or null if no header continues with it.
+         */
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+
+        /**
+         * Adds a route to the trie this node is the root of.
+         *
+         * @param route the route to add.
+         */
+        private void insert(Route route) {
+            Node node = this;
+            for (int i = 0; i < route.header.length(); i++) {
+                char c = route.header.charAt(i);
+                Node next = node.child(c);
+                if (next == null) {
+                    next = new Node();
+                    int index = -Arrays.binarySearch(node.keys, c) - 1;
+                    char[] keys = new char[node.keys.length + 1];
+                    Node[] children = new Node[keys.length];
+                    System.arraycopy(node.keys, 0, keys, 0, index);
+                    System.arraycopy(node.children, 0, children, 0, index);
+                    keys[index] = c;
+                    children[index] = next;
+                    System.arraycopy(node.keys, index, keys, index + 1, node.keys.length - index);
+                    System.arraycopy(node.children, index, children, index + 1, node.keys.length - index);
+                    node.keys = keys;
+                    node.children = children;
+                }
+                node = next;
+            }
+            node.route = route;
+        }
+    }
+}
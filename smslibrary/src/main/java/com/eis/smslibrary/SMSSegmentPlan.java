@@ -0,0 +1,209 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes how a text will be sent over the SMS channel: the encoding it will use, its encoded
+ * length and the points where it has to be split in order to fit in multiple PDUs.
+ * Only uses plain Java, so it can be used to price and pre-split messages outside of Android.
+ * <p>
+ * A single GSM 7-bit PDU fits 160 septets and a single UCS-2 PDU 70 chars; when a text needs more
+ * than one PDU every part also carries a 6 bytes User Data Header for concatenation, leaving 153
+ * septets or 67 chars per part. Parts are never split between the escape character and an extension
+ * table character, nor between the two chars of a surrogate pair.
+ * See https://en.wikipedia.org/wiki/Concatenated_SMS
+ */
+public final class SMSSegmentPlan {
+
+    static final int GSM_SINGLE_SEGMENT_SEPTETS = 160;
+    static final int GSM_MULTIPART_SEGMENT_SEPTETS = 153;
+    static final int UCS2_SINGLE_SEGMENT_CHARS = 70;
+    static final int UCS2_MULTIPART_SEGMENT_CHARS = 67;
+
+    private final String text;
+    private final Encoding encoding;
+    private final int encodedLength;
+    private final int segmentCapacity;
+    private final int[] splitPoints;
+
+    /**
+     * Parts of the text, split on the first call to {@link #getParts()}
+     */
+    private volatile List<String> parts;
+
+    /**
+     * Private constructor, use {@link #of(String)}
+     */
+    private SMSSegmentPlan(String text, Encoding encoding, int encodedLength, int segmentCapacity, int[] splitPoints) {
+        this.text = text;
+        this.encoding = encoding;
+        this.encodedLength = encodedLength;
+        this.segmentCapacity = segmentCapacity;
+        this.splitPoints = splitPoints;
+    }
+
+    /**
+     * Plans how the given text will be split in order to be sent.
+     * An empty text still takes a single segment.
+     *
+     * @param text the exact text that will be sent in the channel, including any header added by the
+     *             {@link com.eis.communication.MessageParseStrategy}.
+     * @return the plan for the text.
+     */
+    public static SMSSegmentPlan of(@NonNull String text) {
+        int septets = GSMCharset.countSeptets(text);
+        if (septets == GSMCharset.NOT_GSM_ENCODABLE)
+            return planUCS2(text);
+        return planGSM(text, septets);
+    }
+
+    /**
+     * Plans a text made only of GSM 03.38 characters.
+     *
+     * @param text    the text to plan.
+     * @param septets number of septets of the text.
+     * @return the plan for the text.
+     */
+    private static SMSSegmentPlan planGSM(String text, int septets) {
+        if (septets <= GSM_SINGLE_SEGMENT_SEPTETS)
+            return new SMSSegmentPlan(text, Encoding.GSM_7BIT, septets, GSM_SINGLE_SEGMENT_SEPTETS, new int[]{0});
+        // A part may be one septet shorter when an extension character doesn't fit in it
+        int[] splitPoints = new int[septets / (GSM_MULTIPART_SEGMENT_SEPTETS - 1) + 1];
+        int segments = 1;
+        int segmentSeptets = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int charSeptets = GSMCharset.septetsOf(text.charAt(i));
+            if (segmentSeptets + charSeptets > GSM_MULTIPART_SEGMENT_SEPTETS) {
+                splitPoints[segments++] = i;
+                segmentSeptets = 0;
+            }
+            segmentSeptets += charSeptets;
+        }
+        return new SMSSegmentPlan(text, Encoding.GSM_7BIT, septets, GSM_MULTIPART_SEGMENT_SEPTETS,
+                Arrays.copyOf(splitPoints, segments));
+    }
+
+    /**
+     * Plans a text that has to be sent as UCS-2.
+     *
+     * @param text the text to plan.
+     * @return the plan for the text.
+     */
+    private static SMSSegmentPlan planUCS2(String text) {
+        int length = text.length();
+        if (length <= UCS2_SINGLE_SEGMENT_CHARS)
+            return new SMSSegmentPlan(text, Encoding.UCS2, length, UCS2_SINGLE_SEGMENT_CHARS, new int[]{0});
+        // A part may be one char shorter when a surrogate pair doesn't fit in it
+        int[] splitPoints = new int[length / (UCS2_MULTIPART_SEGMENT_CHARS - 1) + 1];
+        int segments = 1;
+        int segmentStart = 0;
+        while (length - segmentStart > UCS2_MULTIPART_SEGMENT_CHARS) {
+            int segmentEnd = segmentStart + UCS2_MULTIPART_SEGMENT_CHARS;
+            if (Character.isHighSurrogate(text.charAt(segmentEnd - 1)) && Character.isLowSurrogate(text.charAt(segmentEnd)))
+                segmentEnd--;
+            splitPoints[segments++] = segmentEnd;
+            segmentStart = segmentEnd;
+        }
+        return new SMSSegmentPlan(text, Encoding.UCS2, length, UCS2_MULTIPART_SEGMENT_CHARS,
+                Arrays.copyOf(splitPoints, segments));
+    }
+
+    /**
+     * @return the encoding the text will be sent with.
+     */
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Retrieves the length of the encoded text: the number of septets for {@link Encoding#GSM_7BIT},
+     * where extension table characters count twice, or the number of chars for {@link Encoding#UCS2}.
+     *
+     * @return the length of the encoded text.
+     */
+    public int getEncodedLength() {
+        return encodedLength;
+    }
+
+    /**
+     * Retrieves how many septets (for {@link Encoding#GSM_7BIT}) or chars (for {@link Encoding#UCS2})
+     * fit in every segment, once the User Data Header needed by multipart messages is accounted for.
+     *
+     * @return the capacity of a single segment.
+     */
+    public int getSegmentCapacity() {
+        return segmentCapacity;
+    }
+
+    /**
+     * @return the number of PDUs needed to send the text.
+     */
+    public int getSegmentCount() {
+        return splitPoints.length;
+    }
+
+    /**
+     * Retrieves the indexes in the text where every segment starts, the first one is always 0.
+     *
+     * @return a copy of the split points.
+     */
+    public int[] getSplitPoints() {
+        return splitPoints.clone();
+    }
+
+    /**
+     * @param segment index of the segment, from 0 to {@link #getSegmentCount()} excluded.
+     * @return the index in the text where the segment starts, inclusive.
+     */
+    public int getSegmentStart(int segment) {
+        return splitPoints[segment];
+    }
+
+    /**
+     * @param segment index of the segment, from 0 to {@link #getSegmentCount()} excluded.
+     * @return the index in the text where the segment ends, exclusive.
+     */
+    public int getSegmentEnd(int segment) {
+        return segment + 1 < splitPoints.length ? splitPoints[segment + 1] : text.length();
+    }
+
+    /**
+     * @return the text the plan was made for.
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * Splits the planned text at its split points, this is the library counterpart of
+     * {@link android.telephony.SmsManager#divideMessage(String)}. The text is only split once,
+     * later calls copy the same parts.
+     *
+     * @return a new list of the parts of the text, one per segment.
+     */
+    public ArrayList<String> getParts() {
+        List<String> split = parts;
+        if (split == null) {
+            ArrayList<String> newParts = new ArrayList<>(splitPoints.length);
+            for (int i = 0; i < splitPoints.length; i++)
+                newParts.add(text.substring(getSegmentStart(i), getSegmentEnd(i)));
+            // Racing threads split the same parts, whichever list is kept doesn't matter
+            split = Collections.unmodifiableList(newParts);
+            parts = split;
+        }
+        return new ArrayList<>(split);
+    }
+
+    /**
+     * Encodings an sms text can be sent with
+     */
+    public enum Encoding {
+        GSM_7BIT,
+        UCS2
+    }
+}
@@ -0,0 +1,87 @@
+package com.eis.smslibrary;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.PendingResult;
+import com.eis.communication.SendHandle;
+import com.eis.smslibrary.listeners.SMSDeliveredListener;
+import com.eis.smslibrary.listeners.SMSSentListener;
+
+/**
+ * Handle for a message sent with {@link SMSManager#sendMessageAsync(SMSMessage, android.content.Context)}.
+ * Its results are completed by the same sent and delivered reports that call {@link SMSSentListener}
+ * and {@link SMSDeliveredListener}.
+ * If the message can't be sent its delivery will never be reported, so the delivered result is
+ * completed with {@link SMSMessage.DeliveredState#ERROR_GENERIC_FAILURE} as well.
+ * Note that some carriers don't send delivery reports at all, waiting for the delivered result
+ * should always use a timeout.
+ */
+public class SMSSendHandle implements SendHandle<SMSMessage, SMSMessage.SentState, SMSMessage.DeliveredState> {
+
+    private final SMSMessage message;
+    private final PendingResult<SMSMessage.SentState> sentResult = new PendingResult<>();
+    private final PendingResult<SMSMessage.DeliveredState> deliveredResult = new PendingResult<>();
+
+    private final SMSSentListener sentListener = new SMSSentListener() {
+        @Override
+        public void onSMSSent(SMSMessage message, SMSMessage.SentState sentState) {
+            sentResult.complete(sentState);
+            if (sentState != SMSMessage.SentState.MESSAGE_SENT)
+                deliveredResult.complete(SMSMessage.DeliveredState.ERROR_GENERIC_FAILURE);
+        }
+    };
+
+    private final SMSDeliveredListener deliveredListener = new SMSDeliveredListener() {
+        @Override
+        public void onSMSDelivered(SMSMessage message, SMSMessage.DeliveredState deliveredState) {
+            deliveredResult.complete(deliveredState);
+        }
+    };
+
+    /**
+     * Constructor for the handle.
+     *
+     * @param message the message being sent.
+     */
+    SMSSendHandle(@NonNull SMSMessage message) {
+        this.message = message;
+    }
+
+    /**
+     * @return the message that has been sent.
+     */
+    @Override
+    public SMSMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the pending state of the sending.
+     */
+    @Override
+    public PendingResult<SMSMessage.SentState> getSentResult() {
+        return sentResult;
+    }
+
+    /**
+     * @return the pending state of the delivery.
+     */
+    @Override
+    public PendingResult<SMSMessage.DeliveredState> getDeliveredResult() {
+        return deliveredResult;
+    }
+
+    /**
+     * @return the listener completing the sent result.
+     */
+    SMSSentListener getSentListener() {
+        return sentListener;
+    }
+
+    /**
+     * @return the listener completing the delivered result.
+     */
+    SMSDeliveredListener getDeliveredListener() {
+        return deliveredListener;
+    }
+}
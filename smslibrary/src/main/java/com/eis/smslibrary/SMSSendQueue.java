@@ -0,0 +1,241 @@
+package com.eis.smslibrary;
+
+import android.app.PendingIntent;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Outbound queue between {@link SMSManager} and the transport, that sends messages in order while
+ * keeping the number of segments sent under the rate of a {@link SMSTokenBucket}, so that bursts
+ * don't hit the carrier limit and come back as {@link SMSMessage.SentState#ERROR_LIMIT_EXCEEDED}.
+ * Messages are sent by a single background thread, that sleeps while waiting for tokens.
+ * Created by {@link SMSManager#setRateLimit(int, long, TimeUnit)}.
+ */
+public class SMSSendQueue {
+
+    private static final String TAG = "SMSSendQueue";
+
+    private final SMSTransport transport;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentLinkedQueue<QueuedMessage> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicInteger queuedMessages = new AtomicInteger();
+    private final AtomicInteger queuedSegments = new AtomicInteger();
+    private volatile SMSTokenBucket tokenBucket;
+    // Only used by the scheduler thread
+    private ScheduledFuture<?> pendingDrain;
+
+    // Statistics, only written by the scheduler thread
+    private volatile long sentMessages;
+    private volatile long totalWaitNanos;
+    private volatile long maxWaitNanos;
+    private volatile long lastWaitNanos;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Constructor for the queue.
+     *
+     * @param transport   the transport messages are handed to once they leave the queue.
+     * @param tokenBucket the rate limit, null to send messages as soon as possible.
+     */
+    SMSSendQueue(@NonNull SMSTransport transport, @Nullable SMSTokenBucket tokenBucket) {
+        this.transport = transport;
+        this.tokenBucket = tokenBucket;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Updates the rate limit, messages already in the queue are sent at the new rate.
+     *
+     * @param tokenBucket the new rate limit, null to send every queued message as soon as possible.
+     */
+    void setTokenBucket(@Nullable SMSTokenBucket tokenBucket) {
+        this.tokenBucket = tokenBucket;
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (pendingDrain != null && pendingDrain.cancel(false))
+                    drain();
+            }
+        });
+    }
+
+    /**
+     * Adds a message at the end of the queue.
+     *
+     * @param parts        {@link ArrayList} of message parts to be sent
+     * @param phoneNumber  peer phone address
+     * @param sentPIs      {@link ArrayList} of pending intents for a broadcast on message sent, can be null
+     * @param deliveredPIs {@link ArrayList} of pending intents for a broadcast on message delivered, can be null
+     * @param onFailure    run if the transport throws while sending the message, since none of its
+     *                     reports will arrive, can be null
+     */
+    void enqueue(@NonNull ArrayList<String> parts, @NonNull String phoneNumber,
+                 @Nullable ArrayList<PendingIntent> sentPIs,
+                 @Nullable ArrayList<PendingIntent> deliveredPIs, @Nullable Runnable onFailure) {
+        queue.add(new QueuedMessage(parts, phoneNumber, sentPIs, deliveredPIs, onFailure, System.nanoTime()));
+        queuedMessages.incrementAndGet();
+        queuedSegments.addAndGet(parts.size());
+        if (drainScheduled.compareAndSet(false, true))
+            scheduler.execute(drainTask);
+    }
+
+    /**
+     * Sends queued messages until the queue is empty or the tokens are over, in which case
+     * schedules itself again for when the next message can be sent.
+     * Only runs on the scheduler thread.
+     */
+    private void drain() {
+        pendingDrain = null;
+        while (true) {
+            QueuedMessage message = queue.peek();
+            if (message == null) {
+                drainScheduled.set(false);
+                // A message could have been added after peek() but before the flag was reset
+                if (queue.isEmpty() || !drainScheduled.compareAndSet(false, true))
+                    return;
+                continue;
+            }
+            SMSTokenBucket bucket = tokenBucket;
+            long now = System.nanoTime();
+            int segments = message.parts.size();
+            if (bucket != null && !bucket.tryAcquire(segments, now)) {
+                long delay = bucket.nanosUntilAvailable(segments, now);
+                pendingDrain = scheduler.schedule(drainTask, delay, TimeUnit.NANOSECONDS);
+                return;
+            }
+            queue.poll();
+            queuedMessages.decrementAndGet();
+            queuedSegments.addAndGet(-segments);
+            recordWait(now - message.enqueuedNanos);
+            try {
+                transport.sendMessages(message.parts, message.phoneNumber, message.sentPIs, message.deliveredPIs);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not send a queued message to " + message.phoneNumber, e);
+                fail(message);
+            }
+        }
+    }
+
+    /**
+     * Runs the failure task of a message the transport threw on, so that it doesn't wait forever
+     * for its reports. Exceptions thrown by the task are logged, they must not stop the queue.
+     *
+     * @param message the message that couldn't be sent.
+     */
+    private void fail(QueuedMessage message) {
+        if (message.onFailure == null)
+            return;
+        try {
+            message.onFailure.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failure of a queued message to " + message.phoneNumber + " could not be reported", e);
+        }
+    }
+
+    /**
+     * Updates the statistics with the wait time of a message leaving the queue.
+     *
+     * @param waitNanos the time the message spent in the queue.
+     */
+    private void recordWait(long waitNanos) {
+        sentMessages++;
+        totalWaitNanos += waitNanos;
+        lastWaitNanos = waitNanos;
+        if (waitNanos > maxWaitNanos)
+            maxWaitNanos = waitNanos;
+    }
+
+    /**
+     * @return the number of messages waiting in the queue.
+     */
+    public int getQueuedMessages() {
+        return queuedMessages.get();
+    }
+
+    /**
+     * @return the number of segments of the messages waiting in the queue.
+     */
+    public int getQueuedSegments() {
+        return queuedSegments.get();
+    }
+
+    /**
+     * @return the number of messages that left the queue.
+     */
+    public long getSentMessages() {
+        return sentMessages;
+    }
+
+    /**
+     * @return the time the last message that left the queue spent in it, in milliseconds.
+     */
+    public long getLastWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastWaitNanos);
+    }
+
+    /**
+     * @return the longest time a message spent in the queue, in milliseconds.
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    /**
+     * @return the average time messages spent in the queue, in milliseconds, 0 if no message left
+     * the queue yet.
+     */
+    public long getAverageWaitMillis() {
+        long sent = sentMessages;
+        if (sent == 0)
+            return 0;
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / sent);
+    }
+
+    /**
+     * A message waiting in the queue, with everything needed to send it
+     */
+    private static class QueuedMessage {
+        private final ArrayList<String> parts;
+        private final String phoneNumber;
+        private final ArrayList<PendingIntent> sentPIs;
+        private final ArrayList<PendingIntent> deliveredPIs;
+        private final Runnable onFailure;
+        private final long enqueuedNanos;
+
+        QueuedMessage(ArrayList<String> parts, String phoneNumber, ArrayList<PendingIntent> sentPIs,
+                      ArrayList<PendingIntent> deliveredPIs, Runnable onFailure, long enqueuedNanos) {
+            this.parts = parts;
+            this.phoneNumber = phoneNumber;
+            this.sentPIs = sentPIs;
+            this.deliveredPIs = deliveredPIs;
+            this.onFailure = onFailure;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -7,53 +7,103 @@ import android.content.Intent;
 import android.telephony.SmsManager;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.eis.smslibrary.listeners.SMSSentListener;
 
-import java.util.ArrayList;
-
 /**
  * Broadcast receiver for sent messages, called by Android Library.
  * Must be instantiated and set as receiver with context.registerReceiver(...).
  * There has to be one different SentBroadcastReceiver per message sent,
- * so every IntentFilter name has to be different
+ * so every IntentFilter name has to be different, unless it's tracked by a
+ * {@link SMSReportDispatcher}
  *
  * @author Luca Crema, Marco Mariotto, Giovanni Velludo
  */
-public class SMSSentBroadcastReceiver extends BroadcastReceiver {
+public class SMSSentBroadcastReceiver extends BroadcastReceiver implements SMSReportTracker {
 
     private final SMSSentListener listener;
+    private final SMSMetrics metrics;
     private final SMSMessage message;
+    private final short parts;
+    private final long startNanos;
     private short partsToSendCounter;
+    private SMSDeliveredBroadcastReceiver deliveredReceiver;
 
     /**
      * Constructor for the custom {@link BroadcastReceiver}.
      *
-     * @param parts    the parts of the message that will be sent.
+     * @param message  the message that will be sent, passed to the listener as it is.
+     * @param parts    the number of parts the message has been divided in.
      * @param listener the listener to be called when the operation is completed.
-     * @param peer     the peer to whom the message will be sent.
      */
-    SMSSentBroadcastReceiver(@NonNull final ArrayList<String> parts,
-                             @NonNull final SMSSentListener listener, @NonNull final SMSPeer peer) {
-        StringBuilder fullMessageText = new StringBuilder();
-        for (String part : parts) {
-            fullMessageText.append(part);
-        }
+    SMSSentBroadcastReceiver(@NonNull final SMSMessage message, final int parts,
+                             @NonNull final SMSSentListener listener) {
+        this(message, parts, listener, null);
+    }
+
+    /**
+     * Constructor for the custom {@link BroadcastReceiver} reporting to metrics too, the latency
+     * being measured from now.
+     *
+     * @param message  the message that will be sent, passed to the listener as it is.
+     * @param parts    the number of parts the message has been divided in.
+     * @param listener the listener to be called when the operation is completed, can be null.
+     * @param metrics  the metrics to be called when the operation is completed, can be null.
+     */
+    SMSSentBroadcastReceiver(@NonNull final SMSMessage message, final int parts,
+                             @Nullable final SMSSentListener listener, @Nullable final SMSMetrics metrics) {
         this.listener = listener;
-        this.message = new SMSMessage(peer, fullMessageText.toString());
-        this.partsToSendCounter = (short) parts.size(); // they can't be more than 255
+        this.metrics = metrics;
+        this.message = message;
+        this.parts = (short) parts; // they can't be more than 255
+        this.partsToSendCounter = this.parts;
+        this.startNanos = metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Sets the delivered receiver registered for the same message, unregistered along with this
+     * one if the message fails to be sent, since the reports it waits for will never arrive.
+     *
+     * @param deliveredReceiver the delivered receiver of the message, can be null.
+     */
+    void setDeliveredReceiver(@Nullable SMSDeliveredBroadcastReceiver deliveredReceiver) {
+        this.deliveredReceiver = deliveredReceiver;
     }
 
     /**
      * This method is subscribed to the intent of a message sent, and will be called whenever a message is sent using this library.
      * It interprets the state of the message sending: {@link SMSMessage.SentState#MESSAGE_SENT} if it has been correctly sent,
-     * some other state otherwise; then calls the listener and unregisters itself.
+     * some other state otherwise; then calls the listener and unregisters itself, along with the
+     * delivered receiver of the message if it failed.
      */
     @Override
     public void onReceive(Context context, Intent intent) {
+        int resultCode = getResultCode();
+        if (!onPartReport(resultCode))
+            return;
+        context.unregisterReceiver(this);
+        if (resultCode == Activity.RESULT_OK || deliveredReceiver == null)
+            return;
+        try {
+            context.unregisterReceiver(deliveredReceiver);
+        } catch (IllegalArgumentException alreadyUnregistered) {
+            // A part sent before the failure was already reported as not delivered
+        }
+    }
+
+    /**
+     * Interprets the state of a single part of the message and calls the listener once every part
+     * has been sent, or as soon as one of them reports an error.
+     *
+     * @param resultCode the result code of the broadcast for the part.
+     * @return true if the listener has been called and no more reports are expected, false otherwise.
+     */
+    @Override
+    public boolean onPartReport(int resultCode) {
         SMSMessage.SentState sentState;
 
-        switch (getResultCode()) {
+        switch (resultCode) {
             case Activity.RESULT_OK:
                 sentState = SMSMessage.SentState.MESSAGE_SENT;
                 break;
@@ -74,9 +124,18 @@ public class SMSSentBroadcastReceiver extends BroadcastReceiver {
                 break;
         }
 
-        if (sentState == SMSMessage.SentState.MESSAGE_SENT && --partsToSendCounter > 0) return;
-        listener.onSMSSent(message, sentState);
-        context.unregisterReceiver(this);
+        if (sentState == SMSMessage.SentState.MESSAGE_SENT) {
+            partsToSendCounter--;
+            if (listener instanceof SMSPartSentListener)
+                ((SMSPartSentListener) listener).onPartSent(message, parts - partsToSendCounter);
+            if (partsToSendCounter > 0)
+                return false;
+        }
+        if (metrics != null)
+            metrics.onSent(sentState, System.nanoTime() - startNanos);
+        if (listener != null)
+            listener.onSMSSent(message, sentState);
+        return true;
     }
 }
 
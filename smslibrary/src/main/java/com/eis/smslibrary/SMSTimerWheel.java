@@ -0,0 +1,181 @@
+package com.eis.smslibrary;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timer wheel: runs delayed tasks on a single daemon thread, however many are scheduled.
+ * Tasks are put in the bucket of the tick they expire at, and every tick only the tasks of one
+ * bucket are looked at, so scheduling and expiring a task costs the same whatever the number of
+ * pending tasks. Tasks run at most one tick late.
+ * The thread is only alive while there are pending tasks, so an idle wheel doesn't wake the device.
+ */
+class SMSTimerWheel {
+
+    private static final String LOG_KEY = "SMSTimerWheel";
+
+    private final long tickNanos;
+    private final List<Timeout>[] buckets;
+    private final int mask;
+
+    /**
+     * Tasks scheduled since the last tick and the count of tasks not run yet, guarded by this
+     */
+    private final ArrayList<Timeout> newTimeouts = new ArrayList<>();
+    private int pendingTasks;
+    private boolean running;
+
+    /**
+     * Constructor for a timer wheel.
+     *
+     * @param tickMillis duration of a tick in milliseconds.
+     * @param wheelSize  number of buckets, rounded up to a power of two.
+     * @throws IllegalArgumentException if any of the parameters is not positive.
+     */
+    SMSTimerWheel(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0)
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        tickNanos = tickMillis * 1000000L;
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize)
+            size <<= 1;
+        @SuppressWarnings("unchecked")
+        List<Timeout>[] buckets = (List<Timeout>[]) new List<?>[size];
+        this.buckets = buckets;
+        for (int i = 0; i < size; i++)
+            buckets[i] = new ArrayList<>();
+        mask = size - 1;
+    }
+
+    /**
+     * Schedules a task to be run on the wheel thread once the delay has elapsed.
+     * Tasks should be short, since they delay the ones expiring after them.
+     *
+     * @param task        the task to run.
+     * @param delayMillis the delay in milliseconds.
+     */
+    void schedule(@NonNull Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + Math.max(0, delayMillis) * 1000000L);
+        synchronized (this) {
+            newTimeouts.add(timeout);
+            pendingTasks++;
+            if (!running) {
+                running = true;
+                Thread worker = new Thread(new Worker(), LOG_KEY);
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+    }
+
+    /**
+     * @return the number of tasks scheduled and not run yet.
+     */
+    synchronized int getPendingTasks() {
+        return pendingTasks;
+    }
+
+    /**
+     * A task and the instant it has to be run at
+     */
+    private static class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    /**
+     * Loop of the wheel thread, exits once there are no pending tasks
+     */
+    private class Worker implements Runnable {
+
+        private final long startNanos = System.nanoTime();
+        private long tick;
+
+        @Override
+        public void run() {
+            ArrayList<Timeout> transferred = new ArrayList<>();
+            while (true) {
+                waitForTick();
+                synchronized (SMSTimerWheel.this) {
+                    transferred.addAll(newTimeouts);
+                    newTimeouts.clear();
+                }
+                for (Timeout timeout : transferred)
+                    place(timeout);
+                transferred.clear();
+                int expired = expire(buckets[(int) (tick & mask)]);
+                tick++;
+                synchronized (SMSTimerWheel.this) {
+                    pendingTasks -= expired;
+                    if (pendingTasks == 0) {
+                        running = false;
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sleeps until the current tick is over.
+         */
+        private void waitForTick() {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleepNanos;
+            while ((sleepNanos = deadline - System.nanoTime()) > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+                } catch (InterruptedException ignored) {
+                    // The thread isn't reachable from outside, keep ticking
+                }
+            }
+        }
+
+        /**
+         * Puts a new timeout in the bucket of the tick it expires at, never in a tick already passed.
+         *
+         * @param timeout the timeout to place.
+         */
+        private void place(Timeout timeout) {
+            long expiryTick = Math.max(tick, (timeout.deadlineNanos - startNanos) / tickNanos);
+            timeout.remainingRounds = (expiryTick - tick) / buckets.length;
+            buckets[(int) (expiryTick & mask)].add(timeout);
+        }
+
+        /**
+         * Runs the tasks of a bucket that expire in the current round.
+         *
+         * @param bucket the bucket of the current tick.
+         * @return the number of tasks run.
+         */
+        private int expire(List<Timeout> bucket) {
+            int expired = 0;
+            Iterator<Timeout> iterator = bucket.iterator();
+            while (iterator.hasNext()) {
+                Timeout timeout = iterator.next();
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                    continue;
+                }
+                iterator.remove();
+                expired++;
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_KEY, "Scheduled task failed", e);
+                }
+            }
+            return expired;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.eis.smslibrary;
+
+/**
+ * Token bucket counting sms segments: it holds at most {@code capacity} tokens and gets them back
+ * at a steady rate of {@code capacity} tokens every window, so bursts are spread over time.
+ * A message taking more segments than the whole capacity is let through once the bucket is full,
+ * leaving the bucket in debt until it refills.
+ * Time is always passed by the caller as {@link System#nanoTime()}, so that it's easy to test.
+ */
+class SMSTokenBucket {
+
+    private final int capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Constructor for a full bucket.
+     *
+     * @param capacity    maximum number of segments sent in a burst, and segments per window.
+     * @param windowNanos the time in which the whole capacity is refilled, in nanoseconds.
+     * @param nowNanos    current time in nanoseconds.
+     * @throws IllegalArgumentException if capacity or windowNanos are not positive.
+     */
+    SMSTokenBucket(int capacity, long windowNanos, long nowNanos) {
+        if (capacity <= 0 || windowNanos <= 0)
+            throw new IllegalArgumentException("Capacity and window must be positive");
+        this.capacity = capacity;
+        this.tokensPerNano = (double) capacity / windowNanos;
+        this.tokens = capacity;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Takes the tokens for a message if they are available.
+     *
+     * @param segments the number of segments of the message.
+     * @param nowNanos current time in nanoseconds.
+     * @return true if the message can be sent now, false otherwise.
+     */
+    synchronized boolean tryAcquire(int segments, long nowNanos) {
+        refill(nowNanos);
+        if (tokens < Math.min(segments, capacity))
+            return false;
+        tokens -= segments;
+        return true;
+    }
+
+    /**
+     * Computes how long a message has to wait before its tokens are available.
+     *
+     * @param segments the number of segments of the message.
+     * @param nowNanos current time in nanoseconds.
+     * @return the time to wait in nanoseconds, 0 if the message can be sent now.
+     */
+    synchronized long nanosUntilAvailable(int segments, long nowNanos) {
+        refill(nowNanos);
+        double missing = Math.min(segments, capacity) - tokens;
+        if (missing <= 0)
+            return 0;
+        return (long) Math.ceil(missing / tokensPerNano);
+    }
+
+    /**
+     * Adds the tokens gained since the last refill.
+     *
+     * @param nowNanos current time in nanoseconds.
+     */
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed <= 0)
+            return;
+        tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+        lastRefillNanos = nowNanos;
+    }
+}
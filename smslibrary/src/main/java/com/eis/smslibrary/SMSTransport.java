@@ -0,0 +1,28 @@
+package com.eis.smslibrary;
+
+import android.app.PendingIntent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * Last step of the sending path, hands the parts of a message to the channel.
+ * The default one is {@link SMSCore#TRANSPORT}, other implementations are only used to test the
+ * sending path without the Android runtime.
+ */
+interface SMSTransport {
+
+    /**
+     * Sends the parts of a single message.
+     *
+     * @param parts        {@link ArrayList} of message parts to be sent
+     * @param phoneNumber  peer phone address
+     * @param sentPIs      {@link ArrayList} of pending intents for a broadcast on message sent, can be null
+     * @param deliveredPIs {@link ArrayList} of pending intents for a broadcast on message delivered, can be null
+     */
+    void sendMessages(@NonNull ArrayList<String> parts, @NonNull String phoneNumber,
+                      @Nullable ArrayList<PendingIntent> sentPIs,
+                      @Nullable ArrayList<PendingIntent> deliveredPIs);
+}
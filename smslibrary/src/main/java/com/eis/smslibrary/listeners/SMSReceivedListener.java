@@ -0,0 +1,19 @@
+package com.eis.smslibrary.listeners;
+
+import com.eis.smslibrary.SMSMessage;
+
+/**
+ * Listener for messages received while the application process is running.
+ * Unlike {@link SMSReceivedServiceListener} it's kept in memory, so it gets the parsed message
+ * directly from the broadcast, without waking up a service.
+ */
+public interface SMSReceivedListener {
+
+    /**
+     * Callback for when a sms message sent from this library is received
+     *
+     * @param message the received message
+     */
+    void onMessageReceived(SMSMessage message);
+
+}
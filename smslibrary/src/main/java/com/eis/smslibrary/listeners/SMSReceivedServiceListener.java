@@ -5,9 +5,13 @@ import android.content.Intent;
 import androidx.annotation.Nullable;
 import androidx.core.app.JobIntentService;
 
+import com.eis.smslibrary.SMSCodec;
 import com.eis.smslibrary.SMSMessage;
 import com.eis.smslibrary.SMSReceivedBroadcastReceiver;
 
+import java.io.Serializable;
+import java.util.List;
+
 /**
  * Abstract class to implement in order to wake up the service when a message is received
  *
@@ -24,15 +28,39 @@ public abstract class SMSReceivedServiceListener extends JobIntentService {
     public abstract void onMessageReceived(SMSMessage message);
 
     /**
-     * Handles the service call, extracts the message from the intent extras and calls {@link #onMessageReceived(SMSMessage)}
+     * Callback for when a batch of sms messages sent from this library is received, only used
+     * if batching has been enabled with {@link com.eis.smslibrary.SMSManager#setReceivedBatching(int, long, android.content.Context)}.
+     * Calls {@link #onMessageReceived(SMSMessage)} for every message by default.
+     *
+     * @param messages the received messages, in arrival order
+     */
+    public void onMessagesReceived(List<SMSMessage> messages) {
+        for (SMSMessage message : messages)
+            onMessageReceived(message);
+    }
+
+    /**
+     * Handles the service call, decodes the message or the batch of messages from the intent extras
+     * and calls {@link #onMessageReceived(SMSMessage)} or {@link #onMessagesReceived(List)}
      *
      * @param intent intent passed from the broadcastReceiver
      */
     @Override
     protected void onHandleWork(@Nullable Intent intent) {
-        SMSMessage message = (SMSMessage) intent.getSerializableExtra(SMSReceivedBroadcastReceiver.INTENT_MESSAGE_TAG);
-        onMessageReceived(message);
+        byte[] batch = intent.getByteArrayExtra(SMSReceivedBroadcastReceiver.INTENT_MESSAGES_TAG);
+        if (batch != null) {
+            onMessagesReceived(SMSCodec.messagesFromBytes(batch));
+            return;
+        }
+        byte[] message = intent.getByteArrayExtra(SMSReceivedBroadcastReceiver.INTENT_MESSAGE_TAG);
+        if (message != null) {
+            onMessageReceived(SMSCodec.messageFromBytes(message));
+            return;
+        }
+        // Work enqueued by a previous version of the library, before the update
+        Serializable serialized = intent.getSerializableExtra(SMSReceivedBroadcastReceiver.INTENT_MESSAGE_TAG);
+        if (serialized instanceof SMSMessage)
+            onMessageReceived((SMSMessage) serialized);
     }
 
-
 }
@@ -0,0 +1,167 @@
+package com.eis.smslibrary;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for DeflateParseStrategy.
+ */
+public class DeflateParseStrategyTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final String DICTIONARY = "Your order has been shipped. Your order has been delivered. " +
+            "Your appointment is confirmed for . Reply STOP to unsubscribe. status=delivered status=shipped " +
+            "order_id= customer= carrier= tracking= eta= total= EUR items= Thank you for shopping with us. ";
+    private static final String SHORT_TEXT = "See you at 5";
+
+    private final DeflateParseStrategy strategy = new DeflateParseStrategy(DICTIONARY);
+
+    /**
+     * @return structured notifications like the ones the dictionary was written for.
+     */
+    private static List<String> corpus() {
+        Random random = new Random(3);
+        String[] carriers = {"UPS", "DHL", "FedEx", "GLS"};
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            StringBuilder text = new StringBuilder();
+            int notifications = 1 + random.nextInt(4);
+            for (int n = 0; n < notifications; n++) {
+                text.append(random.nextBoolean() ? "Your order has been shipped. " : "Your order has been delivered. ")
+                        .append("order_id=").append(100000 + random.nextInt(900000))
+                        .append(" customer=").append("C").append(random.nextInt(10000))
+                        .append(" carrier=").append(carriers[random.nextInt(carriers.length)])
+                        .append(" tracking=").append(Long.toHexString(random.nextLong()).toUpperCase())
+                        .append(" eta=2020-0").append(1 + random.nextInt(9)).append("-1").append(random.nextInt(10))
+                        .append(" items=").append(1 + random.nextInt(9))
+                        .append(" total=").append(random.nextInt(500)).append(".").append(random.nextInt(90) + 10).append(" EUR. ");
+            }
+            text.append("Thank you for shopping with us. Reply STOP to unsubscribe.");
+            texts.add(text.toString());
+        }
+        return texts;
+    }
+
+    @Test
+    public void parseData_roundTripsCorpus() {
+        for (String text : corpus()) {
+            String data = strategy.parseData(new SMSMessage(VALID_PEER, text));
+            assertEquals(text, strategy.parseMessage(data, VALID_PEER).getData());
+        }
+    }
+
+    @Test
+    public void parseData_longRepetitiveText_isCompressed() {
+        String text = corpus().get(0);
+        String data = strategy.parseData(new SMSMessage(VALID_PEER, text));
+        assertTrue(data.startsWith(DeflateParseStrategy.COMPRESSED_PREFIX));
+        assertTrue(data.length() < text.length());
+        assertEquals(SMSSegmentPlan.Encoding.GSM_7BIT, SMSSegmentPlan.of(data).getEncoding());
+    }
+
+    @Test
+    public void parseData_shortText_staysPlain() {
+        String data = strategy.parseData(new SMSMessage(VALID_PEER, SHORT_TEXT));
+        assertEquals(DeflateParseStrategy.PLAIN_PREFIX + SHORT_TEXT, data);
+        assertEquals(SHORT_TEXT, strategy.parseMessage(data, VALID_PEER).getData());
+    }
+
+    @Test
+    public void parseData_unicodeText_roundTrips() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++)
+            text.append("Il tuo ordine è stato spedito ☺ ");
+        String data = strategy.parseData(new SMSMessage(VALID_PEER, text.toString()));
+        assertTrue(data.startsWith(DeflateParseStrategy.COMPRESSED_PREFIX));
+        assertEquals(text.toString(), strategy.parseMessage(data, VALID_PEER).getData());
+    }
+
+    @Test
+    public void parseMessage_otherPrefix_returnsNull() {
+        assertNull(strategy.parseMessage("\r" + SHORT_TEXT, VALID_PEER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMessage_otherDictionary_throws() {
+        String data = strategy.parseData(new SMSMessage(VALID_PEER, corpus().get(0)));
+        new DeflateParseStrategy("a completely different dictionary").parseMessage(data, VALID_PEER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMessage_truncated_throws() {
+        String data = strategy.parseData(new SMSMessage(VALID_PEER, corpus().get(0)));
+        strategy.parseMessage(data.substring(0, data.length() / 2), VALID_PEER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMessage_inflatesPastMaxLength_throws() {
+        strategy.parseMessage(compressedData(SMSMessage.MAX_MSG_TEXT_LEN + 1), VALID_PEER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMessage_plainPastMaxLength_throws() {
+        char[] text = new char[SMSMessage.MAX_MSG_TEXT_LEN + 1];
+        Arrays.fill(text, 'a');
+        strategy.parseMessage(DeflateParseStrategy.PLAIN_PREFIX + new String(text), VALID_PEER);
+    }
+
+    @Test
+    public void handler_maliciousCompressedData_isDropped() {
+        SMSMessageHandler handler = SMSMessageHandler.getInstance();
+        handler.setMessageParseStrategy(strategy);
+        try {
+            // Well within the bytes allowed while inflating, but far more chars than any message
+            assertNull(handler.parseMessage(VALID_PEER.getAddress(), compressedData(100000)));
+        } finally {
+            handler.setMessageParseStrategy(handler.new DefaultSMSMessageParseStrategy());
+        }
+    }
+
+    /**
+     * @param length the length of the text.
+     * @return data marked as compressed whose text is the given number of 'a's.
+     */
+    private static String compressedData(int length) {
+        byte[] text = new byte[length];
+        Arrays.fill(text, (byte) 'a');
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setDictionary(DICTIONARY.getBytes(Charset.forName("UTF-8")));
+        deflater.setInput(text);
+        deflater.finish();
+        byte[] compressed = new byte[length];
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+        StringBuilder data = new StringBuilder(DeflateParseStrategy.COMPRESSED_PREFIX);
+        GSMBinaryParseStrategy.encode(compressed, 0, compressedLength, data);
+        return data.toString();
+    }
+
+    @Test
+    public void parseData_corpus_savesSegments() {
+        List<String> corpus = corpus();
+        DeflateParseStrategy noDictionary = new DeflateParseStrategy("");
+        int plainSegments = 0;
+        int dictionarySegments = 0;
+        int noDictionarySegments = 0;
+        for (String text : corpus) {
+            SMSMessage message = new SMSMessage(VALID_PEER, text);
+            plainSegments += SMSSegmentPlan.of("\r" + text).getSegmentCount();
+            noDictionarySegments += SMSSegmentPlan.of(noDictionary.parseData(message)).getSegmentCount();
+            String data = strategy.parseData(message);
+            assertEquals(message, strategy.parseMessage(data, VALID_PEER));
+            dictionarySegments += SMSSegmentPlan.of(data).getSegmentCount();
+        }
+        assertTrue(dictionarySegments < noDictionarySegments);
+        assertTrue(noDictionarySegments <= plainSegments);
+    }
+}
@@ -0,0 +1,135 @@
+package com.eis.smslibrary;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for GSMBinaryParseStrategy.
+ */
+public class GSMBinaryParseStrategyTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final int MAX_PAYLOAD = 400;
+
+    private final GSMBinaryParseStrategy strategy = new GSMBinaryParseStrategy();
+    private final Random random = new Random(42);
+
+    private byte[] randomPayload(int length) {
+        byte[] payload = new byte[length];
+        random.nextBytes(payload);
+        return payload;
+    }
+
+    @Test
+    public void alphabet_onlyBasicSafeCharacters() {
+        String alphabet = GSMBinaryParseStrategy.ALPHABET;
+        Set<Character> distinct = new HashSet<>();
+        for (int i = 0; i < alphabet.length(); i++) {
+            char c = alphabet.charAt(i);
+            assertEquals(GSMCharset.BASIC_SEPTETS, GSMCharset.septetsOf(c));
+            assertTrue(c != ' ' && c != '@' && c != '\n' && c != '\r' && c != '\'');
+            distinct.add(c);
+        }
+        assertEquals(102, distinct.size());
+        assertEquals(102, alphabet.length());
+    }
+
+    @Test
+    public void parseData_roundTripsEveryLength() {
+        for (int length = 0; length <= MAX_PAYLOAD; length++) {
+            byte[] payload = randomPayload(length);
+            String data = strategy.parseData(GSMBinaryParseStrategy.createMessage(VALID_PEER, payload));
+            assertEquals(GSMBinaryParseStrategy.PREFIX.length() + GSMBinaryParseStrategy.getEncodedLength(length), data.length());
+            assertEquals(length, GSMBinaryParseStrategy.getDecodedLength(data.length() - GSMBinaryParseStrategy.PREFIX.length()));
+            SMSMessage parsed = strategy.parseMessage(data, VALID_PEER);
+            assertTrue(Arrays.equals(payload, GSMBinaryParseStrategy.getPayload(parsed)));
+        }
+    }
+
+    @Test
+    public void decode_intoOffset() {
+        byte[] payload = randomPayload(37);
+        StringBuilder encoded = new StringBuilder("xx");
+        GSMBinaryParseStrategy.encode(payload, 0, payload.length, encoded);
+        byte[] destination = new byte[payload.length + 3];
+        assertEquals(payload.length, GSMBinaryParseStrategy.decode(encoded, 2, encoded.length(), destination, 3));
+        assertTrue(Arrays.equals(payload, Arrays.copyOfRange(destination, 3, destination.length)));
+    }
+
+    @Test
+    public void parseData_isGSMAndDenserThanBase64() {
+        byte[] payload = randomPayload(131);
+        String data = strategy.parseData(GSMBinaryParseStrategy.createMessage(VALID_PEER, payload));
+        SMSSegmentPlan plan = SMSSegmentPlan.of(data);
+        assertEquals(SMSSegmentPlan.Encoding.GSM_7BIT, plan.getEncoding());
+        // 131 bytes fill a single segment here, they'd take 178 septets in Base64
+        assertEquals(SMSSegmentPlan.GSM_SINGLE_SEGMENT_SEPTETS, plan.getEncodedLength());
+        assertEquals(1, plan.getSegmentCount());
+        assertTrue(plan.getEncodedLength() < GSMBinaryParseStrategy.PREFIX.length() + (131 + 2) / 3 * 4);
+    }
+
+    @Test
+    public void parseMessage_otherPrefix_returnsNull() {
+        assertNull(strategy.parseMessage("\rplain text", VALID_PEER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMessage_charNotInAlphabet_throws() {
+        strategy.parseMessage(GSMBinaryParseStrategy.PREFIX + "ab c", VALID_PEER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMessage_tailOutOfRange_throws() {
+        // A single trailing character only carries 6 bits, so it can't be past the 64th digit
+        strategy.parseMessage(GSMBinaryParseStrategy.PREFIX + "Ü", VALID_PEER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMessage_payloadPastMaxLength_throws() {
+        strategy.parseMessage(encodedData(SMSMessage.MAX_MSG_TEXT_LEN + 1, (byte) 'a'), VALID_PEER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMessage_nonGSMPayloadPastUCS2MaxLength_throws() {
+        // Chars out of the GSM charset make the message text UCS-2
+        strategy.parseMessage(encodedData(SMSMessage.MAX_UCS2_MSG_TEXT_LEN + 1, (byte) 0x80), VALID_PEER);
+    }
+
+    /**
+     * @param length the length of the payload.
+     * @param value  the value of every byte of the payload.
+     * @return the data of a message carrying the payload.
+     */
+    private static String encodedData(int length, byte value) {
+        byte[] payload = new byte[length];
+        Arrays.fill(payload, value);
+        StringBuilder data = new StringBuilder(GSMBinaryParseStrategy.PREFIX);
+        GSMBinaryParseStrategy.encode(payload, 0, length, data);
+        return data.toString();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseData_notBinaryData_throws() {
+        strategy.parseData(new SMSMessage(VALID_PEER, "€"));
+    }
+
+    @Test
+    public void parseData_neverMoreSegmentsThanBase64() {
+        int[] sizes = {16, 64, 131, 256, 1024};
+        for (int size : sizes) {
+            String data = strategy.parseData(GSMBinaryParseStrategy.createMessage(VALID_PEER, randomPayload(size)));
+            char[] base64 = new char[GSMBinaryParseStrategy.PREFIX.length() + (size + 2) / 3 * 4];
+            Arrays.fill(base64, 'A');
+            assertTrue(data.length() < base64.length);
+            assertTrue(SMSSegmentPlan.of(data).getSegmentCount() <= SMSSegmentPlan.of(new String(base64)).getSegmentCount());
+        }
+    }
+}
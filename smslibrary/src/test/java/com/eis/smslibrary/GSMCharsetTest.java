@@ -0,0 +1,76 @@
+package com.eis.smslibrary;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks that the GSM 03.38 lookup table gives the same results as the regular expressions
+ * previously used by {@link SMSMessage#checkMessageText(String)}.
+ */
+public class GSMCharsetTest {
+
+    private static final String GSM_CHARACTERS_STRING_REGEX = "^[@£$¥èéùìòÇ\\nØø\\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&‘()*+,\\-./0-9:;<=>?¡A-ZÄÖÑÜ§¿a-zäöñüà]*$";
+    private static final String GSM_CHARACTERS_EXTENSION_STRING_REGEX = "^[@£$¥èéùìòÇ\\nØø\\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&‘()*+,\\-./0-9:;<=>?¡A-ZÄÖÑÜ§¿a-zäöñüà\\f^{}\\\\\\[~\\]|€]*$";
+    private static final String GSM_CHARACTERS_EXTENSION_REGEX = "[\\f^{}\\\\\\[~\\]|€]";
+
+    private static final String GSM_SAMPLE_CHARACTERS = "Hello €[]{}|~^\\\f\n\r@£ΔΩ‘à";
+    private static final String ALL_SAMPLE_CHARACTERS = GSM_SAMPLE_CHARACTERS + "'`¬🐖À";
+    private static final int RANDOM_TEST_ITERATIONS = 2000;
+    private static final int RANDOM_TEST_MAX_LENGTH = 40;
+
+    /**
+     * Septet count computed with the regular expressions, as the old checkMessageText did
+     */
+    private static int regexSeptets(String text) {
+        if (!text.matches(GSM_CHARACTERS_EXTENSION_STRING_REGEX))
+            return GSMCharset.NOT_GSM_ENCODABLE;
+        if (text.matches(GSM_CHARACTERS_STRING_REGEX))
+            return text.length();
+        int charNum = 0;
+        for (int i = 0; i < text.length(); i++)
+            charNum += text.substring(i, i + 1).matches(GSM_CHARACTERS_EXTENSION_REGEX) ? 2 : 1;
+        return charNum;
+    }
+
+    @Test
+    public void septetsOf_everyChar_matchesRegex() {
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            String text = String.valueOf((char) c);
+            int expected = regexSeptets(text);
+            if (expected == GSMCharset.NOT_GSM_ENCODABLE)
+                expected = GSMCharset.NOT_GSM_SEPTETS;
+            Assert.assertEquals("Char " + Integer.toHexString(c), expected, GSMCharset.septetsOf((char) c));
+        }
+    }
+
+    @Test
+    public void countSeptets_randomStrings_matchesRegex() {
+        Random random = new Random(42);
+        for (int i = 0; i < RANDOM_TEST_ITERATIONS; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(RANDOM_TEST_MAX_LENGTH);
+            // Half of the strings only use GSM characters, so that all the branches are tested
+            String charset = random.nextBoolean() ? GSM_SAMPLE_CHARACTERS : ALL_SAMPLE_CHARACTERS;
+            for (int j = 0; j < length; j++)
+                text.append(charset.charAt(random.nextInt(charset.length())));
+            Assert.assertEquals(text.toString(), regexSeptets(text.toString()), GSMCharset.countSeptets(text));
+        }
+    }
+
+    @Test
+    public void countSeptets_empty_isZero() {
+        Assert.assertEquals(0, GSMCharset.countSeptets(""));
+    }
+
+    @Test
+    public void countSeptets_extensionCharacters_countTwice() {
+        Assert.assertEquals(4, GSMCharset.countSeptets("a€b"));
+    }
+
+    @Test
+    public void countSeptets_unicode_isNotEncodable() {
+        Assert.assertEquals(GSMCharset.NOT_GSM_ENCODABLE, GSMCharset.countSeptets("a€b🐖"));
+    }
+}
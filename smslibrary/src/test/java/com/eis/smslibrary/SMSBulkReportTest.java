@@ -0,0 +1,65 @@
+package com.eis.smslibrary;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSBulkReport.
+ */
+public class SMSBulkReportTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final SMSPeer INVALID_PEER = new SMSPeer("+39");
+    private static final SMSMessage FIRST_MESSAGE = new SMSMessage(VALID_PEER, "First text");
+    private static final SMSMessage SECOND_MESSAGE = new SMSMessage(VALID_PEER, "Second text");
+    private static final SMSMessage REJECTED_MESSAGE = new SMSMessage(INVALID_PEER, "Rejected text");
+
+    private SMSBulkReport report;
+
+    @Before
+    public void setup() {
+        report = new SMSBulkReport(3);
+    }
+
+    @Test
+    public void allReported_beforeSubmitted_isNotDone() {
+        report.onRejected(REJECTED_MESSAGE);
+        report.getSentListener().onSMSSent(FIRST_MESSAGE, SMSMessage.SentState.MESSAGE_SENT);
+        report.getSentListener().onSMSSent(SECOND_MESSAGE, SMSMessage.SentState.MESSAGE_SENT);
+        assertFalse(report.getSentResult().isDone());
+        report.onSubmitted();
+        assertTrue(report.getSentResult().isDone());
+        assertFalse(report.getDeliveredResult().isDone());
+    }
+
+    @Test
+    public void mixedResults_areCounted() throws Exception {
+        report.onRejected(REJECTED_MESSAGE);
+        report.onSubmitted();
+        report.getSentListener().onSMSSent(FIRST_MESSAGE, SMSMessage.SentState.MESSAGE_SENT);
+        report.getSentListener().onSMSSent(SECOND_MESSAGE, SMSMessage.SentState.ERROR_NO_SERVICE);
+        assertSame(report, report.getSentResult().get());
+        assertEquals(1, report.getRejectedCount());
+        assertEquals(1, report.getSentCount(SMSMessage.SentState.MESSAGE_SENT));
+        assertEquals(1, report.getSentCount(SMSMessage.SentState.ERROR_NO_SERVICE));
+        assertEquals(SECOND_MESSAGE, report.getFailedMessages().get(0));
+        assertEquals(REJECTED_MESSAGE, report.getRejectedMessages().get(0));
+    }
+
+    @Test
+    public void deliveredResult_waitsOnlyForSentMessages() throws Exception {
+        report.onRejected(REJECTED_MESSAGE);
+        report.onSubmitted();
+        report.getSentListener().onSMSSent(FIRST_MESSAGE, SMSMessage.SentState.MESSAGE_SENT);
+        report.getSentListener().onSMSSent(SECOND_MESSAGE, SMSMessage.SentState.ERROR_RADIO_OFF);
+        assertFalse(report.getDeliveredResult().isDone());
+        report.getDeliveredListener().onSMSDelivered(FIRST_MESSAGE, SMSMessage.DeliveredState.MESSAGE_DELIVERED);
+        assertSame(report, report.getDeliveredResult().get());
+        assertEquals(1, report.getDeliveredCount(SMSMessage.DeliveredState.MESSAGE_DELIVERED));
+    }
+}
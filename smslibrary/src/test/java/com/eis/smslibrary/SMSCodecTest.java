@@ -0,0 +1,133 @@
+package com.eis.smslibrary;
+
+import android.os.Parcel;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for SMSCodec and the Parcelable implementations of SMSMessage and SMSPeer.
+ */
+public class SMSCodecTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final SMSMessage VALID_MESSAGE = new SMSMessage(VALID_PEER, "Some random text to send");
+    private static final SMSMessage UNICODE_MESSAGE = new SMSMessage(VALID_PEER, "caffè ☕ 😀 ü");
+
+    @Test
+    public void message_roundTrips() {
+        assertEquals(VALID_MESSAGE, SMSCodec.messageFromBytes(SMSCodec.toBytes(VALID_MESSAGE)));
+        assertEquals(UNICODE_MESSAGE, SMSCodec.messageFromBytes(SMSCodec.toBytes(UNICODE_MESSAGE)));
+    }
+
+    @Test
+    public void peer_roundTrips() {
+        assertEquals(VALID_PEER, SMSCodec.peerFromBytes(SMSCodec.toBytes(VALID_PEER)));
+    }
+
+    @Test
+    public void messages_roundTripInOrder() {
+        List<SMSMessage> messages = Arrays.asList(VALID_MESSAGE, UNICODE_MESSAGE, new SMSMessage(VALID_PEER, ""));
+        assertEquals(messages, SMSCodec.messagesFromBytes(SMSCodec.toBytes(messages)));
+        assertEquals(0, SMSCodec.messagesFromBytes(SMSCodec.toBytes(new ArrayList<SMSMessage>())).size());
+    }
+
+    @Test
+    public void message_utf8MatchesPlatform() throws Exception {
+        byte[] encoded = SMSCodec.toBytes(UNICODE_MESSAGE);
+        byte[] text = UNICODE_MESSAGE.getData().getBytes("UTF-8");
+        assertEquals(text.length, encoded[encoded.length - text.length - 1]);
+        assertTrue(Arrays.equals(text, Arrays.copyOfRange(encoded, encoded.length - text.length, encoded.length)));
+    }
+
+    @Test
+    public void message_loneSurrogate_replaced() {
+        SMSMessage message = new SMSMessage(VALID_PEER, "a\uD83Db");
+        assertEquals("a?b", SMSCodec.messageFromBytes(SMSCodec.toBytes(message)).getData());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messageFromBytes_unknownVersion_throws() {
+        byte[] encoded = SMSCodec.toBytes(VALID_MESSAGE);
+        encoded[0] = SMSCodec.VERSION + 1;
+        SMSCodec.messageFromBytes(encoded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messageFromBytes_truncated_throws() {
+        byte[] encoded = SMSCodec.toBytes(VALID_MESSAGE);
+        SMSCodec.messageFromBytes(Arrays.copyOf(encoded, encoded.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messageFromBytes_trailingBytes_throws() {
+        byte[] encoded = SMSCodec.toBytes(VALID_MESSAGE);
+        SMSCodec.messageFromBytes(Arrays.copyOf(encoded, encoded.length + 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messagesFromBytes_hugeCount_throws() {
+        SMSCodec.messagesFromBytes(new byte[]{SMSCodec.VERSION, (byte) 0xFF, (byte) 0xFF, 0x7F});
+    }
+
+    @Test
+    public void message_writeToParcel_writesAddressAndText() {
+        Parcel parcel = mock(Parcel.class);
+        VALID_MESSAGE.writeToParcel(parcel, 0);
+        verify(parcel).writeString(VALID_PEER.getAddress());
+        verify(parcel).writeString(VALID_MESSAGE.getData());
+    }
+
+    @Test
+    public void message_createFromParcel_readsAddressAndText() {
+        Parcel parcel = mock(Parcel.class);
+        when(parcel.readString()).thenReturn(VALID_PEER.getAddress(), VALID_MESSAGE.getData());
+        assertEquals(VALID_MESSAGE, SMSMessage.CREATOR.createFromParcel(parcel));
+    }
+
+    @Test
+    public void peer_parcelRoundTrip() {
+        Parcel parcel = mock(Parcel.class);
+        VALID_PEER.writeToParcel(parcel, 0);
+        verify(parcel).writeString(VALID_PEER.getAddress());
+        when(parcel.readString()).thenReturn(VALID_PEER.getAddress());
+        assertEquals(VALID_PEER, SMSPeer.CREATOR.createFromParcel(parcel));
+    }
+
+    @Test
+    public void toBytes_isSmallerThanSerializable() throws Exception {
+        List<SMSMessage> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            batch.add(new SMSMessage(VALID_PEER, "Reply number " + i + " to the campaign"));
+        byte[] serialized = serialize(VALID_MESSAGE);
+        assertEquals(VALID_MESSAGE, deserialize(serialized));
+        assertTrue(SMSCodec.toBytes(VALID_MESSAGE).length < serialized.length);
+        assertTrue(SMSCodec.toBytes(batch).length < serialize(new ArrayList<>(batch)).length);
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(buffer);
+        output.writeObject(object);
+        output.close();
+        return buffer.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+    }
+}
@@ -9,11 +9,12 @@ import com.eis.smslibrary.listeners.SMSDeliveredListener;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.ArrayList;
-
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -27,20 +28,17 @@ public class SMSDeliveredBroadcastReceiverTest {
     private Context contextMock = mock(Context.class);
     private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
     private static final String VALID_TEXT = "Some random text to send";
-    private static final ArrayList<String> MESSAGE_TO_SEND = new ArrayList<>();
     private static final SMSMessage VALID_MESSAGE = new SMSMessage(VALID_PEER, VALID_TEXT);
 
     @Before
     public void setup() {
-        MESSAGE_TO_SEND.clear();
-        MESSAGE_TO_SEND.add(VALID_TEXT);
-        receiver = spy(new SMSDeliveredBroadcastReceiver(MESSAGE_TO_SEND, listenerMock, VALID_PEER));
+        receiver = spy(new SMSDeliveredBroadcastReceiver(VALID_MESSAGE, 1, listenerMock));
     }
 
     @Test
     public void constructor_doesntThrow() {
         try {
-            new SMSDeliveredBroadcastReceiver(MESSAGE_TO_SEND, listenerMock, VALID_PEER);
+            new SMSDeliveredBroadcastReceiver(VALID_MESSAGE, 1, listenerMock);
             //Success
         } catch (Exception e) {
             fail();
@@ -76,4 +74,21 @@ public class SMSDeliveredBroadcastReceiverTest {
         verify(contextMock).unregisterReceiver(receiver);
     }
 
+    @Test
+    public void receive_success_listenerGetsOriginalMessage() {
+        doReturn(Activity.RESULT_OK).when((BroadcastReceiver) receiver).getResultCode();
+        receiver.onReceive(contextMock, null);
+        verify(listenerMock).onSMSDelivered(same(VALID_MESSAGE), any(SMSMessage.DeliveredState.class));
+    }
+
+    @Test
+    public void receive_multipart_waitsForAllParts() {
+        SMSDeliveredBroadcastReceiver multipartReceiver = spy(new SMSDeliveredBroadcastReceiver(VALID_MESSAGE, 2, listenerMock));
+        doReturn(Activity.RESULT_OK).when((BroadcastReceiver) multipartReceiver).getResultCode();
+        multipartReceiver.onReceive(contextMock, null);
+        verify(listenerMock, never()).onSMSDelivered(any(SMSMessage.class), any(SMSMessage.DeliveredState.class));
+        multipartReceiver.onReceive(contextMock, null);
+        verify(listenerMock).onSMSDelivered(same(VALID_MESSAGE), same(SMSMessage.DeliveredState.MESSAGE_DELIVERED));
+        verify(contextMock).unregisterReceiver(multipartReceiver);
+    }
 }
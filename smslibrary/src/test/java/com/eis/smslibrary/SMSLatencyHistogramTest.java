@@ -0,0 +1,97 @@
+package com.eis.smslibrary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSLatencyHistogram.
+ */
+public class SMSLatencyHistogramTest {
+
+    private final SMSLatencyHistogram histogram = new SMSLatencyHistogram();
+
+    @Test
+    public void bucketOf_everyBucket_matchesItsHighestValue() {
+        for (int i = 0; i < SMSLatencyHistogram.BUCKET_COUNT; i++) {
+            long highest = SMSLatencyHistogram.highestValueOf(i);
+            assertEquals(i, SMSLatencyHistogram.bucketOf(highest));
+            if (i + 1 < SMSLatencyHistogram.BUCKET_COUNT)
+                assertEquals(i + 1, SMSLatencyHistogram.bucketOf(highest + 1));
+        }
+        assertEquals(Long.MAX_VALUE, SMSLatencyHistogram.highestValueOf(SMSLatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void bucketOf_relativeError_isBounded() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            long highest = SMSLatencyHistogram.highestValueOf(SMSLatencyHistogram.bucketOf(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / SMSLatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void snapshot_empty_isZero() {
+        SMSLatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getMean(), 0);
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void snapshot_percentiles_withinPrecision() {
+        for (long millis = 1; millis <= 1000; millis++)
+            histogram.record(millis * 1000000);
+        SMSLatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000000000L, snapshot.getMax());
+        assertEquals(500500000.0, snapshot.getMean(), 0);
+        assertWithinPrecision(500000000L, snapshot.getValueAtPercentile(50));
+        assertWithinPrecision(990000000L, snapshot.getValueAtPercentile(99));
+        assertEquals(1000000000L, snapshot.getValueAtPercentile(100));
+        assertWithinPrecision(1000000L, snapshot.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void record_negativeValue_isZero() {
+        histogram.record(-5);
+        assertEquals(1, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(100));
+    }
+
+    @Test
+    public void record_concurrently_countsEveryValue() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++)
+                        histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(40000, histogram.snapshot().getCount());
+        assertEquals(9999, histogram.snapshot().getMax());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getValueAtPercentile_outOfRange_throws() {
+        histogram.snapshot().getValueAtPercentile(101);
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual - expected <= expected / SMSLatencyHistogram.SUB_BUCKETS);
+    }
+}
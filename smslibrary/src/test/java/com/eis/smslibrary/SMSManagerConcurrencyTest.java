@@ -0,0 +1,187 @@
+package com.eis.smslibrary;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+import com.eis.smslibrary.listeners.SMSSentListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Stress test for SMSManager used by many threads at once, sending with a context through the
+ * report dispatchers and a fake transport, so that ids, trackers and retries are all shared.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({PendingIntent.class, SMSReportDispatcher.class})
+public class SMSManagerConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int MESSAGES_PER_THREAD = 500;
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+
+    private final SMSManager manager = SMSManager.getInstance();
+    private final CountingTransport transport = new CountingTransport();
+    private final Context context = mock(Context.class);
+    private final Set<Integer> requestCodes =
+            Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    /**
+     * Transport counting the messages it's been handed
+     */
+    private static class CountingTransport implements SMSTransport {
+        private final AtomicInteger messages = new AtomicInteger();
+
+        @Override
+        public void sendMessages(ArrayList<String> parts, String phoneNumber,
+                                 ArrayList<PendingIntent> sentPIs, ArrayList<PendingIntent> deliveredPIs) {
+            assertEquals(parts.size(), sentPIs.size());
+            messages.incrementAndGet();
+        }
+    }
+
+    /**
+     * Runs the same task on many threads at once.
+     *
+     * @return the results of every thread.
+     */
+    private static <T> List<T> runOnThreads(int threads, Callable<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<T>> futures = executor.invokeAll(Collections.nCopies(threads, task));
+            List<T> results = new ArrayList<>(threads);
+            for (Future<T> future : futures)
+                results.add(future.get());
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        manager.setTransport(transport);
+        manager.setLibrarySplitterEnabled(true);
+        manager.setReportDispatcherEnabled(true);
+        manager.setRetryPolicy(SMSMessage.SentState.ERROR_NO_SERVICE,
+                new SMSRetryPolicy(3, 1000, 10000, 0));
+        when(context.getApplicationContext()).thenReturn(context);
+        PowerMockito.whenNew(Intent.class).withAnyArguments().thenReturn(mock(Intent.class));
+        PowerMockito.mockStatic(PendingIntent.class);
+        final PendingIntent pendingIntent = mock(PendingIntent.class);
+        when(PendingIntent.getBroadcast(any(Context.class), anyInt(), any(Intent.class), anyInt()))
+                .thenAnswer(new Answer<PendingIntent>() {
+                    @Override
+                    public PendingIntent answer(InvocationOnMock invocation) {
+                        requestCodes.add((Integer) invocation.getArguments()[1]);
+                        return pendingIntent;
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        manager.setTransport(SMSCore.TRANSPORT);
+        manager.setLibrarySplitterEnabled(false);
+        manager.setReportDispatcherEnabled(false);
+        manager.removeRetryPolicy(SMSMessage.SentState.ERROR_NO_SERVICE);
+    }
+
+    @Test
+    public void getInstance_fromManyThreads_isTheSame() throws Exception {
+        List<SMSManager> instances = runOnThreads(THREADS, new Callable<SMSManager>() {
+            @Override
+            public SMSManager call() {
+                return SMSManager.getInstance();
+            }
+        });
+        assertEquals(1, new HashSet<>(instances).size());
+    }
+
+    @Test
+    public void nextMessageId_fromManyThreads_isUnique() throws Exception {
+        final int idsPerThread = 10000;
+        List<long[]> ids = runOnThreads(THREADS, new Callable<long[]>() {
+            @Override
+            public long[] call() {
+                long[] ids = new long[idsPerThread];
+                for (int i = 0; i < idsPerThread; i++)
+                    ids[i] = manager.nextMessageId();
+                return ids;
+            }
+        });
+        Set<Long> unique = new HashSet<>();
+        for (long[] threadIds : ids)
+            for (long id : threadIds)
+                unique.add(id);
+        assertEquals(THREADS * idsPerThread, unique.size());
+    }
+
+    @Test
+    public void sendMessage_fromManyThreads_tracksEveryMessageOnce() throws Exception {
+        final int messages = THREADS * MESSAGES_PER_THREAD;
+        final AtomicIntegerArray sentCalls = new AtomicIntegerArray(messages);
+        final AtomicInteger nextThread = new AtomicInteger();
+        SMSReportDispatcher sentDispatcher = Whitebox.getInternalState(manager, "sentDispatcher");
+        Map<Long, SMSReportTracker> trackers = Whitebox.getInternalState(sentDispatcher, "trackers");
+        Set<Long> trackedBefore = new HashSet<>(trackers.keySet());
+
+        runOnThreads(THREADS, new Callable<Void>() {
+            @Override
+            public Void call() {
+                int first = nextThread.getAndIncrement() * MESSAGES_PER_THREAD;
+                for (int i = first; i < first + MESSAGES_PER_THREAD; i++) {
+                    final int index = i;
+                    manager.sendMessage(new SMSMessage(VALID_PEER, "message " + i), new SMSSentListener() {
+                        @Override
+                        public void onSMSSent(SMSMessage message, SMSMessage.SentState sentState) {
+                            sentCalls.incrementAndGet(index);
+                        }
+                    }, context);
+                }
+                return null;
+            }
+        });
+
+        assertEquals(messages, transport.messages.get());
+        // Every message has its own tracking id and its own request code for its single part
+        Set<Long> trackingIds = new HashSet<>(trackers.keySet());
+        trackingIds.removeAll(trackedBefore);
+        assertEquals(messages, trackingIds.size());
+        assertEquals(messages, requestCodes.size());
+        for (long trackingId : trackingIds)
+            sentDispatcher.untrack(trackingId).onPartReport(Activity.RESULT_OK);
+        for (int i = 0; i < messages; i++)
+            assertEquals(1, sentCalls.get(i));
+    }
+}
@@ -1,9 +1,19 @@
 package com.eis.smslibrary;
 
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.telephony.SmsManager;
+import android.util.Log;
 
+import com.eis.smslibrary.exceptions.InvalidSMSMessageException;
 import com.eis.smslibrary.exceptions.InvalidTelephoneNumberException;
+import com.eis.smslibrary.listeners.SMSDeliveredListener;
+import com.eis.smslibrary.listeners.SMSSentListener;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -12,13 +22,33 @@ import org.mockito.Captor;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.when;
 
@@ -28,7 +58,7 @@ import static org.powermock.api.mockito.PowerMockito.when;
  * @author Marco Cognolato, Giovanni Velludo
  */
 @RunWith(PowerMockRunner.class)
-@PrepareForTest(SmsManager.class)
+@PrepareForTest({SmsManager.class, PendingIntent.class, SMSReportDispatcher.class, Log.class})
 public class SMSManagerTest {
 
     @Captor
@@ -55,6 +85,29 @@ public class SMSManagerTest {
         when(SmsManager.getDefault()).thenReturn(managerMock);
     }
 
+    @After
+    public void tearDown() {
+        managerInstance.setLibrarySplitterEnabled(false);
+        managerInstance.setTransport(SMSCore.TRANSPORT);
+    }
+
+    /**
+     * Transport recording the messages it's been handed
+     */
+    private static class RecordingTransport implements SMSTransport {
+        private final List<String> phoneNumbers = new ArrayList<>();
+        private final List<ArrayList<String>> parts = new ArrayList<>();
+
+        @Override
+        public void sendMessages(ArrayList<String> parts, String phoneNumber,
+                                 ArrayList<PendingIntent> sentPIs, ArrayList<PendingIntent> deliveredPIs) {
+            this.parts.add(parts);
+            phoneNumbers.add(phoneNumber);
+            assertEquals(parts.size(), sentPIs.size());
+            assertEquals(parts.size(), deliveredPIs.size());
+        }
+    }
+
     @Test
     public void singletonInstance() {
         assertEquals(SMSManager.getInstance(), SMSManager.getInstance());
@@ -80,6 +133,43 @@ public class SMSManagerTest {
         assertEquals(messageTextCaptor.getValue(), messageText);
     }
 
+    @Test
+    public void librarySplitter_longMessage_isSplitWithoutPlatform() {
+        String longText = new String(new char[SMSSegmentPlan.GSM_SINGLE_SEGMENT_SEPTETS]).replace('\0', 'a');
+        SMSMessage longMessage = new SMSMessage(VALID_PEER, longText);
+        managerInstance.setLibrarySplitterEnabled(true);
+
+        managerInstance.sendMessage(longMessage);
+
+        verify(managerMock, never()).divideMessage(anyString());
+        verify(managerMock).sendMultipartTextMessage(peerNumberCaptor.capture(),
+                isNull(String.class), messageTextCaptor.capture(), isNull(ArrayList.class),
+                isNull(ArrayList.class));
+        assertEquals(SMSSegmentPlan.of(SMSMessageHandler.getInstance().parseData(longMessage)).getParts(),
+                messageTextCaptor.getValue());
+        assertEquals(2, messageTextCaptor.getValue().size());
+    }
+
+    @Test
+    public void librarySplitter_sameTextAgain_isSplitOnce() {
+        final List<ArrayList<String>> sentParts = new ArrayList<>();
+        managerInstance.setTransport(new SMSTransport() {
+            @Override
+            public void sendMessages(ArrayList<String> parts, String phoneNumber,
+                                     ArrayList<PendingIntent> sentPIs, ArrayList<PendingIntent> deliveredPIs) {
+                sentParts.add(parts);
+            }
+        });
+        managerInstance.setLibrarySplitterEnabled(true);
+
+        managerInstance.sendMessage(VALID_MESSAGE);
+        managerInstance.sendMessage(new SMSMessage(new SMSPeer("+393423541602"), VALID_MESSAGE_TEXT));
+
+        // Every message gets its own list, but the parts themselves are the same strings
+        assertNotSame(sentParts.get(0), sentParts.get(1));
+        assertSame(sentParts.get(0).get(0), sentParts.get(1).get(0));
+    }
+
     @Test(expected = NullPointerException.class)
     public void nullMessage_throws() {
         managerInstance.sendMessage(null);
@@ -108,4 +198,228 @@ public class SMSManagerTest {
         SMSMessage message = new SMSMessage(new SMSPeer(EMPTY_TELEPHONE_NUMBER), VALID_MESSAGE_TEXT);
         managerInstance.sendMessage(message);
     }
+
+    @Test
+    public void sendMessages_invalidPeers_areRejectedWithoutSending() {
+        SMSMessage shortNumberMessage = new SMSMessage(new SMSPeer(TOO_SHORT_TELEPHONE_NUMBER), VALID_MESSAGE_TEXT);
+        SMSMessage emptyNumberMessage = new SMSMessage(new SMSPeer(EMPTY_TELEPHONE_NUMBER), VALID_MESSAGE_TEXT);
+
+        SMSBulkReport report = managerInstance.sendMessages(
+                Arrays.asList(shortNumberMessage, emptyNumberMessage), mock(Context.class));
+
+        assertEquals(2, report.getRejectedCount());
+        assertTrue(report.getSentResult().isDone());
+        assertTrue(report.getDeliveredResult().isDone());
+        verify(managerMock, never()).divideMessage(anyString());
+    }
+
+    @Test(expected = InvalidSMSMessageException.class)
+    public void broadcastMessage_tooLongText_throwsException() {
+        String tooLongText = new String(new char[SMSMessage.MAX_MSG_TEXT_LEN + 1]).replace('\0', 'a');
+        managerInstance.broadcastMessage(tooLongText, Arrays.asList(VALID_PEER, VALID_PEER), mock(Context.class));
+    }
+
+    @Test(expected = InvalidSMSMessageException.class)
+    public void broadcastMessage_tooLongTextNoPeers_throwsException() {
+        String tooLongText = new String(new char[SMSMessage.MAX_MSG_TEXT_LEN + 1]).replace('\0', 'a');
+        managerInstance.broadcastMessage(tooLongText, Collections.<SMSPeer>emptyList(), mock(Context.class));
+    }
+
+    @Test
+    public void sendMessages_transportThrows_failsRemainingMessages() throws Exception {
+        final SMSMessage secondMessage = new SMSMessage(new SMSPeer("+393423541602"), VALID_MESSAGE_TEXT);
+        SMSMessage thirdMessage = new SMSMessage(new SMSPeer("+393423541603"), VALID_MESSAGE_TEXT);
+        managerInstance.setTransport(new SMSTransport() {
+            @Override
+            public void sendMessages(ArrayList<String> parts, String phoneNumber,
+                                     ArrayList<PendingIntent> sent, ArrayList<PendingIntent> delivered) {
+                if (phoneNumber.equals(secondMessage.getPeer().getAddress()))
+                    throw new IllegalArgumentException("Rejected by SmsManager");
+            }
+        });
+        managerInstance.setLibrarySplitterEnabled(true);
+        Context contextMock = mock(Context.class);
+        when(contextMock.getApplicationContext()).thenReturn(contextMock);
+        Intent intentMock = mock(Intent.class);
+        PowerMockito.whenNew(Intent.class).withAnyArguments().thenReturn(intentMock);
+        PowerMockito.mockStatic(PendingIntent.class);
+        when(PendingIntent.getBroadcast(any(Context.class), anyInt(), any(Intent.class), anyInt()))
+                .thenReturn(mock(PendingIntent.class));
+        SMSReportDispatcher sentDispatcher = Whitebox.getInternalState(managerInstance, "sentDispatcher");
+        SMSReportDispatcher deliveredDispatcher = Whitebox.getInternalState(managerInstance, "deliveredDispatcher");
+        int sentTracked = sentDispatcher.getTrackedCount();
+        int deliveredTracked = deliveredDispatcher.getTrackedCount();
+
+        try {
+            managerInstance.sendMessages(Arrays.asList(VALID_MESSAGE, secondMessage, thirdMessage), contextMock);
+            fail("The exception of the transport should reach the caller");
+        } catch (IllegalArgumentException expected) {
+            // The third message is never handed to the transport
+        }
+
+        // Only the first message is still waiting for its reports
+        assertEquals(sentTracked + 1, sentDispatcher.getTrackedCount());
+        assertEquals(deliveredTracked + 1, deliveredDispatcher.getTrackedCount());
+        ArgumentCaptor<Long> trackingIds = ArgumentCaptor.forClass(Long.class);
+        verify(intentMock, atLeastOnce()).putExtra(eq(SMSReportDispatcher.EXTRA_TRACKING_ID), (long) trackingIds.capture());
+        long firstId = trackingIds.getAllValues().get(0);
+        deliveredDispatcher.untrack(firstId);
+        SMSSentBroadcastReceiver firstReceiver = (SMSSentBroadcastReceiver) sentDispatcher.untrack(firstId);
+        // The report isn't returned, it's reached through the listener of the first message
+        SMSBulkReport report = Whitebox.getInternalState(Whitebox.getInternalState(firstReceiver, "listener"), "this$0");
+        assertFalse(report.getSentResult().isDone());
+        firstReceiver.onPartReport(Activity.RESULT_OK);
+        assertTrue(report.getSentResult().isDone());
+        assertEquals(1, report.getSentCount(SMSMessage.SentState.MESSAGE_SENT));
+        assertEquals(2, report.getSentCount(SMSMessage.SentState.ERROR_GENERIC_FAILURE));
+        assertEquals(Arrays.asList(secondMessage, thirdMessage), report.getFailedMessages());
+    }
+
+    @Test
+    public void sendMessages_mixedBulk_sendsValidMessagesAndReports() throws Exception {
+        SMSPeer otherPeer = new SMSPeer("+393423541602");
+        SMSMessage sameTextMessage = new SMSMessage(otherPeer, VALID_MESSAGE_TEXT);
+        SMSMessage invalidMessage = new SMSMessage(new SMSPeer(TOO_SHORT_TELEPHONE_NUMBER), VALID_MESSAGE_TEXT);
+        SMSMessage otherTextMessage = new SMSMessage(VALID_PEER, "other text");
+        ArrayList<String> singlePart = new ArrayList<>(Collections.singletonList("part"));
+        when(managerMock.divideMessage(anyString())).thenReturn(singlePart);
+        RecordingTransport transport = new RecordingTransport();
+        managerInstance.setTransport(transport);
+        Context contextMock = mock(Context.class);
+        when(contextMock.getApplicationContext()).thenReturn(contextMock);
+        Intent intentMock = mock(Intent.class);
+        PowerMockito.whenNew(Intent.class).withAnyArguments().thenReturn(intentMock);
+        PowerMockito.whenNew(IntentFilter.class).withAnyArguments().thenReturn(mock(IntentFilter.class));
+        PowerMockito.mockStatic(PendingIntent.class);
+        when(PendingIntent.getBroadcast(any(Context.class), anyInt(), any(Intent.class), anyInt()))
+                .thenReturn(mock(PendingIntent.class));
+
+        SMSBulkReport report = managerInstance.sendMessages(
+                Arrays.asList(VALID_MESSAGE, sameTextMessage, invalidMessage, otherTextMessage), contextMock);
+
+        // The first two messages have the same text, which is split only once
+        verify(managerMock, times(2)).divideMessage(anyString());
+        assertEquals(Arrays.asList(VALID_PEER_NUMBER, otherPeer.getAddress(), VALID_PEER_NUMBER), transport.phoneNumbers);
+        assertEquals(4, report.getMessageCount());
+        assertEquals(1, report.getRejectedCount());
+        assertEquals(Collections.singletonList(invalidMessage), report.getRejectedMessages());
+        assertFalse(report.getSentResult().isDone());
+
+        // Every part of a message carries its tracking id twice, once for each report
+        ArgumentCaptor<Long> trackingIds = ArgumentCaptor.forClass(Long.class);
+        verify(intentMock, atLeastOnce()).putExtra(eq(SMSReportDispatcher.EXTRA_TRACKING_ID), (long) trackingIds.capture());
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(trackingIds.getAllValues()));
+        assertEquals(3, ids.size());
+        SMSReportDispatcher sentDispatcher = Whitebox.getInternalState(managerInstance, "sentDispatcher");
+        sentDispatcher.untrack(ids.get(0)).onPartReport(Activity.RESULT_OK);
+        sentDispatcher.untrack(ids.get(1)).onPartReport(Activity.RESULT_OK);
+        sentDispatcher.untrack(ids.get(2)).onPartReport(SmsManager.RESULT_ERROR_NO_SERVICE);
+        assertEquals(2, report.getSentCount(SMSMessage.SentState.MESSAGE_SENT));
+        assertEquals(1, report.getSentCount(SMSMessage.SentState.ERROR_NO_SERVICE));
+        assertEquals(Collections.singletonList(otherTextMessage), report.getFailedMessages());
+        assertTrue(report.getSentResult().isDone());
+    }
+
+    @Test
+    public void queuedMessage_transportThrows_failsMessage() throws Exception {
+        PowerMockito.mockStatic(Log.class);
+        managerInstance.setTransport(new SMSTransport() {
+            @Override
+            public void sendMessages(ArrayList<String> parts, String phoneNumber,
+                                     ArrayList<PendingIntent> sent, ArrayList<PendingIntent> delivered) {
+                throw new IllegalArgumentException("Rejected by SmsManager");
+            }
+        });
+        managerInstance.setLibrarySplitterEnabled(true);
+        managerInstance.setReportDispatcherEnabled(true);
+        managerInstance.setRateLimit(10, 1, TimeUnit.SECONDS);
+        Context contextMock = mock(Context.class);
+        when(contextMock.getApplicationContext()).thenReturn(contextMock);
+        PowerMockito.whenNew(Intent.class).withAnyArguments().thenReturn(mock(Intent.class));
+        PowerMockito.mockStatic(PendingIntent.class);
+        when(PendingIntent.getBroadcast(any(Context.class), anyInt(), any(Intent.class), anyInt()))
+                .thenReturn(mock(PendingIntent.class));
+        // Dispatchers are shared by the whole test class
+        SMSReportDispatcher sentDispatcher = Whitebox.getInternalState(managerInstance, "sentDispatcher");
+        SMSReportDispatcher deliveredDispatcher = Whitebox.getInternalState(managerInstance, "deliveredDispatcher");
+        int sentTracked = sentDispatcher.getTrackedCount();
+        int deliveredTracked = deliveredDispatcher.getTrackedCount();
+        final AtomicReference<SMSMessage.SentState> sentState = new AtomicReference<>();
+        final CountDownLatch sent = new CountDownLatch(1);
+        SMSSentListener sentListener = new SMSSentListener() {
+            @Override
+            public void onSMSSent(SMSMessage message, SMSMessage.SentState state) {
+                sentState.set(state);
+                sent.countDown();
+            }
+        };
+        try {
+            managerInstance.sendMessage(VALID_MESSAGE, sentListener, mock(SMSDeliveredListener.class), contextMock);
+            assertTrue(sent.await(5, TimeUnit.SECONDS));
+        } finally {
+            managerInstance.setReportDispatcherEnabled(false);
+        }
+
+        assertEquals(SMSMessage.SentState.ERROR_GENERIC_FAILURE, sentState.get());
+        assertEquals(sentTracked, sentDispatcher.getTrackedCount());
+        assertEquals(deliveredTracked, deliveredDispatcher.getTrackedCount());
+    }
+
+    @Test
+    public void metricsWithoutDeliveredListener_requestNoDeliveryReport() throws Exception {
+        final List<ArrayList<PendingIntent>> sentPIs = new ArrayList<>();
+        final List<ArrayList<PendingIntent>> deliveredPIs = new ArrayList<>();
+        managerInstance.setTransport(new SMSTransport() {
+            @Override
+            public void sendMessages(ArrayList<String> parts, String phoneNumber,
+                                     ArrayList<PendingIntent> sent, ArrayList<PendingIntent> delivered) {
+                sentPIs.add(sent);
+                deliveredPIs.add(delivered);
+            }
+        });
+        managerInstance.setLibrarySplitterEnabled(true);
+        managerInstance.setReportDispatcherEnabled(true);
+        managerInstance.setMetrics(new SMSMetricsRecorder());
+        Context contextMock = mock(Context.class);
+        when(contextMock.getApplicationContext()).thenReturn(contextMock);
+        PowerMockito.whenNew(Intent.class).withAnyArguments().thenReturn(mock(Intent.class));
+        PowerMockito.whenNew(IntentFilter.class).withAnyArguments().thenReturn(mock(IntentFilter.class));
+        PowerMockito.mockStatic(PendingIntent.class);
+        when(PendingIntent.getBroadcast(any(Context.class), anyInt(), any(Intent.class), anyInt()))
+                .thenReturn(mock(PendingIntent.class));
+        try {
+            managerInstance.sendMessage(VALID_MESSAGE, null, null, contextMock);
+        } finally {
+            managerInstance.setMetrics(null);
+            managerInstance.setReportDispatcherEnabled(false);
+        }
+
+        // Sent reports are still tracked for the metrics
+        assertEquals(1, sentPIs.get(0).size());
+        assertNull(deliveredPIs.get(0));
+    }
+
+    @Test
+    public void broadcastMessage_validPeers_sendsTextToEveryPeer() throws Exception {
+        SMSPeer otherPeer = new SMSPeer("+393423541602");
+        RecordingTransport transport = new RecordingTransport();
+        managerInstance.setTransport(transport);
+        managerInstance.setLibrarySplitterEnabled(true);
+        Context contextMock = mock(Context.class);
+        when(contextMock.getApplicationContext()).thenReturn(contextMock);
+        PowerMockito.whenNew(Intent.class).withAnyArguments().thenReturn(mock(Intent.class));
+        PowerMockito.whenNew(IntentFilter.class).withAnyArguments().thenReturn(mock(IntentFilter.class));
+        PowerMockito.mockStatic(PendingIntent.class);
+        when(PendingIntent.getBroadcast(any(Context.class), anyInt(), any(Intent.class), anyInt()))
+                .thenReturn(mock(PendingIntent.class));
+
+        SMSBulkReport report = managerInstance.broadcastMessage(VALID_MESSAGE_TEXT,
+                Arrays.asList(VALID_PEER, otherPeer), contextMock);
+
+        assertEquals(Arrays.asList(VALID_PEER_NUMBER, otherPeer.getAddress()), transport.phoneNumbers);
+        String expectedPart = SMSMessageHandler.getInstance().parseData(VALID_MESSAGE);
+        assertEquals(Collections.singletonList(expectedPart), transport.parts.get(0));
+        assertEquals(Collections.singletonList(expectedPart), transport.parts.get(1));
+        assertEquals(0, report.getRejectedCount());
+    }
 }
@@ -0,0 +1,130 @@
+package com.eis.smslibrary;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSMetricsRecorder and the library calling it.
+ */
+public class SMSMetricsRecorderTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final SMSMessage VALID_MESSAGE = new SMSMessage(VALID_PEER, "Test message");
+
+    private final SMSMetricsRecorder recorder = new SMSMetricsRecorder();
+
+    @After
+    public void tearDown() {
+        SMSManager.getInstance().setMetrics(null);
+        SMSManager.getInstance().setTransport(SMSCore.TRANSPORT);
+        SMSManager.getInstance().setLibrarySplitterEnabled(false);
+    }
+
+    @Test
+    public void snapshot_countsEveryEvent() {
+        recorder.onSend(2);
+        recorder.onSend(1);
+        recorder.onSent(SMSMessage.SentState.MESSAGE_SENT, 1000);
+        recorder.onSent(SMSMessage.SentState.ERROR_NO_SERVICE, 2000);
+        recorder.onDelivered(SMSMessage.DeliveredState.MESSAGE_DELIVERED, 3000);
+        recorder.onParse(true, 10);
+        recorder.onParse(false, 20);
+        recorder.onParse(false, 30);
+
+        SMSMetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        assertEquals(2, snapshot.getSendCount());
+        assertEquals(3, snapshot.getPartCount());
+        assertEquals(1, snapshot.getSentCount(SMSMessage.SentState.MESSAGE_SENT));
+        assertEquals(1, snapshot.getSentCount(SMSMessage.SentState.ERROR_NO_SERVICE));
+        assertEquals(0, snapshot.getSentCount(SMSMessage.SentState.ERROR_RADIO_OFF));
+        assertEquals(1, snapshot.getDeliveredCount(SMSMessage.DeliveredState.MESSAGE_DELIVERED));
+        assertEquals(1, snapshot.getParseHits());
+        assertEquals(2, snapshot.getParseMisses());
+        assertEquals(2, snapshot.getLatency(SMSMetricsRecorder.Stage.SENT).getCount());
+        assertEquals(2000, snapshot.getLatency(SMSMetricsRecorder.Stage.SENT).getMax());
+        assertEquals(1, snapshot.getLatency(SMSMetricsRecorder.Stage.DELIVERED).getCount());
+        assertEquals(3, snapshot.getLatency(SMSMetricsRecorder.Stage.PARSE).getCount());
+    }
+
+    @Test
+    public void snapshot_isNotChangedByLaterEvents() {
+        SMSMetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        recorder.onSend(1);
+        recorder.onParse(true, 10);
+        assertEquals(0, snapshot.getSendCount());
+        assertEquals(0, snapshot.getLatency(SMSMetricsRecorder.Stage.PARSE).getCount());
+    }
+
+    @Test
+    public void toMap_hasEveryValue() {
+        recorder.onSent(SMSMessage.SentState.ERROR_RADIO_OFF, 5);
+        Map<String, Long> values = recorder.snapshot().toMap();
+        assertEquals(Long.valueOf(1), values.get("sent.ERROR_RADIO_OFF"));
+        assertEquals(Long.valueOf(0), values.get("delivered.MESSAGE_DELIVERED"));
+        assertEquals(Long.valueOf(5), values.get("latency.SENT.p99"));
+        assertEquals(Long.valueOf(0), values.get("parse.hits"));
+        assertEquals(2 + SMSMessage.SentState.values().length + SMSMessage.DeliveredState.values().length
+                + 2 + SMSMetricsRecorder.Stage.values().length * 5, values.size());
+    }
+
+    @Test
+    public void sentReceiver_withoutListener_reportsToMetrics() {
+        SMSSentBroadcastReceiver receiver = new SMSSentBroadcastReceiver(VALID_MESSAGE, 2, null, recorder);
+        assertEquals(false, receiver.onPartReport(Activity.RESULT_OK));
+        assertEquals(0, recorder.snapshot().getSentCount(SMSMessage.SentState.MESSAGE_SENT));
+        assertTrue(receiver.onPartReport(Activity.RESULT_OK));
+        SMSMetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        assertEquals(1, snapshot.getSentCount(SMSMessage.SentState.MESSAGE_SENT));
+        assertEquals(1, snapshot.getLatency(SMSMetricsRecorder.Stage.SENT).getCount());
+    }
+
+    @Test
+    public void deliveredReceiver_error_reportsToMetrics() {
+        SMSDeliveredBroadcastReceiver receiver = new SMSDeliveredBroadcastReceiver(VALID_MESSAGE, 2, null, recorder);
+        assertTrue(receiver.onPartReport(Activity.RESULT_CANCELED));
+        SMSMetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        assertEquals(1, snapshot.getDeliveredCount(SMSMessage.DeliveredState.DELIVERY_ERROR));
+        assertEquals(1, snapshot.getLatency(SMSMetricsRecorder.Stage.DELIVERED).getCount());
+    }
+
+    @Test
+    public void parseMessage_countsHitsAndMisses() {
+        SMSManager.getInstance().setMetrics(recorder);
+        SMSMessageHandler handler = SMSMessageHandler.getInstance();
+        handler.parseMessage(VALID_PEER.getAddress(), handler.parseData(VALID_MESSAGE));
+        assertNull(handler.parseMessage(VALID_PEER.getAddress(), "Not sent with the library"));
+        assertNull(handler.parseMessage(VALID_PEER.getAddress(), ""));
+        SMSMetricsRecorder.Snapshot snapshot = recorder.snapshot();
+        assertEquals(1, snapshot.getParseHits());
+        assertEquals(2, snapshot.getParseMisses());
+        assertEquals(3, snapshot.getLatency(SMSMetricsRecorder.Stage.PARSE).getCount());
+    }
+
+    @Test
+    public void sendMessage_countsMessagesAndParts() {
+        SMSManager manager = SMSManager.getInstance();
+        manager.setTransport(new SMSTransport() {
+            @Override
+            public void sendMessages(ArrayList<String> parts, String phoneNumber,
+                                     ArrayList<PendingIntent> sentPIs, ArrayList<PendingIntent> deliveredPIs) {
+            }
+        });
+        manager.setLibrarySplitterEnabled(true);
+        manager.setMetrics(recorder);
+        String longText = new String(new char[SMSSegmentPlan.GSM_SINGLE_SEGMENT_SEPTETS]).replace('\0', 'a');
+        manager.sendMessage(VALID_MESSAGE);
+        manager.sendMessage(new SMSMessage(VALID_PEER, longText));
+        assertEquals(2, recorder.snapshot().getSendCount());
+        assertEquals(3, recorder.snapshot().getPartCount());
+    }
+}
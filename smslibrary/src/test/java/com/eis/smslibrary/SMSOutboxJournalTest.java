@@ -0,0 +1,224 @@
+package com.eis.smslibrary;
+
+import android.util.Log;
+
+import com.eis.smslibrary.listeners.SMSSentListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test class for SMSOutboxJournal, every test reopens the journal to check what survives a restart.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Log.class)
+public class SMSOutboxJournalTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final SMSMessage VALID_MESSAGE = new SMSMessage(VALID_PEER, "Some random text to send");
+    private static final SMSMessage OTHER_MESSAGE = new SMSMessage(VALID_PEER, "Some other text ¬ to send");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private SMSOutboxJournal journal;
+    private volatile boolean failWrites;
+
+    @Before
+    public void setup() throws Exception {
+        PowerMockito.mockStatic(Log.class);
+        directory = folder.newFolder();
+        journal = new SMSOutboxJournal(directory);
+    }
+
+    @After
+    public void tearDown() {
+        journal.close();
+    }
+
+    private SMSOutboxJournal reopen() throws Exception {
+        journal.close();
+        journal = new SMSOutboxJournal(directory);
+        return journal;
+    }
+
+    @Test
+    public void enqueued_survivesRestart() throws Exception {
+        long id = journal.recordEnqueued(VALID_MESSAGE);
+        journal.recordEnqueued(OTHER_MESSAGE);
+        List<SMSOutboxJournal.Entry> unfinished = reopen().getUnfinished();
+        assertEquals(2, unfinished.size());
+        assertEquals(id, unfinished.get(0).getId());
+        assertEquals(VALID_PEER.getAddress(), unfinished.get(0).getPeerAddress());
+        assertEquals(VALID_MESSAGE.getData(), unfinished.get(0).getText());
+        assertEquals(OTHER_MESSAGE.getData(), unfinished.get(1).getText());
+    }
+
+    @Test
+    public void completed_isNotReplayed() throws Exception {
+        long id = journal.recordEnqueued(VALID_MESSAGE);
+        journal.recordCompleted(id);
+        assertTrue(reopen().getUnfinished().isEmpty());
+    }
+
+    @Test
+    public void partSent_isRecorded() throws Exception {
+        long id = journal.recordEnqueued(VALID_MESSAGE);
+        journal.recordPartSent(id, 2);
+        assertEquals(2, reopen().getUnfinished().get(0).getSentParts());
+    }
+
+    @Test
+    public void newIds_afterRestart_areNotReused() throws Exception {
+        long id = journal.recordEnqueued(VALID_MESSAGE);
+        journal.recordCompleted(id);
+        assertTrue(reopen().recordEnqueued(OTHER_MESSAGE) > id);
+    }
+
+    @Test
+    public void tornRecord_isDropped_andLogStaysWritable() throws Exception {
+        journal.recordEnqueued(VALID_MESSAGE);
+        journal.close();
+        File log = new File(directory, SMSOutboxJournal.LOG_FILE_NAME);
+        FileOutputStream append = new FileOutputStream(log, true);
+        append.write(new byte[]{0, 0, 0, 40, 1, 2});
+        append.close();
+        journal = new SMSOutboxJournal(directory);
+        assertEquals(1, journal.getUnfinished().size());
+        journal.recordEnqueued(OTHER_MESSAGE);
+        assertEquals(2, reopen().getUnfinished().size());
+    }
+
+    @Test
+    public void corruptedRecord_endsLog() throws Exception {
+        journal.recordEnqueued(VALID_MESSAGE);
+        long firstRecordEnd = journal.getLogBytes();
+        journal.recordEnqueued(OTHER_MESSAGE);
+        journal.close();
+        RandomAccessFile log = new RandomAccessFile(new File(directory, SMSOutboxJournal.LOG_FILE_NAME), "rw");
+        log.seek(firstRecordEnd + 20);
+        log.write(0xFF);
+        log.close();
+        journal = new SMSOutboxJournal(directory);
+        assertEquals(1, journal.getUnfinished().size());
+    }
+
+    @Test
+    public void completedMessages_areCompacted() throws Exception {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            longText.append('a');
+        SMSMessage longMessage = new SMSMessage(VALID_PEER, longText.toString());
+        long keptId = journal.recordEnqueued(VALID_MESSAGE);
+        for (int i = 0; i < 100; i++)
+            journal.recordCompleted(journal.recordEnqueued(longMessage));
+        journal.flush();
+        assertTrue(journal.getLogBytes() < 64 * 1024);
+        List<SMSOutboxJournal.Entry> unfinished = reopen().getUnfinished();
+        assertEquals(1, unfinished.size());
+        assertEquals(keptId, unfinished.get(0).getId());
+    }
+
+    @Test
+    public void track_recordsPartsAndCompletion() throws Exception {
+        long id = journal.recordEnqueued(VALID_MESSAGE);
+        SMSSentListener listenerMock = mock(SMSSentListener.class);
+        SMSPartSentListener tracked = (SMSPartSentListener) journal.track(id, listenerMock);
+        tracked.onPartSent(VALID_MESSAGE, 1);
+        journal.flush();
+        assertEquals(1, journal.getUnfinished().get(0).getSentParts());
+        tracked.onSMSSent(VALID_MESSAGE, SMSMessage.SentState.ERROR_NO_SERVICE);
+        verify(listenerMock).onSMSSent(VALID_MESSAGE, SMSMessage.SentState.ERROR_NO_SERVICE);
+        assertTrue(reopen().getUnfinished().isEmpty());
+    }
+
+    @Test
+    public void failedWrite_isNotDurable_andWrittenAgainWithoutTornRecord() throws Exception {
+        journal.close();
+        journal = new SMSOutboxJournal(directory) {
+            @Override
+            FileOutputStream openLog(File file) throws IOException {
+                return new FileOutputStream(file, true) {
+                    @Override
+                    public void write(byte[] bytes) throws IOException {
+                        if (failWrites) {
+                            // Leaves half a record behind, as a full disk would
+                            super.write(bytes, 0, bytes.length / 2);
+                            throw new IOException("Disk full");
+                        }
+                        super.write(bytes);
+                    }
+                };
+            }
+        };
+        journal.recordEnqueued(VALID_MESSAGE);
+        long durableBytes = journal.getLogBytes();
+
+        failWrites = true;
+        journal.submitEnqueued(OTHER_MESSAGE);
+        assertFalse(journal.flush());
+        assertEquals(durableBytes, journal.getLogBytes());
+        assertEquals(durableBytes, new File(directory, SMSOutboxJournal.LOG_FILE_NAME).length());
+        assertEquals(1, journal.getUnfinished().size());
+
+        failWrites = false;
+        journal.submitEnqueued(VALID_MESSAGE);
+        assertTrue(journal.flush());
+        List<SMSOutboxJournal.Entry> unfinished = reopen().getUnfinished();
+        assertEquals(3, unfinished.size());
+        assertEquals(OTHER_MESSAGE.getData(), unfinished.get(1).getText());
+    }
+
+    @Test
+    public void failedWrite_beforeRestart_keepsAcknowledgedRecords() throws Exception {
+        journal.close();
+        journal = new SMSOutboxJournal(directory) {
+            @Override
+            FileOutputStream openLog(File file) throws IOException {
+                if (failWrites)
+                    throw new IOException("Can't open");
+                return new FileOutputStream(file, true) {
+                    @Override
+                    public void write(byte[] bytes) throws IOException {
+                        if (failWrites) {
+                            super.write(bytes, 0, bytes.length / 2);
+                            throw new IOException("Disk full");
+                        }
+                        super.write(bytes);
+                    }
+                };
+            }
+        };
+        journal.recordEnqueued(VALID_MESSAGE);
+        failWrites = true;
+        journal.submitEnqueued(OTHER_MESSAGE);
+        assertFalse(journal.flush());
+        // The log can't even be opened again for a while
+        journal.submitEnqueued(OTHER_MESSAGE);
+        assertFalse(journal.flush());
+        failWrites = false;
+        journal.recordEnqueued(VALID_MESSAGE);
+        assertTrue(journal.flush());
+        assertEquals(4, reopen().getUnfinished().size());
+    }
+}
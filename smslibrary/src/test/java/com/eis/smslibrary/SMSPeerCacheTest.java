@@ -0,0 +1,60 @@
+package com.eis.smslibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSPeerCache.
+ */
+public class SMSPeerCacheTest {
+
+    private static final int CAPACITY = 64;
+    private static final String VALID_ADDR = "+393423541601";
+    private static final SMSPeer VALID_PEER = new SMSPeer(VALID_ADDR);
+
+    private final SMSPeerCache cache = new SMSPeerCache(CAPACITY);
+
+    @Test
+    public void get_afterPut_isHit() {
+        cache.put(VALID_ADDR, VALID_PEER);
+        assertSame(VALID_PEER, cache.get(VALID_ADDR));
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void get_otherNumber_isMiss() {
+        cache.put(VALID_ADDR, VALID_PEER);
+        assertNull(cache.get(VALID_ADDR + "1"));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void put_overCapacity_isBounded() {
+        for (int i = 0; i < CAPACITY * 10; i++)
+            cache.put(String.valueOf(i), VALID_PEER);
+        assertTrue(cache.size() <= CAPACITY);
+    }
+
+    @Test
+    public void put_overCapacity_keepsRecentlyUsed() {
+        cache.put(VALID_ADDR, VALID_PEER);
+        for (int i = 0; i < CAPACITY * 10; i++) {
+            cache.put(String.valueOf(i), VALID_PEER);
+            cache.get(VALID_ADDR);
+        }
+        assertSame(VALID_PEER, cache.get(VALID_ADDR));
+    }
+
+    @Test
+    public void clear_removesEveryPeer() {
+        cache.put(VALID_ADDR, VALID_PEER);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(VALID_ADDR));
+    }
+}
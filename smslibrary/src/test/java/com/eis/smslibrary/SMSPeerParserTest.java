@@ -0,0 +1,81 @@
+package com.eis.smslibrary;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for SMSPeerParser.
+ */
+public class SMSPeerParserTest {
+
+    private static final String IT_ADDR = "3401234567";
+    private static final String IT_ADDR_WITH_PREFIX = "+39" + IT_ADDR;
+    private static final String GB_ADDR = "07911 123456";
+    private static final String GB_ADDR_WITH_PREFIX = "+447911123456";
+    private static final int ITERATIONS = 2000;
+
+    private final SMSPeerParser italianParser = SMSPeerParser.forRegion("IT");
+    private final SMSPeerParser britishParser = SMSPeerParser.forRegion("GB");
+
+    /**
+     * Parses the same number many times.
+     *
+     * @return the address of the last peer, if all of them had the expected address.
+     */
+    private static Callable<String> parseRepeatedly(final SMSPeerParser parser, final String number,
+                                                    final String expectedAddress) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                String address = null;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    address = parser.parse(number).getAddress();
+                    if (!expectedAddress.equals(address))
+                        return address;
+                }
+                return address;
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void forRegion_invalidCode_throws() {
+        SMSPeerParser.forRegion("XX");
+    }
+
+    @Test
+    public void parse_usesParserRegion() {
+        assertEquals(IT_ADDR_WITH_PREFIX, italianParser.parse(IT_ADDR).getAddress());
+        assertEquals(GB_ADDR_WITH_PREFIX, britishParser.parse(GB_ADDR).getAddress());
+        assertNull(britishParser.parse(GB_ADDR).getInvalidityReason());
+    }
+
+    @Test
+    public void parse_cachesPerParser() {
+        italianParser.parse(IT_ADDR);
+        italianParser.parse(IT_ADDR);
+        assertEquals(1, italianParser.getCacheHitCount());
+        assertEquals(1, italianParser.getCacheMissCount());
+        assertEquals(0, britishParser.getCacheHitCount());
+    }
+
+    @Test
+    public void parse_manyRegionsConcurrently_doesNotMixRegions() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> italian = executor.submit(parseRepeatedly(italianParser, IT_ADDR, IT_ADDR_WITH_PREFIX));
+            Future<String> british = executor.submit(parseRepeatedly(britishParser, GB_ADDR, GB_ADDR_WITH_PREFIX));
+            assertEquals(IT_ADDR_WITH_PREFIX, italian.get());
+            assertEquals(GB_ADDR_WITH_PREFIX, british.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
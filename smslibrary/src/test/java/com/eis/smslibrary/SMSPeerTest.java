@@ -5,11 +5,15 @@ import com.google.i18n.phonenumbers.PhoneNumberUtil;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.powermock.reflect.Whitebox;
 
+import java.util.HashMap;
 import java.util.Random;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -134,4 +138,109 @@ public class SMSPeerTest {
         assertEquals(new SMSPeer(EMULATOR_ADDR).hashCode(), new SMSPeer(EMULATOR_ADDR_WITH_EXT).hashCode());
         assertEquals(new SMSPeer(EMULATOR_ADDR).hashCode(), new SMSPeer(EMULATOR_ADDR_WITH_PREFIX_AND_EXT).hashCode());
     }
+
+    @Test
+    public void samePeer_twice_isTakenFromCache() {
+        new SMSPeer(HIGHER_VALID_ADDR);
+        long hits = SMSPeer.getCacheHitCount();
+        long misses = SMSPeer.getCacheMissCount();
+        SMSPeer cached = new SMSPeer(HIGHER_VALID_ADDR);
+        assertEquals(hits + 1, SMSPeer.getCacheHitCount());
+        assertEquals(misses, SMSPeer.getCacheMissCount());
+        assertEquals("+39" + HIGHER_VALID_ADDR, cached.getAddress());
+    }
+
+    @Test
+    public void invalidPeer_fromCache_keepsInvalidityReason() {
+        new SMSPeer(SHORT_ADDR);
+        assertEquals(InvalidTelephoneNumberException.Type.INVALID_NUMBER, new SMSPeer(SHORT_ADDR).getInvalidityReason());
+    }
+
+    @Test
+    public void setDefaultRegion_newRegion_invalidatesCache() {
+        new SMSPeer(VALID_ADDR);
+        try {
+            SMSPeer.setDefaultRegion("US");
+            long misses = SMSPeer.getCacheMissCount();
+            new SMSPeer(VALID_ADDR);
+            assertEquals(misses + 1, SMSPeer.getCacheMissCount());
+        } finally {
+            SMSPeer.setDefaultRegion("IT");
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setDefaultRegion_invalidUnchangedRegion_throws() {
+        // As when the default locale has no country
+        Whitebox.setInternalState(SMSPeer.class, "defaultParser", new SMSPeerParser(""));
+        try {
+            SMSPeer.setDefaultRegion("");
+        } finally {
+            SMSPeer.setDefaultRegion("IT");
+        }
+    }
+
+    @Test
+    public void e164Peer_repeatedSender_hitsCache() {
+        SMSPeerParser parser = SMSPeerParser.forRegion("IT");
+        assertEquals(VALID_ADDR_WITH_PREFIX, parser.parse(VALID_ADDR_WITH_PREFIX).getAddress());
+        long hits = parser.getCacheHitCount();
+        SMSPeer repeated = parser.parse(VALID_ADDR_WITH_PREFIX);
+        assertEquals(hits + 1, parser.getCacheHitCount());
+        assertEquals(VALID_ADDR_WITH_PREFIX, repeated.getAddress());
+        assertNull(repeated.getInvalidityReason());
+    }
+
+    @Test
+    public void e164Peer_isValidatedInParserRegion() {
+        SMSPeer peer = SMSPeerParser.forRegion("FR").parse("+39" + SHORT_ADDR);
+        assertEquals(InvalidTelephoneNumberException.Type.INVALID_NUMBER, peer.getInvalidityReason());
+        assertTrue(peer.getInvalidityMessage().contains("(FR)"));
+    }
+
+    @Test
+    public void e164Peer_isValidatedLazily() {
+        assertNull(new SMSPeer(VALID_ADDR_WITH_PREFIX).getInvalidityReason());
+        String invalidAddress = "+39" + SHORT_ADDR;
+        SMSPeer invalidPeer = new SMSPeer(invalidAddress);
+        assertEquals(invalidAddress, invalidPeer.getAddress());
+        assertEquals(InvalidTelephoneNumberException.Type.INVALID_NUMBER, invalidPeer.getInvalidityReason());
+        assertTrue(invalidPeer.getInvalidityMessage().contains(invalidAddress));
+    }
+
+    @Test
+    public void e164EmulatorPeer_isValid() {
+        assertNull(new SMSPeer(EMULATOR_ADDR_WITH_PREFIX_AND_EXT).getInvalidityReason());
+    }
+
+    @Test
+    public void isE164_onlyAcceptsNormalizedNumbers() {
+        assertTrue(SMSPeer.isE164(VALID_ADDR_WITH_PREFIX));
+        assertFalse(SMSPeer.isE164(VALID_ADDR));
+        assertFalse(SMSPeer.isE164(VALID_ADDR_WITH_PREFIX_AND_SPACES));
+        assertFalse(SMSPeer.isE164(VALID_ADDR_WITH_PREFIX_AND_DASHES));
+        assertFalse(SMSPeer.isE164("+0" + VALID_ADDR));
+        assertFalse(SMSPeer.isE164("+" + LONG_ADDR + "12"));
+        assertFalse(SMSPeer.isE164(EMPTY_ADDR));
+    }
+
+    @Test
+    public void e164ShapedPeer_withTrunkPrefix_isNormalized() {
+        SMSPeer withTrunkPrefix = new SMSPeer("+4402071234567");
+        SMSPeer canonical = new SMSPeer("+442071234567");
+        SMSPeer withSpaces = new SMSPeer("+44 020 7123 4567");
+        assertEquals(canonical, withTrunkPrefix);
+        assertEquals(withSpaces, withTrunkPrefix);
+        assertEquals(canonical.hashCode(), withTrunkPrefix.hashCode());
+        assertEquals(0, withTrunkPrefix.compareTo(withSpaces));
+        assertEquals("+442071234567", withTrunkPrefix.getAddress());
+        assertNull(withTrunkPrefix.getInvalidityReason());
+    }
+
+    @Test
+    public void e164ShapedPeer_asMapKey_matchesOtherForms() {
+        HashMap<SMSPeer, String> peers = new HashMap<>();
+        peers.put(new SMSPeer("+44 020 7123 4567"), "London");
+        assertEquals("London", peers.get(new SMSPeer("+4402071234567")));
+    }
 }
@@ -0,0 +1,89 @@
+package com.eis.smslibrary;
+
+import com.eis.smslibrary.exceptions.InvalidTelephoneNumberException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for SMSPeerValidator.
+ */
+public class SMSPeerValidatorTest {
+
+    private static final String VALID_ADDR = "3401234567";
+    private static final String VALID_ADDR_WITH_PREFIX = "+39" + VALID_ADDR;
+    private static final String VALID_ADDR_WITH_SPACES = "+39 340 1234567";
+    private static final String OTHER_VALID_ADDR = "+393423541601";
+    private static final String SHORT_ADDR = "340123";
+    private static final String NOT_PARSABLE_ADDR = "not a number";
+
+    @BeforeClass
+    public static void setup() {
+        SMSPeer.setDefaultRegion("IT");
+    }
+
+    /**
+     * Generates distinct valid Italian mobile numbers, so that none of them is cached.
+     */
+    private static List<String> randomNumbers(int count, Random random) {
+        List<String> numbers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            numbers.add(String.format("+39340%07d", random.nextInt(10000000)));
+        return numbers;
+    }
+
+    @Test
+    public void validate_mixedList_groupsResults() throws Exception {
+        SMSPeerValidation validation = SMSPeerValidator.validate(Arrays.asList(VALID_ADDR, SHORT_ADDR,
+                VALID_ADDR_WITH_PREFIX, OTHER_VALID_ADDR, NOT_PARSABLE_ADDR, VALID_ADDR_WITH_SPACES));
+        assertEquals(Arrays.asList(new SMSPeer(VALID_ADDR_WITH_PREFIX), new SMSPeer(OTHER_VALID_ADDR)),
+                validation.getValidPeers());
+        assertEquals(2, validation.getDuplicateCount());
+        assertEquals(2, validation.getRejectedCount());
+        assertEquals(Arrays.asList(SHORT_ADDR),
+                validation.getRejectedNumbers(InvalidTelephoneNumberException.Type.INVALID_NUMBER));
+        assertEquals(Arrays.asList(NOT_PARSABLE_ADDR),
+                validation.getRejectedNumbers(InvalidTelephoneNumberException.Type.NOT_PARSABLE_NUMBER));
+        assertEquals(0, validation.getRejectedCount(InvalidTelephoneNumberException.Type.REGION_NEEDED));
+    }
+
+    @Test
+    public void validate_emptyList_isEmpty() throws Exception {
+        SMSPeerValidation validation = SMSPeerValidator.validate(new ArrayList<String>());
+        assertEquals(0, validation.getValidPeers().size());
+        assertEquals(0, validation.getRejectedCount());
+    }
+
+    @Test
+    public void validate_manyChunks_keepsOrder() throws Exception {
+        List<String> numbers = randomNumbers(5000, new Random(42));
+        List<SMSPeer> validPeers = SMSPeerValidator.validate(numbers).getValidPeers();
+        assertEquals(numbers.get(0), validPeers.get(0).getAddress());
+        assertEquals(numbers.get(numbers.size() - 1), validPeers.get(validPeers.size() - 1).getAddress());
+    }
+
+    @Test
+    public void validate_singleThread_matchesParallel() throws Exception {
+        List<String> numbers = randomNumbers(20000, new Random(7));
+        numbers.addAll(Arrays.asList(SHORT_ADDR, NOT_PARSABLE_ADDR, numbers.get(0)));
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            SMSPeerValidation single = SMSPeerValidator.validate(numbers, singleThread, 1);
+            SMSPeerValidation parallel = SMSPeerValidator.validate(numbers);
+            assertEquals(single.getValidPeers(), parallel.getValidPeers());
+            assertEquals(single.getDuplicateCount(), parallel.getDuplicateCount());
+            assertEquals(2, parallel.getRejectedCount());
+        } finally {
+            singleThread.shutdown();
+        }
+    }
+}
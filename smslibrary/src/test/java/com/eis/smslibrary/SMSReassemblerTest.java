@@ -0,0 +1,169 @@
+package com.eis.smslibrary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSFragmenter and SMSReassembler.
+ */
+public class SMSReassemblerTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final SMSPeer OTHER_PEER = new SMSPeer("+393423541602");
+    private static final long TTL_MILLIS = 1000;
+    private static final long NOW = 0;
+
+    private final SMSReassembler reassembler = new SMSReassembler(10, 100000, TTL_MILLIS);
+
+    private static String longData(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        Random random = new Random(length);
+        for (int i = 0; i < length; i++)
+            builder.append((char) ('a' + random.nextInt(26)));
+        return builder.toString();
+    }
+
+    @Test
+    public void split_beyondMaxMessageLength_fitsMessages() {
+        String data = longData(SMSMessage.MAX_MSG_TEXT_LEN + 1000);
+        List<SMSMessage> fragments = SMSFragmenter.split(VALID_PEER, data);
+        assertEquals((data.length() + SMSFragmenter.DEFAULT_FRAGMENT_LENGTH - 1) / SMSFragmenter.DEFAULT_FRAGMENT_LENGTH, fragments.size());
+        for (SMSMessage fragment : fragments) {
+            assertTrue(SMSFragmenter.isFragment(fragment));
+            assertEquals(1, SMSSegmentPlan.of("\r" + fragment.getData()).getSegmentCount());
+        }
+    }
+
+    @Test
+    public void split_neverBreaksSurrogatePairs() {
+        List<SMSMessage> fragments = SMSFragmenter.split(VALID_PEER, "a😀b😀", 2);
+        assertEquals(4, fragments.size());
+        assertEquals("a", fragments.get(0).getData().substring(SMSFragmenter.HEADER_LENGTH));
+        assertEquals("😀", fragments.get(1).getData().substring(SMSFragmenter.HEADER_LENGTH));
+        assertEquals("b", fragments.get(2).getData().substring(SMSFragmenter.HEADER_LENGTH));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void split_tooManyFragments_throws() {
+        SMSFragmenter.split(VALID_PEER, longData(SMSFragmenter.MAX_FRAGMENTS * 2 + 1), 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void split_exactlyMaxFragments_throws() {
+        SMSFragmenter.split(VALID_PEER, longData(SMSFragmenter.MAX_FRAGMENTS * 2), 2);
+    }
+
+    @Test
+    public void split_oneFragmentBelowMax_reassembles() {
+        String data = longData((SMSFragmenter.MAX_FRAGMENTS - 1) * 2);
+        List<SMSMessage> fragments = SMSFragmenter.split(VALID_PEER, data, 2);
+        assertEquals(SMSFragmenter.MAX_FRAGMENTS - 1, fragments.size());
+        String result = null;
+        for (SMSMessage fragment : fragments)
+            result = reassembler.offer(fragment, NOW);
+        assertEquals(data, result);
+    }
+
+    @Test
+    public void offer_outOfOrderWithDuplicates_reassembles() {
+        String data = longData(SMSMessage.MAX_MSG_TEXT_LEN * 2);
+        List<SMSMessage> fragments = new ArrayList<>(SMSFragmenter.split(VALID_PEER, data));
+        fragments.add(fragments.get(3));
+        fragments.add(fragments.get(0));
+        Collections.shuffle(fragments, new Random(1));
+        // Duplicates shuffled after the last missing fragment would start a new transfer
+        String result = null;
+        int offered = 0;
+        for (SMSMessage fragment : fragments) {
+            String whole = reassembler.offer(fragment, NOW);
+            offered++;
+            if (whole != null) {
+                result = whole;
+                break;
+            }
+        }
+        assertEquals(data, result);
+        assertEquals(offered - SMSFragmenter.split(VALID_PEER, data).size(), reassembler.getDuplicateFragments());
+        assertEquals(0, reassembler.getBufferedChars());
+    }
+
+    @Test
+    public void offer_samePeerTwoTransfers_keptApart() {
+        List<SMSMessage> first = SMSFragmenter.split(VALID_PEER, "first transfer", 5);
+        List<SMSMessage> second = SMSFragmenter.split(VALID_PEER, "second transfer", 5);
+        for (int i = 0; i < first.size() - 1; i++)
+            assertNull(reassembler.offer(first.get(i), NOW));
+        for (int i = 0; i < second.size() - 1; i++)
+            assertNull(reassembler.offer(second.get(i), NOW));
+        assertEquals(2, reassembler.getPendingTransfers());
+        assertEquals("second transfer", reassembler.offer(second.get(second.size() - 1), NOW));
+        assertEquals("first transfer", reassembler.offer(first.get(first.size() - 1), NOW));
+    }
+
+    @Test
+    public void offer_sameTransferIdOtherPeer_keptApart() {
+        List<SMSMessage> fragments = SMSFragmenter.split(VALID_PEER, "some data", 5);
+        assertNull(reassembler.offer(fragments.get(0), NOW));
+        assertNull(reassembler.offer(new SMSMessage(OTHER_PEER, fragments.get(1).getData()), NOW));
+        assertEquals(2, reassembler.getPendingTransfers());
+    }
+
+    @Test
+    public void offer_afterTtl_evictsStaleTransfer() {
+        List<SMSMessage> fragments = SMSFragmenter.split(VALID_PEER, "some data", 5);
+        assertNull(reassembler.offer(fragments.get(0), NOW));
+        long later = NOW + TimeUnit.MILLISECONDS.toNanos(TTL_MILLIS);
+        assertNull(reassembler.offer(fragments.get(1), later));
+        assertEquals(1, reassembler.getEvictedTransfers());
+        assertEquals(1, reassembler.getPendingTransfers());
+    }
+
+    @Test
+    public void offer_overLimits_evictsLeastRecentlyActive() {
+        SMSReassembler small = new SMSReassembler(2, 100000, TTL_MILLIS);
+        List<SMSMessage> first = SMSFragmenter.split(VALID_PEER, "first transfer", 5);
+        List<SMSMessage> second = SMSFragmenter.split(VALID_PEER, "second transfer", 5);
+        List<SMSMessage> third = SMSFragmenter.split(VALID_PEER, "third transfer", 5);
+        small.offer(first.get(0), NOW);
+        small.offer(second.get(0), NOW);
+        small.offer(first.get(1), NOW);
+        small.offer(third.get(0), NOW);
+        assertEquals(2, small.getPendingTransfers());
+        assertEquals(1, small.getEvictedTransfers());
+        for (int i = 1; i < second.size(); i++)
+            assertNull(small.offer(second.get(i), NOW));
+    }
+
+    @Test
+    public void offer_overBufferedChars_evicts() {
+        SMSReassembler small = new SMSReassembler(10, 8, TTL_MILLIS);
+        List<SMSMessage> fragments = SMSFragmenter.split(VALID_PEER, "some longer data", 5);
+        small.offer(fragments.get(0), NOW);
+        small.offer(fragments.get(1), NOW);
+        assertEquals(0, small.getPendingTransfers());
+        assertEquals(0, small.getBufferedChars());
+    }
+
+    @Test
+    public void offer_singleFragment_returnsData() {
+        assertEquals("short", reassembler.offer(SMSFragmenter.split(VALID_PEER, "short").get(0), NOW));
+    }
+
+    @Test
+    public void offer_notAFragment_countedAsMalformed() {
+        assertNull(reassembler.offer(new SMSMessage(VALID_PEER, "plain text"), NOW));
+        assertNull(reassembler.offer(new SMSMessage(VALID_PEER, SMSFragmenter.FRAGMENT_MARKER + "  x0010"), NOW));
+        assertEquals(2, reassembler.getMalformedFragments());
+        assertFalse(SMSFragmenter.isFragment(new SMSMessage(VALID_PEER, "plain text")));
+    }
+}
@@ -0,0 +1,187 @@
+package com.eis.smslibrary;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for SMSReceivedBatcher.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Log.class)
+public class SMSReceivedBatcherTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+    private static final long LONG_WINDOW_MILLIS = SMSReceivedBatcher.MAX_WINDOW_MILLIS;
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+
+    private final Context context = mock(Context.class);
+    private final SMSTimerWheel wheel = new SMSTimerWheel(1, 8);
+    private final Recorder recorder = new Recorder();
+    private final SMSReceivedSpool spool = new SMSReceivedSpool();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws Exception {
+        PowerMockito.mockStatic(Log.class);
+        when(context.getFilesDir()).thenReturn(folder.newFolder());
+    }
+
+    private static SMSMessage message(int i) {
+        return new SMSMessage(VALID_PEER, "message " + i);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_zeroMessages_throws() {
+        new SMSReceivedBatcher(0, 10, recorder, wheel);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_windowTooLong_throws() {
+        new SMSReceivedBatcher(10, SMSReceivedBatcher.MAX_WINDOW_MILLIS + 1, recorder, wheel);
+    }
+
+    @Test
+    public void add_upToMax_flushesRightAway() {
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(3, LONG_WINDOW_MILLIS, recorder, wheel);
+        for (int i = 0; i < 7; i++)
+            batcher.add(context, message(i));
+        assertEquals(2, recorder.batches.size());
+        assertEquals(3, recorder.batches.get(0).size());
+        assertEquals(message(3), recorder.batches.get(1).get(0));
+        assertEquals(1, batcher.getBufferedCount());
+    }
+
+    @Test
+    public void add_belowMax_flushesOnDeadline() throws Exception {
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(100, 20, recorder, wheel);
+        long start = System.nanoTime();
+        batcher.add(context, message(0));
+        batcher.add(context, message(1));
+        assertTrue(recorder.delivered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1, recorder.batches.size());
+        assertEquals(2, recorder.batches.get(0).size());
+        assertEquals(0, batcher.getBufferedCount());
+    }
+
+    @Test
+    public void deadlineOfFlushedBatch_doesNotFlushNextOne() throws Exception {
+        SMSTimerWheel manualWheel = mock(SMSTimerWheel.class);
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(100, LONG_WINDOW_MILLIS, recorder, manualWheel);
+        batcher.add(context, message(0));
+        batcher.flush();
+        batcher.add(context, message(1));
+        ArgumentCaptor<Runnable> deadlines = ArgumentCaptor.forClass(Runnable.class);
+        verify(manualWheel, times(2)).schedule(deadlines.capture(), anyLong());
+        deadlines.getAllValues().get(0).run();
+        assertEquals(1, recorder.batches.size());
+        assertEquals(1, batcher.getBufferedCount());
+        deadlines.getAllValues().get(1).run();
+        assertEquals(2, recorder.batches.size());
+    }
+
+    @Test
+    public void flush_deletesSpooledBatch() {
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(100, LONG_WINDOW_MILLIS, recorder, wheel, spool);
+        batcher.add(context, message(0));
+        batcher.add(context, message(1));
+        // What a process dying now would leave
+        SMSReceivedSpool nextProcess = new SMSReceivedSpool();
+        long[] leftovers = nextProcess.takeLeftovers(context);
+        assertEquals(1, leftovers.length);
+        assertEquals(Arrays.asList(message(0), message(1)), nextProcess.read(context, leftovers[0]));
+        batcher.flush();
+        assertEquals(0, new SMSReceivedSpool().takeLeftovers(context).length);
+    }
+
+    @Test
+    public void deliverLeftovers_afterProcessDeath_deliversThemOnce() {
+        SMSReceivedSpool deadProcess = new SMSReceivedSpool();
+        SMSReceivedSpool.Writer writer = deadProcess.open(context);
+        writer.append(SMSReceivedSpool.toRecord(message(0)));
+        writer.close();
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(100, LONG_WINDOW_MILLIS, recorder, wheel, spool);
+        batcher.deliverLeftovers(context);
+        assertEquals(1, recorder.batches.size());
+        assertEquals(Collections.singletonList(message(0)), recorder.batches.get(0));
+        batcher.add(context, message(1));
+        batcher.deliverLeftovers(context);
+        assertEquals(1, recorder.batches.size());
+        batcher.flush();
+        assertEquals(Collections.singletonList(message(1)), recorder.batches.get(1));
+        assertEquals(0, new SMSReceivedSpool().takeLeftovers(context).length);
+    }
+
+    @Test
+    public void add_spoolFails_deliversRightAway() throws Exception {
+        when(context.getFilesDir()).thenReturn(folder.newFile());
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(100, LONG_WINDOW_MILLIS, recorder, wheel, spool);
+        batcher.add(context, message(0));
+        assertEquals(1, recorder.batches.size());
+        assertEquals(0, batcher.getBufferedCount());
+    }
+
+    @Test
+    public void listenerThrows_keepsSpooledBatch() {
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(1, LONG_WINDOW_MILLIS,
+                new SMSReceivedBatcher.BatchListener() {
+                    @Override
+                    public void onBatch(@NonNull Context context, @NonNull ArrayList<SMSMessage> messages) {
+                        throw new IllegalStateException();
+                    }
+                }, wheel, spool);
+        try {
+            batcher.add(context, message(0));
+        } catch (IllegalStateException expected) {
+            // The next process delivers it
+        }
+        assertEquals(1, new SMSReceivedSpool().takeLeftovers(context).length);
+    }
+
+    @Test
+    public void flush_empty_deliversNothing() {
+        new SMSReceivedBatcher(100, LONG_WINDOW_MILLIS, recorder, wheel).flush();
+        assertEquals(0, recorder.batches.size());
+    }
+
+    private static class Recorder implements SMSReceivedBatcher.BatchListener {
+        private final List<ArrayList<SMSMessage>> batches = new CopyOnWriteArrayList<>();
+        private final CountDownLatch delivered = new CountDownLatch(1);
+
+        @Override
+        public void onBatch(@NonNull Context context, @NonNull ArrayList<SMSMessage> messages) {
+            batches.add(messages);
+            delivered.countDown();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.eis.smslibrary;
+
+import android.content.Context;
+import android.content.Intent;
+import android.telephony.SmsMessage;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smslibrary.listeners.SMSReceivedListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import it.lucacrema.preferences.PreferencesManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Test class for SMSReceivedBroadcastReceiver. Android stubs throw on
+ * {@link android.content.BroadcastReceiver#goAsync()}, so these tests also check that the
+ * broadcast is never held.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({SmsMessage.class, PreferencesManager.class, Log.class})
+public class SMSReceivedBroadcastReceiverTest {
+
+    private static final String VALID_ADDR = "+393423541601";
+    private static final SMSMessage VALID_MESSAGE = new SMSMessage(new SMSPeer(VALID_ADDR), "Some random text");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Context context = mock(Context.class);
+    private final Intent intent = mock(Intent.class);
+    private final List<ArrayList<SMSMessage>> batches = new CopyOnWriteArrayList<>();
+    private final SMSReceivedBatcher.BatchListener recorder = new SMSReceivedBatcher.BatchListener() {
+        @Override
+        public void onBatch(@NonNull Context context, @NonNull ArrayList<SMSMessage> messages) {
+            batches.add(messages);
+        }
+    };
+
+    @Before
+    public void setup() throws Exception {
+        PowerMockito.mockStatic(SmsMessage.class, PreferencesManager.class, Log.class);
+        SMSReceivedListenerRegistry.reset();
+        when(PreferencesManager.getString(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY))
+                .thenReturn(SMSReceivedListenerRegistryTest.TestService.class.getName());
+        when(context.getApplicationContext()).thenReturn(context);
+        when(context.getFilesDir()).thenReturn(folder.newFolder());
+        SmsMessage pdu = mock(SmsMessage.class);
+        when(pdu.getDisplayOriginatingAddress()).thenReturn(VALID_ADDR);
+        when(pdu.getDisplayMessageBody()).thenReturn(SMSMessageHandler.getInstance().parseData(VALID_MESSAGE));
+        when(SmsMessage.createFromPdu(any(byte[].class))).thenReturn(pdu);
+        when(intent.getSerializableExtra("pdus")).thenReturn(new Object[]{new byte[0]});
+    }
+
+    @After
+    public void tearDown() {
+        SMSReceivedBroadcastReceiver.setBatcher(null);
+        SMSReceivedListenerRegistry.reset();
+    }
+
+    @Test
+    public void onReceive_batching_spoolsMessageWithoutHoldingBroadcast() {
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(10, SMSReceivedBatcher.MAX_WINDOW_MILLIS,
+                recorder, new SMSTimerWheel(1, 8), new SMSReceivedSpool());
+        SMSReceivedBroadcastReceiver.setBatcher(batcher);
+        new SMSReceivedBroadcastReceiver().onReceive(context, intent);
+        assertEquals(1, batcher.getBufferedCount());
+        // The message survives the process dying before the batch is delivered
+        SMSReceivedSpool nextProcess = new SMSReceivedSpool();
+        long[] leftovers = nextProcess.takeLeftovers(context);
+        assertEquals(1, leftovers.length);
+        assertEquals(Collections.singletonList(VALID_MESSAGE), nextProcess.read(context, leftovers[0]));
+    }
+
+    @Test
+    public void onReceive_liveExecutorRejects_fallsBackToService() {
+        SMSReceivedListener listener = mock(SMSReceivedListener.class);
+        SMSReceivedListenerRegistry.addLive(listener, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        SMSReceivedBatcher batcher = new SMSReceivedBatcher(10, SMSReceivedBatcher.MAX_WINDOW_MILLIS,
+                recorder, new SMSTimerWheel(1, 8), new SMSReceivedSpool());
+        SMSReceivedBroadcastReceiver.setBatcher(batcher);
+        new SMSReceivedBroadcastReceiver().onReceive(context, intent);
+        assertEquals(1, batcher.getBufferedCount());
+        verify(listener, never()).onMessageReceived(any(SMSMessage.class));
+    }
+
+    @Test
+    public void onReceive_afterProcessDeath_deliversLeftoverBatch() {
+        SMSMessage lost = spoolInDeadProcess();
+        SMSReceivedBroadcastReceiver.setBatcher(new SMSReceivedBatcher(10, SMSReceivedBatcher.MAX_WINDOW_MILLIS,
+                recorder, new SMSTimerWheel(1, 8), new SMSReceivedSpool()));
+        new SMSReceivedBroadcastReceiver().onReceive(context, intent);
+        assertEquals(1, batches.size());
+        assertEquals(Collections.singletonList(lost), batches.get(0));
+        SMSReceivedBroadcastReceiver.setBatcher(null);
+        assertEquals(Collections.singletonList(VALID_MESSAGE), batches.get(1));
+    }
+
+    @Test
+    public void onReceive_liveListener_stillDeliversLeftoverBatch() {
+        SMSMessage lost = spoolInDeadProcess();
+        SMSReceivedListener listener = mock(SMSReceivedListener.class);
+        SMSReceivedListenerRegistry.addLive(listener, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        SMSReceivedBroadcastReceiver.setBatcher(new SMSReceivedBatcher(10, SMSReceivedBatcher.MAX_WINDOW_MILLIS,
+                recorder, new SMSTimerWheel(1, 8), new SMSReceivedSpool()));
+        new SMSReceivedBroadcastReceiver().onReceive(context, intent);
+        verify(listener).onMessageReceived(VALID_MESSAGE);
+        assertEquals(Collections.singletonList(Collections.singletonList(lost)), batches);
+    }
+
+    /**
+     * @return the message a process died with while it was waiting in a batch.
+     */
+    private SMSMessage spoolInDeadProcess() {
+        SMSMessage lost = new SMSMessage(new SMSPeer(VALID_ADDR), "Received before the process died");
+        SMSReceivedSpool.Writer writer = new SMSReceivedSpool().open(context);
+        writer.append(SMSReceivedSpool.toRecord(lost));
+        writer.close();
+        return lost;
+    }
+}
@@ -0,0 +1,118 @@
+package com.eis.smslibrary;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSReceivedDeduplicator.
+ */
+public class SMSReceivedDeduplicatorTest {
+
+    private static final String ADDRESS = "+393423541601";
+    private static final String OTHER_ADDRESS = "+393423541602";
+    private static final String BODY = "Test message";
+    private static final long TIMESTAMP = 1577836800000L;
+    private static final long WINDOW_MILLIS = 3000;
+    private static final long NOW = 1000;
+
+    private final SMSReceivedDeduplicator deduplicator = new SMSReceivedDeduplicator(WINDOW_MILLIS, 100);
+
+    private static long millis(long millis) {
+        return NOW + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void isDuplicate_firstMessage_isNot() {
+        assertFalse(deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, NOW));
+        assertEquals(0, deduplicator.getDroppedDuplicates());
+    }
+
+    @Test
+    public void isDuplicate_sameMessage_isCounted() {
+        deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, NOW);
+        assertTrue(deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, millis(10)));
+        assertTrue(deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, millis(20)));
+        assertEquals(2, deduplicator.getDroppedDuplicates());
+    }
+
+    @Test
+    public void isDuplicate_differentPeerBodyOrTimestamp_isNot() {
+        deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, NOW);
+        assertFalse(deduplicator.isDuplicate(OTHER_ADDRESS, BODY, TIMESTAMP, NOW));
+        assertFalse(deduplicator.isDuplicate(ADDRESS, BODY + "!", TIMESTAMP, NOW));
+        assertFalse(deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP + 1, NOW));
+        assertEquals(0, deduplicator.getDroppedDuplicates());
+    }
+
+    @Test
+    public void isDuplicate_addressAndBodyBoundary_isNotAmbiguous() {
+        deduplicator.isDuplicate("+3934", "1Test", TIMESTAMP, NOW);
+        assertFalse(deduplicator.isDuplicate("+39341", "Test", TIMESTAMP, NOW));
+    }
+
+    @Test
+    public void isDuplicate_withinWindow_isRemembered() {
+        deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, NOW);
+        assertTrue(deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, millis(WINDOW_MILLIS - 1)));
+    }
+
+    @Test
+    public void isDuplicate_endOfSliceWithinWindow_isRemembered() {
+        // Received right before a new slice starts, it must still be remembered for a whole window
+        long sliceMillis = WINDOW_MILLIS / (SMSReceivedDeduplicator.BUCKETS - 1);
+        deduplicator.isDuplicate(OTHER_ADDRESS, BODY, TIMESTAMP, NOW);
+        deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, millis(sliceMillis - 1));
+        assertTrue(deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, millis(sliceMillis - 1 + WINDOW_MILLIS)));
+    }
+
+    @Test
+    public void isDuplicate_afterWindowAndSlice_isForgotten() {
+        long sliceMillis = WINDOW_MILLIS / (SMSReceivedDeduplicator.BUCKETS - 1);
+        deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, NOW);
+        assertFalse(deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, millis(WINDOW_MILLIS + sliceMillis)));
+        // Remembered again from then on
+        assertTrue(deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, millis(WINDOW_MILLIS + sliceMillis + 1)));
+    }
+
+    @Test
+    public void isDuplicate_afterLongSilence_forgetsEverything() {
+        deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, NOW);
+        assertFalse(deduplicator.isDuplicate(ADDRESS, BODY, TIMESTAMP, millis(WINDOW_MILLIS * 100)));
+    }
+
+    @Test
+    public void isDuplicate_overCapacity_forgetsExcessMessages() {
+        SMSReceivedDeduplicator small = new SMSReceivedDeduplicator(WINDOW_MILLIS, 10);
+        for (int i = 0; i < 15; i++)
+            assertFalse(small.isDuplicate(ADDRESS, BODY + i, TIMESTAMP, NOW));
+        assertEquals(5, small.getForgottenMessages());
+        for (int i = 0; i < 10; i++)
+            assertTrue(small.isDuplicate(ADDRESS, BODY + i, TIMESTAMP, NOW));
+        for (int i = 10; i < 15; i++)
+            assertFalse(small.isDuplicate(ADDRESS, BODY + i, TIMESTAMP, NOW));
+    }
+
+    @Test
+    public void isDuplicate_manyMessages_noFalsePositives() {
+        SMSReceivedDeduplicator large = new SMSReceivedDeduplicator(WINDOW_MILLIS, SMSReceivedDeduplicator.MAX_MESSAGES);
+        for (int i = 0; i < SMSReceivedDeduplicator.MAX_MESSAGES; i++)
+            assertFalse(large.isDuplicate(ADDRESS, BODY, TIMESTAMP + i, NOW));
+        assertEquals(0, large.getDroppedDuplicates());
+        assertEquals(0, large.getForgottenMessages());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nonPositiveWindow_throws() {
+        new SMSReceivedDeduplicator(0, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_tooManyMessages_throws() {
+        new SMSReceivedDeduplicator(WINDOW_MILLIS, SMSReceivedDeduplicator.MAX_MESSAGES + 1);
+    }
+}
@@ -0,0 +1,177 @@
+package com.eis.smslibrary;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.eis.smslibrary.listeners.SMSReceivedListener;
+import com.eis.smslibrary.listeners.SMSReceivedServiceListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import it.lucacrema.preferences.PreferencesManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Test class for SMSReceivedListenerRegistry.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({PreferencesManager.class, Log.class})
+public class SMSReceivedListenerRegistryTest {
+
+    private static final SMSMessage VALID_MESSAGE = new SMSMessage(new SMSPeer("+393423541601"), "Some random text");
+
+    private final Context context = mock(Context.class);
+
+    @Before
+    public void setup() {
+        PowerMockito.mockStatic(PreferencesManager.class);
+        PowerMockito.mockStatic(Log.class);
+        SMSReceivedListenerRegistry.reset();
+    }
+
+    @After
+    public void tearDown() {
+        SMSReceivedListenerRegistry.reset();
+    }
+
+    @Test
+    public void coldProcess_readsPreferencesOnce() {
+        when(PreferencesManager.getString(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY))
+                .thenReturn(TestService.class.getName());
+        assertEquals(TestService.class, SMSReceivedListenerRegistry.get(context));
+        assertEquals(TestService.class, SMSReceivedListenerRegistry.get(context));
+        PowerMockito.verifyStatic(times(1));
+        PreferencesManager.getString(any(Context.class), anyString());
+    }
+
+    @Test
+    public void coldProcess_unknownClass_cachedAsMissing() {
+        when(PreferencesManager.getString(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY))
+                .thenReturn("com.eis.NotAClass");
+        assertNull(SMSReceivedListenerRegistry.get(context));
+        assertNull(SMSReceivedListenerRegistry.get(context));
+        PowerMockito.verifyStatic(times(1));
+        PreferencesManager.getString(any(Context.class), anyString());
+    }
+
+    @Test
+    public void set_skipsPreferencesOnGet() {
+        SMSReceivedListenerRegistry.set(TestService.class, context);
+        assertEquals(TestService.class, SMSReceivedListenerRegistry.get(context));
+        PowerMockito.verifyStatic(times(1));
+        PreferencesManager.setString(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY, TestService.class.getName());
+        PowerMockito.verifyStatic(times(0));
+        PreferencesManager.getString(any(Context.class), anyString());
+    }
+
+    @Test
+    public void remove_clearsListener() {
+        SMSReceivedListenerRegistry.set(TestService.class, context);
+        SMSReceivedListenerRegistry.remove(context);
+        assertNull(SMSReceivedListenerRegistry.get(context));
+        PowerMockito.verifyStatic(times(1));
+        PreferencesManager.removeValue(context, SMSReceivedBroadcastReceiver.SERVICE_CLASS_PREFERENCES_KEY);
+    }
+
+    @Test
+    public void dispatchLive_noListeners_returnsFalse() {
+        assertFalse(SMSReceivedListenerRegistry.dispatchLive(VALID_MESSAGE));
+    }
+
+    @Test
+    public void dispatchLive_callsListenersOnTheirExecutor() {
+        SMSReceivedListener first = mock(SMSReceivedListener.class);
+        SMSReceivedListener second = mock(SMSReceivedListener.class);
+        RecordingExecutor executor = new RecordingExecutor();
+        SMSReceivedListenerRegistry.addLive(first, executor);
+        SMSReceivedListenerRegistry.addLive(second, executor);
+        assertTrue(SMSReceivedListenerRegistry.dispatchLive(VALID_MESSAGE));
+        assertEquals(2, executor.executed);
+        verify(first).onMessageReceived(VALID_MESSAGE);
+        verify(second).onMessageReceived(VALID_MESSAGE);
+    }
+
+    @Test
+    public void dispatchLive_rejectedByOneExecutor_reachesTheOthers() {
+        SMSReceivedListener rejected = mock(SMSReceivedListener.class);
+        SMSReceivedListener accepted = mock(SMSReceivedListener.class);
+        RecordingExecutor executor = new RecordingExecutor();
+        SMSReceivedListenerRegistry.addLive(rejected, new RejectingExecutor());
+        SMSReceivedListenerRegistry.addLive(accepted, executor);
+        assertTrue(SMSReceivedListenerRegistry.dispatchLive(VALID_MESSAGE));
+        assertEquals(1, executor.executed);
+        verify(accepted).onMessageReceived(VALID_MESSAGE);
+        verify(rejected, never()).onMessageReceived(any(SMSMessage.class));
+    }
+
+    @Test
+    public void dispatchLive_rejectedByEveryExecutor_returnsFalse() {
+        SMSReceivedListenerRegistry.addLive(mock(SMSReceivedListener.class), new RejectingExecutor());
+        assertFalse(SMSReceivedListenerRegistry.dispatchLive(VALID_MESSAGE));
+    }
+
+    @Test
+    public void addLive_twice_replacesExecutor() {
+        SMSReceivedListener listener = mock(SMSReceivedListener.class);
+        RecordingExecutor oldExecutor = new RecordingExecutor();
+        RecordingExecutor newExecutor = new RecordingExecutor();
+        SMSReceivedListenerRegistry.addLive(listener, oldExecutor);
+        SMSReceivedListenerRegistry.addLive(listener, newExecutor);
+        SMSReceivedListenerRegistry.dispatchLive(VALID_MESSAGE);
+        assertEquals(0, oldExecutor.executed);
+        assertEquals(1, newExecutor.executed);
+    }
+
+    @Test
+    public void removeLive_stopsDispatching() {
+        SMSReceivedListener listener = mock(SMSReceivedListener.class);
+        SMSReceivedListenerRegistry.addLive(listener, new RecordingExecutor());
+        assertTrue(SMSReceivedListenerRegistry.removeLive(listener));
+        assertFalse(SMSReceivedListenerRegistry.removeLive(listener));
+        assertFalse(SMSReceivedListenerRegistry.dispatchLive(VALID_MESSAGE));
+        verify(listener, never()).onMessageReceived(any(SMSMessage.class));
+    }
+
+    private static class RecordingExecutor implements Executor {
+        private int executed;
+
+        @Override
+        public void execute(Runnable command) {
+            executed++;
+            command.run();
+        }
+    }
+
+    private static class RejectingExecutor implements Executor {
+        @Override
+        public void execute(Runnable command) {
+            throw new RejectedExecutionException();
+        }
+    }
+
+    public static class TestService extends SMSReceivedServiceListener {
+        @Override
+        public void onMessageReceived(SMSMessage message) {
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.eis.smslibrary;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for SMSReceivedSpool, a new spool stands for a new process.
+ */
+public class SMSReceivedSpoolTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final SMSMessage VALID_MESSAGE = new SMSMessage(VALID_PEER, "Some random text");
+    private static final SMSMessage OTHER_MESSAGE = new SMSMessage(VALID_PEER, "Some other text ¬");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Context context = mock(Context.class);
+    private File directory;
+
+    @Before
+    public void setup() throws Exception {
+        directory = folder.newFolder();
+        when(context.getFilesDir()).thenReturn(directory);
+    }
+
+    private long spool(SMSReceivedSpool spool, SMSMessage... messages) {
+        SMSReceivedSpool.Writer writer = spool.open(context);
+        for (SMSMessage message : messages)
+            assertTrue(writer.append(SMSReceivedSpool.toRecord(message)));
+        writer.close();
+        return writer.getBatch();
+    }
+
+    @Test
+    public void leftovers_onlyTakenOnce() {
+        SMSReceivedSpool deadProcess = new SMSReceivedSpool();
+        spool(deadProcess, VALID_MESSAGE);
+        spool(deadProcess, OTHER_MESSAGE);
+        SMSReceivedSpool spool = new SMSReceivedSpool();
+        long[] leftovers = spool.takeLeftovers(context);
+        assertEquals(2, leftovers.length);
+        assertEquals(Collections.singletonList(VALID_MESSAGE), spool.read(context, leftovers[0]));
+        assertEquals(Collections.singletonList(OTHER_MESSAGE), spool.read(context, leftovers[1]));
+        assertEquals(0, spool.takeLeftovers(context).length);
+        // New batches don't reuse the numbers of the leftover ones
+        assertTrue(spool.newBatch() > leftovers[1]);
+    }
+
+    @Test
+    public void read_tornRecord_keepsPreviousOnes() throws Exception {
+        SMSReceivedSpool spool = new SMSReceivedSpool();
+        long batch = spool(spool, VALID_MESSAGE, OTHER_MESSAGE);
+        File file = new File(new File(directory, SMSReceivedSpool.DIRECTORY_NAME), Long.toString(batch));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 3);
+        } finally {
+            raf.close();
+        }
+        assertEquals(Collections.singletonList(VALID_MESSAGE), spool.read(context, batch));
+    }
+
+    @Test
+    public void delete_removesBatch() {
+        SMSReceivedSpool spool = new SMSReceivedSpool();
+        long first = spool(spool, VALID_MESSAGE);
+        long second = spool(spool, OTHER_MESSAGE);
+        spool.delete(context, first);
+        SMSReceivedSpool nextProcess = new SMSReceivedSpool();
+        assertTrue(Arrays.equals(new long[]{second}, nextProcess.takeLeftovers(context)));
+    }
+}
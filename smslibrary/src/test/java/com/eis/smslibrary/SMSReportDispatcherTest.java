@@ -0,0 +1,97 @@
+package com.eis.smslibrary;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.telephony.SmsManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for SMSReportDispatcher.
+ */
+public class SMSReportDispatcherTest {
+
+    private static final long TRACKING_ID = 42;
+    private static final long UNKNOWN_TRACKING_ID = 43;
+
+    private SMSReportDispatcher dependentDispatcher;
+    private SMSReportDispatcher dispatcher;
+    private SMSReportTracker trackerMock = mock(SMSReportTracker.class);
+    private SMSReportTracker dependentTrackerMock = mock(SMSReportTracker.class);
+    private Context contextMock = mock(Context.class);
+
+    private static Intent reportIntent(long trackingId) {
+        Intent intentMock = mock(Intent.class);
+        when(intentMock.getLongExtra(eq(SMSReportDispatcher.EXTRA_TRACKING_ID), anyLong())).thenReturn(trackingId);
+        return intentMock;
+    }
+
+    @Before
+    public void setup() {
+        dependentDispatcher = new SMSReportDispatcher("delivered", null);
+        dispatcher = spy(new SMSReportDispatcher("sent", dependentDispatcher));
+        dispatcher.track(TRACKING_ID, trackerMock);
+        dependentDispatcher.track(TRACKING_ID, dependentTrackerMock);
+    }
+
+    @Test
+    public void register_twice_registersOnce() {
+        when(contextMock.getApplicationContext()).thenReturn(contextMock);
+        dispatcher.register(contextMock);
+        dispatcher.register(contextMock);
+        verify(contextMock, times(1)).registerReceiver(eq(dispatcher), any(IntentFilter.class));
+    }
+
+    @Test
+    public void receive_completedReport_untracks() {
+        doReturn(Activity.RESULT_OK).when((BroadcastReceiver) dispatcher).getResultCode();
+        when(trackerMock.onPartReport(Activity.RESULT_OK)).thenReturn(true);
+        dispatcher.onReceive(contextMock, reportIntent(TRACKING_ID));
+        verify(trackerMock).onPartReport(Activity.RESULT_OK);
+        assertEquals(0, dispatcher.getTrackedCount());
+        assertEquals(1, dependentDispatcher.getTrackedCount());
+    }
+
+    @Test
+    public void receive_partialReport_keepsTracking() {
+        doReturn(Activity.RESULT_OK).when((BroadcastReceiver) dispatcher).getResultCode();
+        when(trackerMock.onPartReport(Activity.RESULT_OK)).thenReturn(false);
+        dispatcher.onReceive(contextMock, reportIntent(TRACKING_ID));
+        assertEquals(1, dispatcher.getTrackedCount());
+    }
+
+    @Test
+    public void receive_unknownId_isIgnored() {
+        doReturn(Activity.RESULT_OK).when((BroadcastReceiver) dispatcher).getResultCode();
+        dispatcher.onReceive(contextMock, reportIntent(UNKNOWN_TRACKING_ID));
+        verify(trackerMock, never()).onPartReport(anyInt());
+        assertEquals(1, dispatcher.getTrackedCount());
+    }
+
+    @Test
+    public void receive_error_untracksDependent() {
+        doReturn(SmsManager.RESULT_ERROR_RADIO_OFF).when((BroadcastReceiver) dispatcher).getResultCode();
+        when(trackerMock.onPartReport(SmsManager.RESULT_ERROR_RADIO_OFF)).thenReturn(true);
+        dispatcher.onReceive(contextMock, reportIntent(TRACKING_ID));
+        assertEquals(0, dispatcher.getTrackedCount());
+        assertEquals(0, dependentDispatcher.getTrackedCount());
+        verify(dependentTrackerMock, never()).onPartReport(anyInt());
+    }
+}
@@ -0,0 +1,124 @@
+package com.eis.smslibrary;
+
+import android.content.Context;
+
+import com.eis.smslibrary.listeners.SMSDeliveredListener;
+import com.eis.smslibrary.listeners.SMSSentListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test class for SMSRetryEngine, the manager sending messages again is a mock reporting a fixed
+ * sequence of states.
+ */
+public class SMSRetryEngineTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final SMSMessage VALID_MESSAGE = new SMSMessage(VALID_PEER, "Some random text to send");
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final SMSManager managerMock = mock(SMSManager.class);
+    private final Context contextMock = mock(Context.class);
+    private final AtomicInteger sends = new AtomicInteger();
+    private SMSRetryEngine engine;
+    private ReportedState reported;
+
+    /**
+     * Makes every resend report the given states in order, the last one repeated.
+     */
+    private void resendsReport(final SMSMessage.SentState... states) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                int attempt = sends.getAndIncrement();
+                SMSSentListener listener = (SMSSentListener) invocation.getArguments()[1];
+                listener.onSMSSent(VALID_MESSAGE, states[Math.min(attempt, states.length - 1)]);
+                return null;
+            }
+        }).when(managerMock).send(eq(VALID_MESSAGE), any(SMSSentListener.class),
+                any(SMSDeliveredListener.class), eq(contextMock));
+    }
+
+    @Before
+    public void setup() {
+        engine = new SMSRetryEngine(managerMock, new SMSTimerWheel(1, 8));
+        engine.setPolicy(SMSMessage.SentState.ERROR_NO_SERVICE, new SMSRetryPolicy(3, 1, 4, 0.5));
+        reported = new ReportedState();
+    }
+
+    @Test
+    public void failure_thenSuccess_reportsOnlySuccess() throws Exception {
+        resendsReport(SMSMessage.SentState.MESSAGE_SENT);
+        SMSSentListener listener = engine.track(VALID_MESSAGE, reported, null, contextMock);
+        listener.onSMSSent(VALID_MESSAGE, SMSMessage.SentState.ERROR_NO_SERVICE);
+        assertEquals(SMSMessage.SentState.MESSAGE_SENT, reported.await());
+        assertEquals(1, sends.get());
+        assertEquals(1, reported.calls.get());
+    }
+
+    @Test
+    public void persistentFailure_stopsAtMaxAttempts() throws Exception {
+        resendsReport(SMSMessage.SentState.ERROR_NO_SERVICE);
+        SMSSentListener listener = engine.track(VALID_MESSAGE, reported, null, contextMock);
+        listener.onSMSSent(VALID_MESSAGE, SMSMessage.SentState.ERROR_NO_SERVICE);
+        assertEquals(SMSMessage.SentState.ERROR_NO_SERVICE, reported.await());
+        assertEquals(2, sends.get());
+    }
+
+    @Test
+    public void failureWithoutPolicy_isReportedImmediately() throws Exception {
+        SMSSentListener listener = engine.track(VALID_MESSAGE, reported, null, contextMock);
+        listener.onSMSSent(VALID_MESSAGE, SMSMessage.SentState.ERROR_RADIO_OFF);
+        assertEquals(SMSMessage.SentState.ERROR_RADIO_OFF, reported.await());
+        assertEquals(0, sends.get());
+    }
+
+    @Test
+    public void removedPolicy_noLongerRetries() throws Exception {
+        engine.setPolicy(SMSMessage.SentState.ERROR_NO_SERVICE, null);
+        SMSSentListener listener = engine.track(VALID_MESSAGE, reported, null, contextMock);
+        listener.onSMSSent(VALID_MESSAGE, SMSMessage.SentState.ERROR_NO_SERVICE);
+        assertEquals(SMSMessage.SentState.ERROR_NO_SERVICE, reported.await());
+        assertEquals(0, sends.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setPolicy_forSent_throws() {
+        engine.setPolicy(SMSMessage.SentState.MESSAGE_SENT, new SMSRetryPolicy(1, 1, 1, 0));
+    }
+
+    /**
+     * Sent listener recording the states it's called with
+     */
+    private static class ReportedState implements SMSSentListener {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile SMSMessage.SentState state;
+
+        @Override
+        public void onSMSSent(SMSMessage message, SMSMessage.SentState sentState) {
+            state = sentState;
+            calls.incrementAndGet();
+            latch.countDown();
+        }
+
+        private SMSMessage.SentState await() throws InterruptedException {
+            assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return state;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.eis.smslibrary;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSRetryPolicy.
+ */
+public class SMSRetryPolicyTest {
+
+    private static final long BASE_DELAY = 100;
+    private static final long MAX_DELAY = 1000;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void canRetry_belowMaxAttempts() {
+        SMSRetryPolicy policy = new SMSRetryPolicy(3, BASE_DELAY, MAX_DELAY, 0);
+        assertTrue(policy.canRetry(1));
+        assertTrue(policy.canRetry(2));
+        assertFalse(policy.canRetry(3));
+    }
+
+    @Test
+    public void getDelay_noJitter_doublesUpToMax() {
+        SMSRetryPolicy policy = new SMSRetryPolicy(10, BASE_DELAY, MAX_DELAY, 0);
+        assertEquals(BASE_DELAY, policy.getDelayMillis(1, random));
+        assertEquals(2 * BASE_DELAY, policy.getDelayMillis(2, random));
+        assertEquals(8 * BASE_DELAY, policy.getDelayMillis(4, random));
+        assertEquals(MAX_DELAY, policy.getDelayMillis(5, random));
+        assertEquals(MAX_DELAY, policy.getDelayMillis(100, random));
+    }
+
+    @Test
+    public void getDelay_jitter_staysInRange() {
+        SMSRetryPolicy policy = new SMSRetryPolicy(10, BASE_DELAY, MAX_DELAY, 0.5);
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.getDelayMillis(2, random);
+            assertTrue(delay > BASE_DELAY && delay <= 2 * BASE_DELAY);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_noAttempts_throws() {
+        new SMSRetryPolicy(0, BASE_DELAY, MAX_DELAY, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_baseOverMax_throws() {
+        new SMSRetryPolicy(1, MAX_DELAY, BASE_DELAY, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_jitterOverOne_throws() {
+        new SMSRetryPolicy(1, BASE_DELAY, MAX_DELAY, 2);
+    }
+}
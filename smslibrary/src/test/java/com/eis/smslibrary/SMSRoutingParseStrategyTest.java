@@ -0,0 +1,178 @@
+package com.eis.smslibrary;
+
+import com.eis.communication.MessageParseStrategy;
+import com.eis.smslibrary.listeners.SMSReceivedListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test class for SMSRoutingParseStrategy.
+ */
+public class SMSRoutingParseStrategyTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final String OTP_HEADER = "\rOTP:";
+    private static final String CHAT_HEADER = "\rCHAT:";
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private SMSRoutingParseStrategy strategy;
+
+    /**
+     * Strategy for a plain text sub-protocol with its own header
+     */
+    private static class HeaderStrategy implements MessageParseStrategy<String, SMSPeer, SMSMessage> {
+        private final String header;
+
+        private HeaderStrategy(String header) {
+            this.header = header;
+        }
+
+        @Override
+        public SMSMessage parseMessage(String channelData, SMSPeer channelPeer) {
+            if (!channelData.startsWith(header))
+                return null;
+            return new SMSMessage(channelPeer, channelData.substring(header.length()));
+        }
+
+        @Override
+        public String parseData(SMSMessage message) {
+            return header + message.getData();
+        }
+    }
+
+    private static class OtpMessage extends SMSMessage {
+        private OtpMessage(SMSPeer peer, String code) {
+            super(peer, code);
+        }
+    }
+
+    private static class UrgentOtpMessage extends OtpMessage {
+        private UrgentOtpMessage(SMSPeer peer, String code) {
+            super(peer, code);
+        }
+    }
+
+    @Before
+    public void setup() {
+        strategy = new SMSRoutingParseStrategy(new HeaderStrategy("\r"));
+        strategy.addRoute(OTP_HEADER, new HeaderStrategy(OTP_HEADER), OtpMessage.class, null, null);
+        strategy.addRoute(CHAT_HEADER, new HeaderStrategy(CHAT_HEADER));
+        strategy.addRoute(GSMBinaryParseStrategy.PREFIX, new GSMBinaryParseStrategy());
+    }
+
+    @Test
+    public void parseMessage_dispatchesByHeader() {
+        assertEquals("123456", strategy.parseMessage(OTP_HEADER + "123456", VALID_PEER).getData());
+        assertEquals("hello", strategy.parseMessage(CHAT_HEADER + "hello", VALID_PEER).getData());
+        byte[] payload = {1, 2, 3, (byte) 200};
+        String binary = new GSMBinaryParseStrategy().parseData(GSMBinaryParseStrategy.createMessage(VALID_PEER, payload));
+        assertArrayEquals(payload, GSMBinaryParseStrategy.getPayload(strategy.parseMessage(binary, VALID_PEER)));
+    }
+
+    @Test
+    public void parseMessage_noRoute_usesDefault() {
+        assertEquals("plain", strategy.parseMessage("\rplain", VALID_PEER).getData());
+        assertNull(strategy.parseMessage("not from the library", VALID_PEER));
+    }
+
+    @Test
+    public void parseMessage_longestHeaderFirst() {
+        strategy.addRoute("\rOTP:V2:", new HeaderStrategy("\rOTP:V2:"));
+        assertEquals("123", strategy.parseMessage("\rOTP:V2:123", VALID_PEER).getData());
+        assertEquals("V3:123", strategy.parseMessage("\rOTP:V3:123", VALID_PEER).getData());
+    }
+
+    @Test
+    public void parseMessage_routeWithListener_returnsMessageWithoutDispatching() {
+        SMSReceivedListener listener = mock(SMSReceivedListener.class);
+        strategy.addRoute("\rSYNC:", new HeaderStrategy("\rSYNC:"), null, listener, DIRECT_EXECUTOR);
+        assertEquals("state", strategy.parseMessage("\rSYNC:state", VALID_PEER).getData());
+        verify(listener, never()).onMessageReceived(any(SMSMessage.class));
+    }
+
+    @Test
+    public void parseReceived_routeWithListener_dispatchesAndCountsHit() {
+        SMSReceivedListener listener = mock(SMSReceivedListener.class);
+        strategy.addRoute("\rSYNC:", new HeaderStrategy("\rSYNC:"), null, listener, DIRECT_EXECUTOR);
+        SMSMetricsRecorder recorder = new SMSMetricsRecorder();
+        SMSMessageHandler handler = SMSMessageHandler.getInstance();
+        handler.setMessageParseStrategy(strategy);
+        handler.setMetrics(recorder);
+        try {
+            assertNull(handler.parseReceived(VALID_PEER.getAddress(), "\rSYNC:state"));
+            verify(listener).onMessageReceived(new SMSMessage(VALID_PEER, "state"));
+            assertEquals("hello", handler.parseReceived(VALID_PEER.getAddress(), CHAT_HEADER + "hello").getData());
+            verify(listener, never()).onMessageReceived(new SMSMessage(VALID_PEER, "hello"));
+            assertEquals(2, recorder.snapshot().getParseHits());
+            assertEquals(0, recorder.snapshot().getParseMisses());
+        } finally {
+            handler.setMetrics(null);
+            handler.setMessageParseStrategy(handler.new DefaultSMSMessageParseStrategy());
+        }
+    }
+
+    @Test
+    public void parseReceived_routeExecutorRejects_returnsMessage() {
+        SMSReceivedListener listener = mock(SMSReceivedListener.class);
+        strategy.addRoute("\rSYNC:", new HeaderStrategy("\rSYNC:"), null, listener, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        SMSMessageHandler handler = SMSMessageHandler.getInstance();
+        handler.setMessageParseStrategy(strategy);
+        try {
+            assertEquals("state", handler.parseReceived(VALID_PEER.getAddress(), "\rSYNC:state").getData());
+        } finally {
+            handler.setMessageParseStrategy(handler.new DefaultSMSMessageParseStrategy());
+        }
+    }
+
+    @Test
+    public void parseData_picksRouteByMessageClass() {
+        assertEquals(OTP_HEADER + "123456", strategy.parseData(new OtpMessage(VALID_PEER, "123456")));
+        assertEquals(OTP_HEADER + "1", strategy.parseData(new UrgentOtpMessage(VALID_PEER, "1")));
+        assertEquals("\rhello", strategy.parseData(new SMSMessage(VALID_PEER, "hello")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addRoute_sameHeader_throws() {
+        strategy.addRoute(CHAT_HEADER, new HeaderStrategy(CHAT_HEADER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addRoute_listenerWithoutExecutor_throws() {
+        strategy.addRoute("\rX", new HeaderStrategy("\rX"), null, mock(SMSReceivedListener.class), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addRoute_emptyHeader_throws() {
+        strategy.addRoute("", new HeaderStrategy(""));
+    }
+
+    @Test
+    public void parseMessage_manyRoutes_eachDispatched() {
+        for (int i = 0; i < 200; i++)
+            strategy.addRoute("\rP" + i + ":", new HeaderStrategy("\rP" + i + ":"));
+        for (int i = 0; i < 200; i++)
+            assertEquals("x" + i, strategy.parseMessage("\rP" + i + ":x" + i, VALID_PEER).getData());
+    }
+}
@@ -0,0 +1,111 @@
+package com.eis.smslibrary;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+/**
+ * Test class for SMSSegmentPlan.
+ */
+public class SMSSegmentPlanTest {
+
+    private static final String GSM_SINGLE_SEGMENT_TEXT = repeat('a', SMSSegmentPlan.GSM_SINGLE_SEGMENT_SEPTETS);
+    private static final String GSM_TWO_SEGMENTS_TEXT = repeat('a', SMSSegmentPlan.GSM_SINGLE_SEGMENT_SEPTETS + 1);
+    private static final String UCS2_SINGLE_SEGMENT_TEXT = repeat('¬', SMSSegmentPlan.UCS2_SINGLE_SEGMENT_CHARS);
+    private static final String UCS2_TWO_SEGMENTS_TEXT = repeat('¬', SMSSegmentPlan.UCS2_SINGLE_SEGMENT_CHARS + 1);
+    private static final String PIG_EMOJI = "🐖";
+
+    private static String repeat(char c, int times) {
+        return new String(new char[times]).replace('\0', c);
+    }
+
+    @Test
+    public void of_empty_isSingleGSMSegment() {
+        SMSSegmentPlan plan = SMSSegmentPlan.of("");
+        Assert.assertEquals(SMSSegmentPlan.Encoding.GSM_7BIT, plan.getEncoding());
+        Assert.assertEquals(0, plan.getEncodedLength());
+        Assert.assertEquals(1, plan.getSegmentCount());
+    }
+
+    @Test
+    public void of_gsmMaxSingleSegment_isSingleSegment() {
+        SMSSegmentPlan plan = SMSSegmentPlan.of(GSM_SINGLE_SEGMENT_TEXT);
+        Assert.assertEquals(SMSSegmentPlan.Encoding.GSM_7BIT, plan.getEncoding());
+        Assert.assertEquals(SMSSegmentPlan.GSM_SINGLE_SEGMENT_SEPTETS, plan.getSegmentCapacity());
+        Assert.assertEquals(1, plan.getSegmentCount());
+    }
+
+    @Test
+    public void of_gsmOverSingleSegment_usesUdhCapacity() {
+        SMSSegmentPlan plan = SMSSegmentPlan.of(GSM_TWO_SEGMENTS_TEXT);
+        Assert.assertEquals(SMSSegmentPlan.GSM_MULTIPART_SEGMENT_SEPTETS, plan.getSegmentCapacity());
+        Assert.assertArrayEquals(new int[]{0, SMSSegmentPlan.GSM_MULTIPART_SEGMENT_SEPTETS}, plan.getSplitPoints());
+        Assert.assertEquals(GSM_TWO_SEGMENTS_TEXT.length(), plan.getSegmentEnd(1));
+    }
+
+    @Test
+    public void of_gsmExtension_isNotSplitFromEscape() {
+        // The '€' would be the 153rd and 154th septet of the first segment
+        String text = repeat('a', SMSSegmentPlan.GSM_MULTIPART_SEGMENT_SEPTETS - 1) + "€" + GSM_SINGLE_SEGMENT_TEXT;
+        SMSSegmentPlan plan = SMSSegmentPlan.of(text);
+        Assert.assertEquals(text.length() + 1, plan.getEncodedLength());
+        Assert.assertEquals(SMSSegmentPlan.GSM_MULTIPART_SEGMENT_SEPTETS - 1, plan.getSegmentStart(1));
+    }
+
+    @Test
+    public void of_ucs2MaxSingleSegment_isSingleSegment() {
+        SMSSegmentPlan plan = SMSSegmentPlan.of(UCS2_SINGLE_SEGMENT_TEXT);
+        Assert.assertEquals(SMSSegmentPlan.Encoding.UCS2, plan.getEncoding());
+        Assert.assertEquals(1, plan.getSegmentCount());
+    }
+
+    @Test
+    public void of_ucs2OverSingleSegment_usesUdhCapacity() {
+        SMSSegmentPlan plan = SMSSegmentPlan.of(UCS2_TWO_SEGMENTS_TEXT);
+        Assert.assertEquals(SMSSegmentPlan.UCS2_MULTIPART_SEGMENT_CHARS, plan.getSegmentCapacity());
+        Assert.assertArrayEquals(new int[]{0, SMSSegmentPlan.UCS2_MULTIPART_SEGMENT_CHARS}, plan.getSplitPoints());
+    }
+
+    @Test
+    public void of_ucs2SurrogatePair_isNotSplit() {
+        // The emoji would take the 67th and 68th char of the first segment
+        String text = repeat('¬', SMSSegmentPlan.UCS2_MULTIPART_SEGMENT_CHARS - 1) + PIG_EMOJI + UCS2_SINGLE_SEGMENT_TEXT;
+        SMSSegmentPlan plan = SMSSegmentPlan.of(text);
+        Assert.assertEquals(SMSSegmentPlan.UCS2_MULTIPART_SEGMENT_CHARS - 1, plan.getSegmentStart(1));
+    }
+
+    @Test
+    public void of_maxLengthMessage_fitsConcatenationLimit() {
+        SMSSegmentPlan plan = SMSSegmentPlan.of(repeat('a', SMSMessage.MAX_MSG_TEXT_LEN));
+        Assert.assertEquals(255, plan.getSegmentCount());
+    }
+
+    @Test
+    public void getParts_joined_isOriginalText() {
+        String text = repeat('¬', SMSSegmentPlan.UCS2_MULTIPART_SEGMENT_CHARS - 1) + PIG_EMOJI + UCS2_SINGLE_SEGMENT_TEXT;
+        ArrayList<String> parts = SMSSegmentPlan.of(text).getParts();
+        StringBuilder joined = new StringBuilder();
+        for (String part : parts)
+            joined.append(part);
+        Assert.assertEquals(3, parts.size());
+        Assert.assertTrue(parts.get(1).startsWith(PIG_EMOJI));
+        Assert.assertEquals(text, joined.toString());
+    }
+
+    @Test
+    public void getParts_calledAgain_copiesSameParts() {
+        SMSSegmentPlan plan = SMSSegmentPlan.of(repeat('a', SMSSegmentPlan.GSM_SINGLE_SEGMENT_SEPTETS + 1));
+        ArrayList<String> first = plan.getParts();
+        ArrayList<String> second = plan.getParts();
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(first.get(1), second.get(1));
+        first.clear();
+        Assert.assertEquals(2, plan.getParts().size());
+    }
+
+    @Test
+    public void getParts_singleSegment_isWholeText() {
+        Assert.assertEquals(GSM_SINGLE_SEGMENT_TEXT, SMSSegmentPlan.of(GSM_SINGLE_SEGMENT_TEXT).getParts().get(0));
+    }
+}
@@ -0,0 +1,102 @@
+package com.eis.smslibrary;
+
+import com.eis.communication.PendingResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test class for SMSSendHandle and its PendingResults.
+ */
+public class SMSSendHandleTest {
+
+    private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
+    private static final SMSMessage VALID_MESSAGE = new SMSMessage(VALID_PEER, "Some random text to send");
+    private static final long SHORT_TIMEOUT_MILLIS = 10;
+
+    private SMSSendHandle handle;
+
+    @Before
+    public void setup() {
+        handle = new SMSSendHandle(VALID_MESSAGE);
+    }
+
+    @Test
+    public void newHandle_isNotDone() {
+        assertFalse(handle.getSentResult().isDone());
+        assertFalse(handle.getDeliveredResult().isDone());
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void get_notReported_timesOut() throws Exception {
+        handle.getSentResult().get(SHORT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void sent_completesOnlySentResult() throws Exception {
+        handle.getSentListener().onSMSSent(VALID_MESSAGE, SMSMessage.SentState.MESSAGE_SENT);
+        assertEquals(SMSMessage.SentState.MESSAGE_SENT, handle.getSentResult().get(SHORT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(handle.getDeliveredResult().isDone());
+    }
+
+    @Test
+    public void delivered_completesDeliveredResult() throws Exception {
+        handle.getSentListener().onSMSSent(VALID_MESSAGE, SMSMessage.SentState.MESSAGE_SENT);
+        handle.getDeliveredListener().onSMSDelivered(VALID_MESSAGE, SMSMessage.DeliveredState.MESSAGE_DELIVERED);
+        assertEquals(SMSMessage.DeliveredState.MESSAGE_DELIVERED, handle.getDeliveredResult().get());
+    }
+
+    @Test
+    public void sentError_completesDeliveredWithFailure() throws Exception {
+        handle.getSentListener().onSMSSent(VALID_MESSAGE, SMSMessage.SentState.ERROR_NO_SERVICE);
+        assertEquals(SMSMessage.SentState.ERROR_NO_SERVICE, handle.getSentResult().get());
+        assertEquals(SMSMessage.DeliveredState.ERROR_GENERIC_FAILURE, handle.getDeliveredResult().get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void addListener_calledOnceOnCompletion() {
+        PendingResult.Listener<SMSMessage.SentState> listenerMock = mock(PendingResult.Listener.class);
+        handle.getSentResult().addListener(listenerMock);
+        verify(listenerMock, never()).onResult(any(SMSMessage.SentState.class));
+        handle.getSentListener().onSMSSent(VALID_MESSAGE, SMSMessage.SentState.MESSAGE_SENT);
+        handle.getSentListener().onSMSSent(VALID_MESSAGE, SMSMessage.SentState.ERROR_GENERIC_FAILURE);
+        verify(listenerMock).onResult(SMSMessage.SentState.MESSAGE_SENT);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void addListener_afterCompletion_calledOnExecutor() {
+        PendingResult.Listener<SMSMessage.SentState> listenerMock = mock(PendingResult.Listener.class);
+        final boolean[] executed = {false};
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executed[0] = true;
+                command.run();
+            }
+        };
+        handle.getSentListener().onSMSSent(VALID_MESSAGE, SMSMessage.SentState.MESSAGE_SENT);
+        handle.getSentResult().addListener(listenerMock, executor);
+        assertTrue(executed[0]);
+        verify(listenerMock).onResult(SMSMessage.SentState.MESSAGE_SENT);
+    }
+
+    @Test
+    public void cancel_isNotPossible() {
+        assertFalse(handle.getSentResult().cancel(true));
+        assertFalse(handle.getSentResult().isCancelled());
+    }
+}
@@ -0,0 +1,94 @@
+package com.eis.smslibrary;
+
+import android.app.PendingIntent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSSendQueue, using a transport that only records the messages.
+ */
+public class SMSSendQueueTest {
+
+    private static final String PHONE_NUMBER = "+393423541601";
+    private static final int MESSAGES = 20;
+    private static final int SEGMENTS_PER_WINDOW = 10;
+    private static final long WINDOW_MILLIS = 200;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Transport recording the parts of every message and the time it was sent
+     */
+    private static class RecordingTransport implements SMSTransport {
+        private final List<String> sentParts = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch latch;
+        private volatile long lastSentNanos;
+
+        RecordingTransport(int expectedMessages) {
+            latch = new CountDownLatch(expectedMessages);
+        }
+
+        @Override
+        public void sendMessages(ArrayList<String> parts, String phoneNumber,
+                                 ArrayList<PendingIntent> sentPIs, ArrayList<PendingIntent> deliveredPIs) {
+            sentParts.addAll(parts);
+            lastSentNanos = System.nanoTime();
+            latch.countDown();
+        }
+    }
+
+    private static ArrayList<String> singlePart(int index) {
+        ArrayList<String> parts = new ArrayList<>();
+        parts.add(String.valueOf(index));
+        return parts;
+    }
+
+    @Test
+    public void enqueue_noLimit_sendsInOrder() throws InterruptedException {
+        RecordingTransport transport = new RecordingTransport(MESSAGES);
+        SMSSendQueue queue = new SMSSendQueue(transport, null);
+        for (int i = 0; i < MESSAGES; i++)
+            queue.enqueue(singlePart(i), PHONE_NUMBER, null, null, null);
+        assertTrue(transport.latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < MESSAGES; i++)
+            assertEquals(String.valueOf(i), transport.sentParts.get(i));
+        assertEquals(MESSAGES, queue.getSentMessages());
+        assertEquals(0, queue.getQueuedMessages());
+        assertEquals(0, queue.getQueuedSegments());
+    }
+
+    @Test
+    public void enqueue_overLimit_spreadsOverWindows() throws InterruptedException {
+        RecordingTransport transport = new RecordingTransport(MESSAGES);
+        long start = System.nanoTime();
+        SMSSendQueue queue = new SMSSendQueue(transport, new SMSTokenBucket(SEGMENTS_PER_WINDOW,
+                TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS), start));
+        for (int i = 0; i < MESSAGES; i++)
+            queue.enqueue(singlePart(i), PHONE_NUMBER, null, null, null);
+        assertTrue(transport.latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        // The first window is a burst, the other messages need one more window to be sent
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(transport.lastSentNanos - start);
+        assertTrue(elapsedMillis >= WINDOW_MILLIS * (MESSAGES - SEGMENTS_PER_WINDOW) / SEGMENTS_PER_WINDOW - 1);
+        assertTrue(queue.getMaxWaitMillis() > 0);
+    }
+
+    @Test
+    public void setTokenBucket_removingLimit_flushesQueue() throws InterruptedException {
+        RecordingTransport transport = new RecordingTransport(MESSAGES);
+        SMSSendQueue queue = new SMSSendQueue(transport, new SMSTokenBucket(1,
+                TimeUnit.HOURS.toNanos(1), System.nanoTime()));
+        for (int i = 0; i < MESSAGES; i++)
+            queue.enqueue(singlePart(i), PHONE_NUMBER, null, null, null);
+        queue.setTokenBucket(null);
+        assertTrue(transport.latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(MESSAGES, transport.sentParts.size());
+    }
+}
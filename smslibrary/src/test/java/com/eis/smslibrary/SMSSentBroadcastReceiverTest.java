@@ -5,16 +5,19 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.telephony.SmsManager;
 
+import com.eis.smslibrary.listeners.SMSDeliveredListener;
 import com.eis.smslibrary.listeners.SMSSentListener;
 
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.ArrayList;
-
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -29,20 +32,17 @@ public class SMSSentBroadcastReceiverTest {
     private Context contextMock = mock(Context.class);
     private static final SMSPeer VALID_PEER = new SMSPeer("+393423541601");
     private static final String VALID_TEXT = "Some random text to send";
-    private static final ArrayList<String> MESSAGE_TO_SEND = new ArrayList<>();
     private static final SMSMessage VALID_MESSAGE = new SMSMessage(VALID_PEER, VALID_TEXT);
 
     @Before
     public void setup() {
-        MESSAGE_TO_SEND.clear();
-        MESSAGE_TO_SEND.add(VALID_TEXT);
-        receiver = spy(new SMSSentBroadcastReceiver(MESSAGE_TO_SEND, listenerMock, VALID_PEER));
+        receiver = spy(new SMSSentBroadcastReceiver(VALID_MESSAGE, 1, listenerMock));
     }
 
     @Test
     public void constructor_doesntThrow() {
         try {
-            new SMSSentBroadcastReceiver(MESSAGE_TO_SEND, listenerMock, VALID_PEER);
+            new SMSSentBroadcastReceiver(VALID_MESSAGE, 1, listenerMock);
             //Success
         } catch (Exception e) {
             fail();
@@ -108,4 +108,65 @@ public class SMSSentBroadcastReceiverTest {
         verify(contextMock).unregisterReceiver(receiver);
     }
 
+    @Test
+    public void receive_success_listenerGetsOriginalMessage() {
+        doReturn(Activity.RESULT_OK).when((BroadcastReceiver) receiver).getResultCode();
+        receiver.onReceive(contextMock, null);
+        verify(listenerMock).onSMSSent(same(VALID_MESSAGE), any(SMSMessage.SentState.class));
+    }
+
+    @Test
+    public void receive_multipart_waitsForAllParts() {
+        SMSSentBroadcastReceiver multipartReceiver = spy(new SMSSentBroadcastReceiver(VALID_MESSAGE, 2, listenerMock));
+        doReturn(Activity.RESULT_OK).when((BroadcastReceiver) multipartReceiver).getResultCode();
+        multipartReceiver.onReceive(contextMock, null);
+        verify(listenerMock, never()).onSMSSent(any(SMSMessage.class), any(SMSMessage.SentState.class));
+        multipartReceiver.onReceive(contextMock, null);
+        verify(listenerMock).onSMSSent(same(VALID_MESSAGE), same(SMSMessage.SentState.MESSAGE_SENT));
+        verify(contextMock).unregisterReceiver(multipartReceiver);
+    }
+
+    @Test
+    public void receive_multipart_reportsEverySentPart() {
+        SMSPartSentListener partListenerMock = mock(SMSPartSentListener.class);
+        SMSSentBroadcastReceiver multipartReceiver = spy(new SMSSentBroadcastReceiver(VALID_MESSAGE, 2, partListenerMock));
+        doReturn(Activity.RESULT_OK).when((BroadcastReceiver) multipartReceiver).getResultCode();
+        multipartReceiver.onReceive(contextMock, null);
+        verify(partListenerMock).onPartSent(VALID_MESSAGE, 1);
+        multipartReceiver.onReceive(contextMock, null);
+        verify(partListenerMock).onPartSent(VALID_MESSAGE, 2);
+        verify(partListenerMock).onSMSSent(VALID_MESSAGE, SMSMessage.SentState.MESSAGE_SENT);
+    }
+
+    @Test
+    public void receive_failure_unregistersDeliveredReceiver() {
+        SMSDeliveredBroadcastReceiver deliveredReceiver =
+                new SMSDeliveredBroadcastReceiver(VALID_MESSAGE, 1, mock(SMSDeliveredListener.class));
+        receiver.setDeliveredReceiver(deliveredReceiver);
+        doReturn(SmsManager.RESULT_ERROR_NO_SERVICE).when((BroadcastReceiver) receiver).getResultCode();
+        receiver.onReceive(contextMock, null);
+        verify(contextMock).unregisterReceiver(receiver);
+        verify(contextMock).unregisterReceiver(deliveredReceiver);
+    }
+
+    @Test
+    public void receive_failure_deliveredReceiverAlreadyUnregistered() {
+        SMSDeliveredBroadcastReceiver deliveredReceiver =
+                new SMSDeliveredBroadcastReceiver(VALID_MESSAGE, 2, mock(SMSDeliveredListener.class));
+        receiver.setDeliveredReceiver(deliveredReceiver);
+        doThrow(new IllegalArgumentException()).when(contextMock).unregisterReceiver(deliveredReceiver);
+        doReturn(SmsManager.RESULT_ERROR_NO_SERVICE).when((BroadcastReceiver) receiver).getResultCode();
+        receiver.onReceive(contextMock, null);
+        verify(listenerMock).onSMSSent(VALID_MESSAGE, SMSMessage.SentState.ERROR_NO_SERVICE);
+    }
+
+    @Test
+    public void receive_success_keepsDeliveredReceiver() {
+        SMSDeliveredBroadcastReceiver deliveredReceiver =
+                new SMSDeliveredBroadcastReceiver(VALID_MESSAGE, 1, mock(SMSDeliveredListener.class));
+        receiver.setDeliveredReceiver(deliveredReceiver);
+        doReturn(Activity.RESULT_OK).when((BroadcastReceiver) receiver).getResultCode();
+        receiver.onReceive(contextMock, null);
+        verify(contextMock, never()).unregisterReceiver(deliveredReceiver);
+    }
 }
@@ -0,0 +1,64 @@
+package com.eis.smslibrary;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSTimerWheel.
+ */
+public class SMSTimerWheelTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final SMSTimerWheel wheel = new SMSTimerWheel(1, 8);
+
+    private static Runnable recorder(final List<Integer> order, final int id, final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(id);
+                latch.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void schedule_runsAfterDelay() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(recorder(new CopyOnWriteArrayList<Integer>(), 0, latch), 20);
+        assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void schedule_overManyRounds_runsInDeadlineOrder() throws Exception {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(3);
+        // 8 buckets of 1ms, so these wrap around the wheel more than once
+        wheel.schedule(recorder(order, 2, latch), 40);
+        wheel.schedule(recorder(order, 0, latch), 5);
+        wheel.schedule(recorder(order, 1, latch), 21);
+        assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, (int) order.get(0));
+        assertEquals(1, (int) order.get(1));
+        assertEquals(2, (int) order.get(2));
+    }
+
+    @Test
+    public void schedule_afterIdle_restarts() throws Exception {
+        CountDownLatch first = new CountDownLatch(1);
+        wheel.schedule(recorder(new CopyOnWriteArrayList<Integer>(), 0, first), 1);
+        assertTrue(first.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        CountDownLatch second = new CountDownLatch(1);
+        wheel.schedule(recorder(new CopyOnWriteArrayList<Integer>(), 1, second), 1);
+        assertTrue(second.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,64 @@
+package com.eis.smslibrary;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for SMSTokenBucket.
+ */
+public class SMSTokenBucketTest {
+
+    private static final int CAPACITY = 10;
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long NANOS_PER_TOKEN = WINDOW_NANOS / CAPACITY;
+    private static final long START_NANOS = 1000;
+
+    private SMSTokenBucket bucket;
+
+    @Before
+    public void setup() {
+        bucket = new SMSTokenBucket(CAPACITY, WINDOW_NANOS, START_NANOS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_zeroCapacity_throws() {
+        new SMSTokenBucket(0, WINDOW_NANOS, START_NANOS);
+    }
+
+    @Test
+    public void tryAcquire_fullBucket_allowsBurst() {
+        assertTrue(bucket.tryAcquire(CAPACITY, START_NANOS));
+        assertFalse(bucket.tryAcquire(1, START_NANOS));
+    }
+
+    @Test
+    public void tryAcquire_afterRefill_allowsAgain() {
+        assertTrue(bucket.tryAcquire(CAPACITY, START_NANOS));
+        assertEquals(NANOS_PER_TOKEN, bucket.nanosUntilAvailable(1, START_NANOS));
+        assertTrue(bucket.tryAcquire(1, START_NANOS + NANOS_PER_TOKEN));
+    }
+
+    @Test
+    public void tryAcquire_neverOverCapacity() {
+        assertTrue(bucket.tryAcquire(CAPACITY, START_NANOS + 10 * WINDOW_NANOS));
+        assertFalse(bucket.tryAcquire(1, START_NANOS + 10 * WINDOW_NANOS));
+    }
+
+    @Test
+    public void tryAcquire_moreThanCapacity_goesInDebt() {
+        assertTrue(bucket.tryAcquire(2 * CAPACITY, START_NANOS));
+        // The bucket has to refill the whole debt plus the tokens for the next message
+        assertEquals(WINDOW_NANOS + NANOS_PER_TOKEN, bucket.nanosUntilAvailable(1, START_NANOS));
+    }
+
+    @Test
+    public void nanosUntilAvailable_availableTokens_isZero() {
+        assertEquals(0, bucket.nanosUntilAvailable(CAPACITY, START_NANOS));
+    }
+}